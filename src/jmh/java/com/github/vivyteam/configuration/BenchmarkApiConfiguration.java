@@ -0,0 +1,17 @@
+package com.github.vivyteam.configuration;
+
+/**
+ * Fixed shortener settings for benchmarks, which run without a Spring context.
+ */
+public class BenchmarkApiConfiguration extends ShorternerApiConfiguration {
+
+    @Override
+    public int getUrlLength() {
+        return 7;
+    }
+
+    @Override
+    public String getDomainUrl() {
+        return "https://myservicedomain.de/";
+    }
+}
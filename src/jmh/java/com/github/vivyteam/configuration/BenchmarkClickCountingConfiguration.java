@@ -0,0 +1,41 @@
+package com.github.vivyteam.configuration;
+
+import com.github.vivyteam.repository.ClickCounter;
+import com.github.vivyteam.repository.HotLinkTracker;
+import com.github.vivyteam.repository.UrlKeyBuckets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * Click counting settings for benchmarks, as configured in the application profiles.
+ */
+public class BenchmarkClickCountingConfiguration extends ClickCountingConfiguration {
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Duration getFlushPeriod() {
+        return Duration.ofSeconds(5);
+    }
+
+    @Override
+    public int getMaxPendingCodes() {
+        return 100_000;
+    }
+
+    /**
+     * @return a click counter that counts in memory only, its flushes are never started and Redis is never connected
+     */
+    public static ClickCounter unflushedClickCounter() {
+        ReactiveStringRedisTemplate stringRedisTemplate = new ReactiveStringRedisTemplate(new LettuceConnectionFactory());
+        HotLinkTracker hotLinkTracker = new HotLinkTracker(stringRedisTemplate, stringRedisTemplate, new HotLinksConfiguration());
+        return new ClickCounter(stringRedisTemplate, stringRedisTemplate, new BenchmarkClickCountingConfiguration(),
+                new UrlKeyBuckets(1, 1), hotLinkTracker, new SimpleMeterRegistry());
+    }
+}
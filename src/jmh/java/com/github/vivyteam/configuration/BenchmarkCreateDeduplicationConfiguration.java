@@ -0,0 +1,24 @@
+package com.github.vivyteam.configuration;
+
+import java.time.Duration;
+
+/**
+ * Create deduplication settings for benchmarks, as configured in the application profiles.
+ */
+public class BenchmarkCreateDeduplicationConfiguration extends CreateDeduplicationConfiguration {
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long getMaximumSize() {
+        return 10_000;
+    }
+
+    @Override
+    public Duration getExpireAfterWrite() {
+        return Duration.ofMinutes(1);
+    }
+}
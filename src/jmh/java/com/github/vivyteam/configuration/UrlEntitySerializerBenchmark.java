@@ -0,0 +1,47 @@
+package com.github.vivyteam.configuration;
+
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.repository.codec.UrlEntityRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Compares the encode/decode timings of the value serializers that can be configured on the reactive Redis template in
+ * {@link RedisConfiguration}. Their stored sizes are compared by {@code UrlEntityRedisSerializerTest}.
+ */
+@State(Scope.Benchmark)
+public class UrlEntitySerializerBenchmark {
+
+    @Param({"jackson", "json", "binary"})
+    private String codec;
+
+    private RedisSerializer<UrlEntity> serializer;
+    private UrlEntity urlEntity;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        serializer = switch (codec) {
+            case "jackson" -> new Jackson2JsonRedisSerializer<>(UrlEntity.class);
+            case "json" -> new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.JSON);
+            default -> new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.BINARY);
+        };
+        urlEntity = new UrlEntity("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "https://myservicedomain.de/5g2IXsE3vG");
+        serialized = serializer.serialize(urlEntity);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(urlEntity);
+    }
+
+    @Benchmark
+    public UrlEntity deserialize() {
+        return serializer.deserialize(serialized);
+    }
+}
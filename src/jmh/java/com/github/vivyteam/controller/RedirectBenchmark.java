@@ -0,0 +1,67 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.configuration.BenchmarkApiConfiguration;
+import com.github.vivyteam.configuration.BenchmarkClickCountingConfiguration;
+import com.github.vivyteam.configuration.BenchmarkCreateDeduplicationConfiguration;
+import com.github.vivyteam.exception.CustomExceptionHandler;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.repository.InMemoryUrlRepository;
+import com.github.vivyteam.service.HashShortCodeGenerator;
+import com.github.vivyteam.service.UrlShorteningService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Compares the annotated controller redirect with the functional fast path, hits and misses, through the same
+ * in-process client. Run with as many threads as cores to compare requests per second per core.
+ */
+@State(Scope.Benchmark)
+public class RedirectBenchmark {
+
+    private static final String EXISTING_SHORT_CODE = "5g2IXsE3vG";
+    private static final String MISSING_SHORT_CODE = "1234AbCdEf";
+
+    private WebTestClient controllerClient;
+    private WebTestClient fastPathClient;
+
+    @Setup
+    public void setUp() {
+        BenchmarkApiConfiguration apiConfiguration = new BenchmarkApiConfiguration();
+        InMemoryUrlRepository urlRepository = new InMemoryUrlRepository();
+        urlRepository.save(new UrlModel("https://goo.gl/maps/pRUToXUPmTvYwyAb9", EXISTING_SHORT_CODE)).block();
+        UrlShorteningService service = new UrlShorteningService(urlRepository,
+                new HashShortCodeGenerator(apiConfiguration, new SimpleMeterRegistry()), apiConfiguration,
+                new BenchmarkCreateDeduplicationConfiguration(), BenchmarkClickCountingConfiguration.unflushedClickCounter(),
+                new SimpleMeterRegistry());
+
+        controllerClient = WebTestClient.bindToController(new ShortenerUrlController(service, apiConfiguration, new SimpleMeterRegistry()))
+                .controllerAdvice(new CustomExceptionHandler())
+                .build();
+        fastPathClient = WebTestClient.bindToRouterFunction(new RedirectRouter().redirectRoute(new RedirectHandler(service, apiConfiguration, new SimpleMeterRegistry())))
+                .build();
+    }
+
+    @Benchmark
+    public WebTestClient.ResponseSpec controllerHit() {
+        return controllerClient.get().uri("/" + EXISTING_SHORT_CODE).exchange().expectStatus().isFound();
+    }
+
+    @Benchmark
+    public WebTestClient.ResponseSpec fastPathHit() {
+        return fastPathClient.get().uri("/" + EXISTING_SHORT_CODE).exchange().expectStatus().isFound();
+    }
+
+    @Benchmark
+    public WebTestClient.ResponseSpec controllerMiss() {
+        return controllerClient.get().uri("/" + MISSING_SHORT_CODE).exchange().expectStatus().isNotFound();
+    }
+
+    @Benchmark
+    public WebTestClient.ResponseSpec fastPathMiss() {
+        return fastPathClient.get().uri("/" + MISSING_SHORT_CODE).exchange().expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.configuration.BenchmarkApiConfiguration;
+import com.github.vivyteam.configuration.BenchmarkClickCountingConfiguration;
+import com.github.vivyteam.configuration.BenchmarkCreateDeduplicationConfiguration;
+import com.github.vivyteam.repository.InMemoryUrlRepository;
+import com.github.vivyteam.service.HashShortCodeGenerator;
+import com.github.vivyteam.service.UrlShorteningService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the request validation done by {@link ShortenerUrlController} before reaching the service.
+ */
+@State(Scope.Benchmark)
+public class ShortenerUrlControllerBenchmark {
+
+    private ShortenerUrlController controller;
+
+    @Setup
+    public void setUp() {
+        BenchmarkApiConfiguration apiConfiguration = new BenchmarkApiConfiguration();
+        UrlShorteningService service = new UrlShorteningService(new InMemoryUrlRepository(),
+                new HashShortCodeGenerator(apiConfiguration, new SimpleMeterRegistry()), apiConfiguration,
+                new BenchmarkCreateDeduplicationConfiguration(), BenchmarkClickCountingConfiguration.unflushedClickCounter(),
+                new SimpleMeterRegistry());
+        controller = new ShortenerUrlController(service, apiConfiguration, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public void validateShortUrlId() {
+        controller.validateShortUrlId("5g2IXsE3vG");
+    }
+
+    @Benchmark
+    public void validateLongUrl() {
+        controller.validateLongUrl("https://goo.gl/maps/pRUToXUPmTvYwyAb9?utm_source=benchmark&utm_medium=jmh");
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.vivyteam.loadtest;
+
+/**
+ * The endpoints a load test sends traffic to.
+ */
+public enum Endpoint {
+
+    CREATE("POST /shorten-url"),
+    REDIRECT("GET /{shortUrlId}"),
+    ORIGINAL("GET /original/{shortUrlId}");
+
+    private final String route;
+
+    Endpoint(String route) {
+        this.route = route;
+    }
+
+    public String route() {
+        return route;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.vivyteam.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of the requests sent to one endpoint, recorded from any thread without locking.
+ */
+public class EndpointRecorder {
+
+    private final Recorder latencies = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+
+    public void record(long latencyNanos, boolean failed) {
+        latencies.recordValue(Math.max(1, latencyNanos / 1000));
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    // Drops what was recorded so far, at the end of the warmup
+    public void reset() {
+        latencies.reset();
+        errors.reset();
+    }
+
+    public Result result(Duration elapsed) {
+        Histogram histogram = latencies.getIntervalHistogram();
+        long requests = histogram.getTotalCount();
+        return new Result(requests, errors.sum(), requests * 1000.0 / Math.max(1, elapsed.toMillis()),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+
+    /**
+     * Latencies are in microseconds, throughput in requests per second.
+     */
+    public record Result(long requests, long errors, double throughput, long p50Micros, long p99Micros,
+                         long p999Micros, long maxMicros) {
+    }
+}
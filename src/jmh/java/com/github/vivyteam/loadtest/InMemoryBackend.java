@@ -0,0 +1,30 @@
+package com.github.vivyteam.loadtest;
+
+import com.github.vivyteam.repository.InMemoryUrlRepository;
+import com.github.vivyteam.repository.UrlRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Replaces the near-cache repository, and with it every Redis round trip of the request path, with a map.
+ * <p>
+ * Not a {@code @Configuration}, so the application's component scan never picks it up: it is only added as a
+ * source of the application context when the memory backend is selected.
+ */
+public class InMemoryBackend {
+
+    static final String[] PROPERTIES = {
+            "app.shortener.storage=memory",
+            "management.health.redis.enabled=false",
+            "app.shortener.bloom-filter.enabled=false",
+            "app.shortener.clicks.enabled=false",
+            "app.shortener.hot-links.enabled=false",
+    };
+
+    // No storage backend of the application matches the memory storage, so this is the only primary repository
+    @Bean
+    @Primary
+    public UrlRepository inMemoryUrlRepository() {
+        return new InMemoryUrlRepository();
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.vivyteam.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.vivyteam.Application;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Starts the application in-process, on the in-memory repository or on Redis, and drives it with a mix of creates,
+ * redirects and original URL lookups for a fixed time.
+ * <p>
+ * The codes looked up are created before the run and drawn with a Zipf popularity, so a few codes get most of the
+ * traffic like in production. A fixed number of requests is kept in flight by a client running on its own event
+ * loops. Latencies are recorded per endpoint in HdrHistograms, and the results written as JSON so runs can be
+ * compared between commits:
+ * <pre>
+ * ./gradlew loadTest --args="--backend=redis --redis-server=/usr/bin/redis-server --duration=PT60S --concurrency=128"
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final String REDIS_PASSWORD = "loadtest";
+    private static final Duration PRELOAD_TIMEOUT = Duration.ofMinutes(5);
+
+    private final LoadTestOptions options;
+    private final HttpClient client;
+    private final ZipfDistribution popularity;
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+    private final Map<Endpoint, EndpointRecorder> recorders = new EnumMap<>(Endpoint.class);
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong createdUrls = new AtomicLong();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<String> shortCodes = List.of();
+
+    LoadTest(LoadTestOptions options, HttpClient client) {
+        this.options = options;
+        this.client = client;
+        this.popularity = new ZipfDistribution(options.codes(), options.zipfExponent());
+        this.endpoints = options.mix().keySet().toArray(Endpoint[]::new);
+        this.cumulativeWeights = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += options.mix().get(endpoints[i]);
+            cumulativeWeights[i] = total;
+            recorders.put(endpoints[i], new EndpointRecorder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        LocalRedisServer redisServer = options.redisServer() != null
+                ? LocalRedisServer.start(options.redisServer(), REDIS_PASSWORD)
+                : null;
+        LoopResources loops = LoopResources.create("loadtest");
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(options.concurrency())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try (ConfigurableApplicationContext context = startApplication(options, redisServer)) {
+            int port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.create(connections)
+                    .runOn(loops)
+                    .baseUrl("http://localhost:" + port);
+
+            LoadTestResult result = new LoadTest(options, client).run();
+            print(result);
+            System.out.println("Results written to " + write(result, options.outputDirectory()));
+        } finally {
+            connections.dispose();
+            loops.dispose();
+            if (redisServer != null) {
+                redisServer.close();
+            }
+        }
+    }
+
+    LoadTestResult run() {
+        shortCodes = preload();
+
+        traffic(options.warmup()).block();
+        recorders.values().forEach(EndpointRecorder::reset);
+
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        traffic(options.duration()).block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Map<Endpoint, EndpointRecorder.Result> results = new EnumMap<>(Endpoint.class);
+        recorders.forEach((endpoint, recorder) -> results.put(endpoint, recorder.result(elapsed)));
+        return new LoadTestResult(options.label(), options.backend(), startedAt.toString(), elapsed.toString(),
+                options.concurrency(), options.codes(), options.zipfExponent(), options.mix(), results);
+    }
+
+    // The codes the redirects and lookups are drawn from, created in one bulk request
+    private List<String> preload() {
+        String body = IntStream.range(0, options.codes())
+                .mapToObj(i -> "{\"originalUrl\":\"" + url("preloaded", i) + "\"}")
+                .collect(Collectors.joining("\n"));
+
+        String created = client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE))
+                .post()
+                .uri("/shorten-urls")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> response.status().code() == 201
+                        ? content.asString()
+                        : Mono.error(new IllegalStateException("Preloading the short codes failed with " + response.status())))
+                .block(PRELOAD_TIMEOUT);
+
+        List<String> codes = new ArrayList<>(options.codes());
+        for (String line : created.split("\n")) {
+            if (!line.isBlank()) {
+                String shortenedUrl = readTree(line).get("shortenedUrl").asText();
+                codes.add(shortenedUrl.substring(shortenedUrl.lastIndexOf('/') + 1));
+            }
+        }
+        return codes;
+    }
+
+    private Mono<Void> traffic(Duration duration) {
+        return Flux.range(0, Integer.MAX_VALUE)
+                .flatMap(i -> send(nextEndpoint()), options.concurrency())
+                .take(duration)
+                .then();
+    }
+
+    private Mono<Void> send(Endpoint endpoint) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request(endpoint)
+                    .map(status -> status == expectedStatus(endpoint))
+                    .onErrorReturn(false)
+                    .doOnNext(succeeded -> recorders.get(endpoint).record(System.nanoTime() - start, !succeeded))
+                    .then();
+        });
+    }
+
+    private Mono<Integer> request(Endpoint endpoint) {
+        return switch (endpoint) {
+            case CREATE -> client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE))
+                    .post()
+                    .uri("/shorten-url")
+                    .send(ByteBufFlux.fromString(Mono.just("{\"originalUrl\":\"" + url("created", createdUrls.getAndIncrement()) + "\"}")))
+                    .responseSingle((response, content) -> content.then(Mono.just(response.status().code())));
+            case REDIRECT -> get("/" + nextShortCode());
+            case ORIGINAL -> get("/original/" + nextShortCode());
+        };
+    }
+
+    private Mono<Integer> get(String uri) {
+        return client.get()
+                .uri(uri)
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code())));
+    }
+
+    private Endpoint nextEndpoint() {
+        int draw = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (draw < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    private String nextShortCode() {
+        return shortCodes.get(popularity.next() % shortCodes.size());
+    }
+
+    // Unique per run, so runs against the same Redis do not answer creates from the previous ones
+    private String url(String kind, long index) {
+        return "https://loadtest.example.com/" + runId + "/" + kind + "/" + index;
+    }
+
+    private static int expectedStatus(Endpoint endpoint) {
+        return switch (endpoint) {
+            case CREATE -> 201;
+            case REDIRECT -> 302;
+            case ORIGINAL -> 200;
+        };
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid preload response line: " + json, e);
+        }
+    }
+
+    // Command line arguments take precedence over the application yaml, default properties would not
+    private static ConfigurableApplicationContext startApplication(LoadTestOptions options, LocalRedisServer redisServer) {
+        List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--logging.level.com.github.vivyteam=WARN"));
+        SpringApplicationBuilder application = new SpringApplicationBuilder(Application.class);
+
+        if (options.backend().equals(LoadTestOptions.MEMORY_BACKEND)) {
+            application.sources(InMemoryBackend.class);
+            for (String property : InMemoryBackend.PROPERTIES) {
+                arguments.add("--" + property);
+            }
+        }
+        if (redisServer != null) {
+            arguments.addAll(List.of("--spring.redis.host=localhost", "--spring.redis.port=" + redisServer.port(),
+                    "--spring.redis.password=" + REDIS_PASSWORD));
+        }
+        return application.run(arguments.toArray(String[]::new));
+    }
+
+    private static void print(LoadTestResult result) {
+        System.out.printf("%-28s %10s %8s %12s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        result.endpoints().forEach((endpoint, stats) -> System.out.printf("%-28s %10d %8d %12.1f %10d %10d %10d %10d%n",
+                endpoint.route(), stats.requests(), stats.errors(), stats.throughput(),
+                stats.p50Micros(), stats.p99Micros(), stats.p999Micros(), stats.maxMicros()));
+    }
+
+    private static Path write(LoadTestResult result, Path outputDirectory) throws IOException {
+        Files.createDirectories(outputDirectory);
+        Path file = outputDirectory.resolve(result.label() + "-" + result.backend() + "-"
+                + Instant.parse(result.startedAt()).getEpochSecond() + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), result);
+        return file;
+    }
+
+    /**
+     * @param duration  the measured duration, without the warmup
+     * @param endpoints the throughput and latency percentiles of each endpoint
+     */
+    public record LoadTestResult(String label, String backend, String startedAt, String duration, int concurrency,
+                                 int codes, double zipfExponent, Map<Endpoint, Integer> mix,
+                                 Map<Endpoint, EndpointRecorder.Result> endpoints) {
+    }
+}
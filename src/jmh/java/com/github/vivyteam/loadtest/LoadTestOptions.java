@@ -0,0 +1,72 @@
+package com.github.vivyteam.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of a load test run, given as {@code --name=value} arguments.
+ *
+ * @param backend        {@code redis} or {@code memory}, the repository the application is started with
+ * @param redisServer    a redis-server executable to start on a free port, otherwise the configured Redis is used
+ * @param duration       how long the measured traffic runs
+ * @param warmup         how long traffic runs, unmeasured, before that
+ * @param concurrency    requests in flight at any time
+ * @param codes          short codes created before the run, the popularity ranks of the Zipf distribution
+ * @param zipfExponent   skew of the code popularity, 0 is uniform
+ * @param mix            relative weight of each endpoint in the traffic
+ * @param outputDirectory where the JSON results are written
+ * @param label          identifies the run in its results, typically the commit
+ */
+public record LoadTestOptions(String backend, String redisServer, Duration duration, Duration warmup, int concurrency,
+                              int codes, double zipfExponent, Map<Endpoint, Integer> mix, Path outputDirectory,
+                              String label) {
+
+    public static final String MEMORY_BACKEND = "memory";
+    public static final String REDIS_BACKEND = "redis";
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Invalid load test argument, expected --name=value: " + arg);
+            }
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        String backend = values.getOrDefault("backend", MEMORY_BACKEND);
+        if (!backend.equals(MEMORY_BACKEND) && !backend.equals(REDIS_BACKEND)) {
+            throw new IllegalArgumentException("Invalid load test backend: " + backend);
+        }
+
+        return new LoadTestOptions(
+                backend,
+                values.get("redis-server"),
+                Duration.parse(values.getOrDefault("duration", "PT30S")),
+                Duration.parse(values.getOrDefault("warmup", "PT10S")),
+                Integer.parseInt(values.getOrDefault("concurrency", "64")),
+                Integer.parseInt(values.getOrDefault("codes", "10000")),
+                Double.parseDouble(values.getOrDefault("zipf-exponent", "1.0")),
+                parseMix(values.getOrDefault("mix", "create=5,redirect=90,original=5")),
+                Path.of(values.getOrDefault("output", "build/results/loadtest")),
+                values.getOrDefault("label", System.getProperty("loadtest.label", "local")));
+    }
+
+    // create=5,redirect=90,original=5
+    private static Map<Endpoint, Integer> parseMix(String mix) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String weight : mix.split(",")) {
+            String[] parts = weight.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid traffic mix weight: " + weight);
+            }
+            weights.put(Endpoint.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Invalid traffic mix, no endpoint has a weight: " + mix);
+        }
+        return weights;
+    }
+}
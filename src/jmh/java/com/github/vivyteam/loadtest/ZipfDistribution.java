@@ -0,0 +1,35 @@
+package com.github.vivyteam.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf distribution over the ranks {@code 0} to {@code n - 1}: rank {@code k} is drawn with a probability
+ * proportional to {@code 1 / (k + 1)^exponent}, the popularity curve of links shared on the web.
+ * <p>
+ * The cumulative probabilities are computed once, a draw is a binary search over them.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid Zipf distribution size: " + n);
+        }
+        this.cumulative = new double[n];
+        double total = 0;
+        for (int rank = 0; rank < n; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public int next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
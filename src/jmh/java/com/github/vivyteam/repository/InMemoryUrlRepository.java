@@ -0,0 +1,64 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.model.UrlModel;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map backed stand-in for the Redis repository, so benchmarks measure the service without network round trips.
+ */
+public class InMemoryUrlRepository implements UrlRepository {
+
+    private final Map<String, UrlModel> byShortenedUrl = new ConcurrentHashMap<>();
+    private final Map<String, UrlModel> byOriginalUrl = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<UrlModel> save(UrlModel urlModel) {
+        byShortenedUrl.put(urlModel.shortenedUrl(), urlModel);
+        byOriginalUrl.put(urlModel.originalUrl(), urlModel);
+        return Mono.just(urlModel);
+    }
+
+    @Override
+    public Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes, Instant expiresAt) {
+        UrlModel existing = byOriginalUrl.get(originalUrl);
+        if (existing != null) {
+            return Mono.just(existing);
+        }
+
+        for (String shortCode : candidateShortCodes) {
+            UrlModel urlModel = new UrlModel(originalUrl, shortCode, expiresAt);
+            UrlModel current = byShortenedUrl.putIfAbsent(shortCode, urlModel);
+            if (current == null || current.equals(urlModel)) {
+                byOriginalUrl.put(originalUrl, urlModel);
+                return Mono.just(urlModel);
+            }
+        }
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<UrlModel> findByShortenedUrl(String shortenedUrl) {
+        return Mono.justOrEmpty(byShortenedUrl.get(shortenedUrl));
+    }
+
+    @Override
+    public Mono<UrlModel> findByOriginalUrl(String originalUrl) {
+        return Mono.justOrEmpty(byOriginalUrl.get(originalUrl));
+    }
+
+    @Override
+    public Flux<UrlModel> saveAll(List<UrlModel> urlModels) {
+        return Flux.fromIterable(urlModels).concatMap(this::save);
+    }
+
+    @Override
+    public Flux<UrlModel> findAllByOriginalUrl(List<String> originalUrls) {
+        return Flux.fromIterable(originalUrls).concatMap(this::findByOriginalUrl);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.vivyteam.service;
+
+import com.github.vivyteam.configuration.BenchmarkApiConfiguration;
+import com.github.vivyteam.configuration.BenchmarkClickCountingConfiguration;
+import com.github.vivyteam.configuration.BenchmarkCreateDeduplicationConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.repository.InMemoryUrlRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end service benchmarks against an in-memory repository, so the numbers exclude Redis round trips.
+ */
+@State(Scope.Benchmark)
+public class UrlShorteningServiceBenchmark {
+
+    @Param("1024")
+    private int urlCount;
+
+    private UrlShorteningService urlShorteningService;
+    private String[] originalUrls;
+    private String[] shortCodes;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger newUrlSequence = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        BenchmarkApiConfiguration apiConfiguration = new BenchmarkApiConfiguration();
+        urlShorteningService = new UrlShorteningService(new InMemoryUrlRepository(),
+                new HashShortCodeGenerator(apiConfiguration, new SimpleMeterRegistry()), apiConfiguration,
+                new BenchmarkCreateDeduplicationConfiguration(), BenchmarkClickCountingConfiguration.unflushedClickCounter(),
+                new SimpleMeterRegistry());
+        originalUrls = new String[urlCount];
+        shortCodes = new String[urlCount];
+
+        for (int i = 0; i < urlCount; i++) {
+            originalUrls[i] = "https://example.com/articles/" + i + "?utm_source=benchmark";
+            shortCodes[i] = UrlEntity.toShortCode(urlShorteningService.createShortUrl(originalUrls[i]).block().shortenedUrl());
+        }
+    }
+
+    @Benchmark
+    public UrlModel createNewShortUrl() {
+        return urlShorteningService.createShortUrl("https://example.com/new/" + newUrlSequence.incrementAndGet()).block();
+    }
+
+    @Benchmark
+    public UrlModel createExistingShortUrl() {
+        return urlShorteningService.createShortUrl(originalUrls[next()]).block();
+    }
+
+    @Benchmark
+    public UrlModel findShortUrlAndRedirect() {
+        return urlShorteningService.findShortUrlAndRedirect(shortCodes[next()]).block();
+    }
+
+    private int next() {
+        return (cursor.getAndIncrement() & Integer.MAX_VALUE) % urlCount;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.vivyteam.service.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Thread)
+public class Base62EncoderBenchmark {
+
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+    private final ShortCodeHasher shortCodeHasher = new ShortCodeHasher();
+
+    private byte[] digest;
+    private BigInteger bigInteger;
+    private String encoded;
+    private String url;
+
+    @Setup
+    public void setUp() {
+        digest = new byte[32];
+        ThreadLocalRandom.current().nextBytes(digest);
+        bigInteger = new BigInteger(1, Arrays.copyOfRange(digest, 0, 7));
+        encoded = base62Encoder.encode(digest, 0, 7, 7);
+        url = "https://goo.gl/maps/pRUToXUPmTvYwyAb9?utm_source=benchmark&utm_medium=jmh";
+    }
+
+    @Benchmark
+    public String encodeDigestSlice() {
+        return base62Encoder.encode(digest, 0, 7, 7);
+    }
+
+    @Benchmark
+    public String encodeBigInteger() {
+        return base62Encoder.encode(bigInteger);
+    }
+
+    @Benchmark
+    public long decode() {
+        return base62Encoder.decode(encoded);
+    }
+
+    @Benchmark
+    public String hashUrl() {
+        return shortCodeHasher.hash(url, 7);
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class BloomFilterConfiguration {
+
+    @Value("${app.shortener.bloom-filter.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.bloom-filter.expected-insertions}")
+    private long expectedInsertions;
+
+    @Value("${app.shortener.bloom-filter.false-positive-rate}")
+    private double falsePositiveRate;
+
+    @Value("${app.shortener.bloom-filter.resync-period}")
+    private Duration resyncPeriod;
+
+    @Value("${app.shortener.bloom-filter.max-verifications-per-second}")
+    private int maxVerificationsPerSecond;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public Duration getResyncPeriod() {
+        return resyncPeriod;
+    }
+
+    public int getMaxVerificationsPerSecond() {
+        return maxVerificationsPerSecond;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ClickCountingConfiguration {
+
+    @Value("${app.shortener.clicks.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.clicks.flush-period}")
+    private Duration flushPeriod;
+
+    @Value("${app.shortener.clicks.max-pending-codes}")
+    private int maxPendingCodes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getFlushPeriod() {
+        return flushPeriod;
+    }
+
+    public int getMaxPendingCodes() {
+        return maxPendingCodes;
+    }
+}
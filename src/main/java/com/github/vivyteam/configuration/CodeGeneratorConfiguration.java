@@ -0,0 +1,37 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CodeGeneratorConfiguration {
+
+    public static final String STRATEGY_PROPERTY = "app.shortener.code-generator.strategy";
+    public static final String HASH_STRATEGY = "hash";
+    public static final String SEQUENCE_STRATEGY = "sequence";
+
+    @Value("${app.shortener.code-generator.lease-size}")
+    private int leaseSize;
+
+    @Value("${app.shortener.code-generator.permute}")
+    private boolean permute;
+
+    // Left empty by default, so permuting never runs with a key every deployment shares
+    @Value("${app.shortener.code-generator.permutation-key}")
+    private Long permutationKey;
+
+    public int getLeaseSize() {
+        return leaseSize;
+    }
+
+    public boolean isPermute() {
+        return permute;
+    }
+
+    /**
+     * @return the permutation key, or null when none is set
+     */
+    public Long getPermutationKey() {
+        return permutationKey;
+    }
+}
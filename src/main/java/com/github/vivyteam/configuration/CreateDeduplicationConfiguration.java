@@ -0,0 +1,31 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CreateDeduplicationConfiguration {
+
+    @Value("${app.shortener.create-deduplication.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.create-deduplication.maximum-size}")
+    private long maximumSize;
+
+    @Value("${app.shortener.create-deduplication.expire-after-write}")
+    private Duration expireAfterWrite;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ExpiryConfiguration {
+
+    @Value("${app.shortener.expiry.bucket-width}")
+    private Duration bucketWidth;
+
+    @Value("${app.shortener.expiry.sweeper-enabled}")
+    private boolean sweeperEnabled;
+
+    @Value("${app.shortener.expiry.sweep-period}")
+    private Duration sweepPeriod;
+
+    @Value("${app.shortener.expiry.batch-size}")
+    private int batchSize;
+
+    @Value("${app.shortener.expiry.max-deletes-per-second}")
+    private int maxDeletesPerSecond;
+
+    public Duration getBucketWidth() {
+        return bucketWidth;
+    }
+
+    public boolean isSweeperEnabled() {
+        return sweeperEnabled;
+    }
+
+    public Duration getSweepPeriod() {
+        return sweepPeriod;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxDeletesPerSecond() {
+        return maxDeletesPerSecond;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class HotLinksConfiguration {
+
+    @Value("${app.shortener.hot-links.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.hot-links.capacity}")
+    private int capacity;
+
+    @Value("${app.shortener.hot-links.top}")
+    private int top;
+
+    @Value("${app.shortener.hot-links.window}")
+    private Duration window;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class HotSetConfiguration {
+
+    @Value("${app.shortener.hot-set.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.hot-set.file}")
+    private Path file;
+
+    @Value("${app.shortener.hot-set.size}")
+    private int size;
+
+    @Value("${app.shortener.hot-set.snapshot-period}")
+    private Duration snapshotPeriod;
+
+    @Value("${app.shortener.hot-set.load-concurrency}")
+    private int loadConcurrency;
+
+    @Value("${app.shortener.hot-set.load-timeout}")
+    private Duration loadTimeout;
+
+    @Value("${app.shortener.hot-set.warm-hit-ratio}")
+    private double warmHitRatio;
+
+    @Value("${app.shortener.hot-set.max-warm-up}")
+    private Duration maxWarmUp;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Duration getSnapshotPeriod() {
+        return snapshotPeriod;
+    }
+
+    public int getLoadConcurrency() {
+        return loadConcurrency;
+    }
+
+    public Duration getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    public double getWarmHitRatio() {
+        return warmHitRatio;
+    }
+
+    public Duration getMaxWarmUp() {
+        return maxWarmUp;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MigrationConfiguration {
+
+    @Value("${app.shortener.migration.legacy-lookup-enabled}")
+    private boolean legacyLookupEnabled;
+
+    @Value("${app.shortener.migration.short-codes-enabled}")
+    private boolean shortCodesMigrationEnabled;
+
+    @Value("${app.shortener.migration.batch-size}")
+    private int batchSize;
+
+    @Value("${app.shortener.migration.rebucketing-enabled}")
+    private boolean rebucketingEnabled;
+
+    @Value("${app.shortener.migration.previous-buckets}")
+    private int previousBuckets;
+
+    public boolean isLegacyLookupEnabled() {
+        return legacyLookupEnabled;
+    }
+
+    public boolean isShortCodesMigrationEnabled() {
+        return shortCodesMigrationEnabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isRebucketingEnabled() {
+        return rebucketingEnabled;
+    }
+
+    public int getPreviousBuckets() {
+        return previousBuckets;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+public class MirrorConfiguration {
+
+    @Value("${app.shortener.mirror.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.mirror.expected-entries}")
+    private int expectedEntries;
+
+    @Value("${app.shortener.mirror.chunk-size}")
+    private DataSize chunkSize;
+
+    @Value("${app.shortener.mirror.resync-period}")
+    private Duration resyncPeriod;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getExpectedEntries() {
+        return expectedEntries;
+    }
+
+    public DataSize getChunkSize() {
+        return chunkSize;
+    }
+
+    public Duration getResyncPeriod() {
+        return resyncPeriod;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class NearCacheConfiguration {
+
+    @Value("${app.shortener.near-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.near-cache.maximum-size}")
+    private long maximumSize;
+
+    @Value("${app.shortener.near-cache.expire-after-write}")
+    private Duration expireAfterWrite;
+
+    @Value("${app.shortener.near-cache.coalesce-lookups}")
+    private boolean coalesceLookups;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public boolean isCoalesceLookups() {
+        return coalesceLookups;
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.vivyteam.configuration;
+
+import com.github.vivyteam.controller.RequestObservationFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ObservabilityConfiguration {
+
+    @Value("${app.shortener.observability.slow-request-threshold}")
+    private Duration slowRequestThreshold;
+
+    public Duration getSlowRequestThreshold() {
+        return slowRequestThreshold;
+    }
+
+    @Bean
+    public RequestObservationFilter requestObservationFilter(MeterRegistry meterRegistry) {
+        return new RequestObservationFilter(slowRequestThreshold, meterRegistry);
+    }
+
+    // Reactor Netty metrics include the pending tasks of every event loop, the first sign of a blocked or saturated loop
+    @Bean
+    @ConditionalOnProperty(name = "app.shortener.observability.netty-metrics-enabled", havingValue = "true")
+    public NettyServerCustomizer nettyServerMetrics() {
+        return httpServer -> httpServer.metrics(true, ObservabilityConfiguration::uriTemplate);
+    }
+
+    // Every short code is a distinct URI, tagging them as is would create a meter per code
+    static String uriTemplate(String uri) {
+        if (uri.startsWith("/actuator") || uri.startsWith("/swagger") || uri.startsWith("/v3/api-docs")
+                || uri.equals("/shorten-url") || uri.equals("/shorten-urls")) {
+            return uri;
+        }
+        if (uri.startsWith("/original/")) {
+            return "/original/{shortUrlId}";
+        }
+        if (uri.startsWith("/stats/")) {
+            return "/stats/{shortUrlId}";
+        }
+        return "/{shortUrlId}";
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ReadRoutingConfiguration {
+
+    @Value("${app.shortener.redis.read-your-writes.enabled}")
+    private boolean readYourWritesEnabled;
+
+    @Value("${app.shortener.redis.read-your-writes.window}")
+    private Duration readYourWritesWindow;
+
+    @Value("${app.shortener.redis.read-your-writes.maximum-size}")
+    private long readYourWritesMaximumSize;
+
+    @Value("${app.shortener.redis.read-your-writes.max-primary-retries-per-second}")
+    private int maxPrimaryRetriesPerSecond;
+
+    public boolean isReadYourWritesEnabled() {
+        return readYourWritesEnabled;
+    }
+
+    public Duration getReadYourWritesWindow() {
+        return readYourWritesWindow;
+    }
+
+    public long getReadYourWritesMaximumSize() {
+        return readYourWritesMaximumSize;
+    }
+
+    public int getMaxPrimaryRetriesPerSecond() {
+        return maxPrimaryRetriesPerSecond;
+    }
+}
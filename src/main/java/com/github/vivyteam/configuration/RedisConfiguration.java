@@ -1,22 +1,42 @@
 package com.github.vivyteam.configuration;
 
 import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.repository.codec.UrlEntityRedisSerializer;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration.WithPassword;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+
 @Configuration
 public class RedisConfiguration {
 
+    public static final String READ_CONNECTION_FACTORY = "readReactiveRedisConnectionFactory";
+    public static final String READ_TEMPLATE = "readReactiveRedisTemplate";
+    public static final String READ_STRING_TEMPLATE = "readReactiveStringRedisTemplate";
+
     @Value("${spring.redis.host}")
     private String redisHost;
 
@@ -26,20 +46,78 @@ public class RedisConfiguration {
     @Value("${spring.redis.password}")
     private String redisPassword;
 
+    @Value("${app.shortener.redis.value-codec}")
+    private UrlEntityRedisSerializer.Format valueCodec;
+
+    @Value("${app.shortener.redis.read-from}")
+    private String readFrom;
+
+    @Value("${app.shortener.redis.replicas}")
+    private List<String> replicaNodes;
+
+    @Value("${app.shortener.redis.sentinel.master}")
+    private String sentinelMaster;
+
+    @Value("${app.shortener.redis.sentinel.nodes}")
+    private List<String> sentinelNodes;
+
+    @Value("${app.shortener.redis.cluster.nodes}")
+    private List<String> clusterNodes;
+
+    @Value("${app.shortener.redis.cluster.max-redirects}")
+    private int clusterMaxRedirects;
+
+    @Value("${app.shortener.redis.cluster.topology-refresh-period}")
+    private Duration clusterTopologyRefreshPeriod;
+
+    // Writes, and the reads that must see them, always go to the primary. Both factories share Boot's client
+    // resources, whose command latency recorder publishes the lettuce.command metrics of every connection.
     @Bean
     @Primary
-    public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
-        RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration(redisHost, redisPort);
-        redisConfig.setPassword(redisPassword);
-        return new LettuceConnectionFactory(redisConfig);
+    public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory(ClientResources clientResources) {
+        return connectionFactory(LettuceClientConfiguration.builder().clientResources(clientResources));
+    }
+
+    // Redirect and original URL lookups may be served by replicas, as configured by read-from
+    @Bean(READ_CONNECTION_FACTORY)
+    public ReactiveRedisConnectionFactory readReactiveRedisConnectionFactory(ClientResources clientResources) {
+        return connectionFactory(LettuceClientConfiguration.builder().clientResources(clientResources).readFrom(ReadFrom.valueOf(readFrom)));
+    }
+
+    @Bean
+    public RedisSerializer<UrlEntity> urlEntitySerializer() {
+        return new UrlEntityRedisSerializer(valueCodec);
+    }
+
+    @Bean
+    @Primary
+    public ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate(ReactiveRedisConnectionFactory connectionFactory,
+                                                                          RedisSerializer<UrlEntity> urlEntitySerializer) {
+        return urlEntityTemplate(connectionFactory, urlEntitySerializer);
+    }
+
+    @Bean(READ_TEMPLATE)
+    public ReactiveRedisTemplate<String, UrlEntity> readReactiveRedisTemplate(@Qualifier(READ_CONNECTION_FACTORY) ReactiveRedisConnectionFactory connectionFactory,
+                                                                              RedisSerializer<UrlEntity> urlEntitySerializer) {
+        return urlEntityTemplate(connectionFactory, urlEntitySerializer);
     }
 
     @Bean
-    public ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+    @Primary
+    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+        return new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @Bean(READ_STRING_TEMPLATE)
+    public ReactiveStringRedisTemplate readReactiveStringRedisTemplate(@Qualifier(READ_CONNECTION_FACTORY) ReactiveRedisConnectionFactory connectionFactory) {
+        return new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    private static ReactiveRedisTemplate<String, UrlEntity> urlEntityTemplate(ReactiveRedisConnectionFactory connectionFactory,
+                                                                              RedisSerializer<UrlEntity> urlEntitySerializer) {
         RedisSerializationContext.RedisSerializationContextBuilder<String, UrlEntity> builder = RedisSerializationContext.newSerializationContext();
 
         RedisSerializer<String> stringSerializer = new StringRedisSerializer();
-        RedisSerializer<UrlEntity> urlEntitySerializer = new Jackson2JsonRedisSerializer<>(UrlEntity.class);
 
         builder.key(stringSerializer)
                 .value(urlEntitySerializer)
@@ -51,4 +129,48 @@ public class RedisConfiguration {
         return new ReactiveRedisTemplate<>(connectionFactory, serializationContext);
     }
 
+    // Cluster seed nodes win over a Sentinel master, which wins over static replicas. Without any of them a single
+    // server is used, whose replicas are still discovered through INFO REPLICATION when reading from them.
+    private LettuceConnectionFactory connectionFactory(LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfigBuilder) {
+        List<String> clusterSeeds = nonBlank(clusterNodes);
+        if (!clusterSeeds.isEmpty()) {
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(clusterSeeds);
+            clusterConfig.setMaxRedirects(clusterMaxRedirects);
+
+            // Refreshing the topology on MOVED/ASK redirects and periodically follows slot migrations while resharding
+            ClusterTopologyRefreshOptions topologyRefreshOptions = ClusterTopologyRefreshOptions.builder()
+                    .enableAllAdaptiveRefreshTriggers()
+                    .enablePeriodicRefresh(clusterTopologyRefreshPeriod)
+                    .build();
+            LettuceClientConfiguration clientConfig = clientConfigBuilder
+                    .clientOptions(ClusterClientOptions.builder().topologyRefreshOptions(topologyRefreshOptions).build())
+                    .build();
+            return new LettuceConnectionFactory(withPassword(clusterConfig), clientConfig);
+        }
+
+        LettuceClientConfiguration clientConfig = clientConfigBuilder.build();
+
+        if (!sentinelMaster.isBlank()) {
+            RedisSentinelConfiguration sentinelConfig = new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(nonBlank(sentinelNodes)));
+            return new LettuceConnectionFactory(withPassword(sentinelConfig), clientConfig);
+        }
+
+        List<String> replicas = nonBlank(replicaNodes);
+        if (!replicas.isEmpty()) {
+            RedisStaticMasterReplicaConfiguration replicaConfig = new RedisStaticMasterReplicaConfiguration(redisHost, redisPort);
+            replicas.stream().map(RedisNode::fromString).forEach(node -> replicaConfig.node(node.getHost(), node.getPort()));
+            return new LettuceConnectionFactory(withPassword(replicaConfig), clientConfig);
+        }
+
+        return new LettuceConnectionFactory(withPassword(new RedisStandaloneConfiguration(redisHost, redisPort)), clientConfig);
+    }
+
+    private <T extends WithPassword> T withPassword(T redisConfig) {
+        redisConfig.setPassword(redisPassword);
+        return redisConfig;
+    }
+
+    private static List<String> nonBlank(List<String> values) {
+        return values.stream().filter(value -> !value.isBlank()).toList();
+    }
 }
@@ -0,0 +1,51 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class SegmentStorageConfiguration {
+
+    public static final String STORAGE_PROPERTY = "app.shortener.storage";
+    public static final String REDIS_STORAGE = "redis";
+    public static final String SEGMENTS_STORAGE = "segments";
+
+    @Value("${app.shortener.segments.directory}")
+    private Path directory;
+
+    @Value("${app.shortener.segments.segment-size}")
+    private DataSize segmentSize;
+
+    @Value("${app.shortener.segments.sync-period}")
+    private Duration syncPeriod;
+
+    @Value("${app.shortener.segments.compaction-period}")
+    private Duration compactionPeriod;
+
+    @Value("${app.shortener.segments.compaction-threshold}")
+    private double compactionThreshold;
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public DataSize getSegmentSize() {
+        return segmentSize;
+    }
+
+    public Duration getSyncPeriod() {
+        return syncPeriod;
+    }
+
+    public Duration getCompactionPeriod() {
+        return compactionPeriod;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Turns off the Redis health indicator when the mappings are kept in local segments, so a node running without Redis
+ * is not reported down. Added last, after the application profiles are loaded, so an explicit setting still wins.
+ */
+public class SegmentStorageEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+    static final String PROPERTY_SOURCE_NAME = "segmentStorageDefaults";
+    static final String REDIS_HEALTH_PROPERTY = "management.health.redis.enabled";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (SegmentStorageConfiguration.SEGMENTS_STORAGE.equals(environment.getProperty(SegmentStorageConfiguration.STORAGE_PROPERTY))) {
+            environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE_NAME, Map.of(REDIS_HEALTH_PROPERTY, false)));
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ShardingConfiguration {
+
+    @Value("${app.shortener.redis.buckets}")
+    private int buckets;
+
+    public int getBuckets() {
+        return buckets;
+    }
+}
@@ -3,6 +3,8 @@ package com.github.vivyteam.configuration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class ShorternerApiConfiguration {
 
@@ -12,6 +14,15 @@ public class ShorternerApiConfiguration {
     @Value("${app.shortener.domain-url}")
     private String domainUrl;
 
+    @Value("${app.shortener.bulk-chunk-size}")
+    private int bulkChunkSize;
+
+    @Value("${app.shortener.collision-candidates}")
+    private int collisionCandidates;
+
+    @Value("${app.shortener.max-ttl}")
+    private Duration maxTtl;
+
     public int getUrlLength() {
         return urlLength;
     }
@@ -19,4 +30,16 @@ public class ShorternerApiConfiguration {
     public String getDomainUrl() {
         return domainUrl;
     }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    public int getCollisionCandidates() {
+        return collisionCandidates;
+    }
+
+    public Duration getMaxTtl() {
+        return maxTtl;
+    }
 }
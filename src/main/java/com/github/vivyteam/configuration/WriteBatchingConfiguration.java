@@ -0,0 +1,38 @@
+package com.github.vivyteam.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class WriteBatchingConfiguration {
+
+    @Value("${app.shortener.redis.write-batching.enabled}")
+    private boolean enabled;
+
+    @Value("${app.shortener.redis.write-batching.max-batch-size}")
+    private int maxBatchSize;
+
+    @Value("${app.shortener.redis.write-batching.window}")
+    private Duration window;
+
+    @Value("${app.shortener.redis.write-batching.max-in-flight-flushes}")
+    private int maxInFlightFlushes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getMaxInFlightFlushes() {
+        return maxInFlightFlushes;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.vivyteam.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.vivyteam.configuration.HotSetConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.repository.HotSetSnapshot;
+import com.github.vivyteam.repository.NearCacheUrlRepository;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the node as {@code cacheWarm} once its near-cache serves enough lookups, so the readiness group holds
+ * traffic back until then.
+ * <p>
+ * Right after startup there is no traffic to measure a hit ratio on, so the share of the loaded hot set snapshot's
+ * lookups the cache can serve stands in for it. Once enough lookups went through the cache, its actual hit ratio is
+ * used instead. Past the maximum warm-up the node is reported warm whatever the ratio, and it stays so afterwards.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class CacheWarmHealthIndicator implements HealthIndicator {
+
+    static final long MIN_LOOKUPS = 1000;
+
+    private final HotSetSnapshot hotSetSnapshot;
+    private final NearCacheUrlRepository nearCacheUrlRepository;
+    private final HotSetConfiguration hotSetConfiguration;
+    private final long startedAt = System.nanoTime();
+    private volatile boolean warm;
+
+    public CacheWarmHealthIndicator(HotSetSnapshot hotSetSnapshot,
+                                    NearCacheUrlRepository nearCacheUrlRepository,
+                                    HotSetConfiguration hotSetConfiguration) {
+        this.hotSetSnapshot = hotSetSnapshot;
+        this.nearCacheUrlRepository = nearCacheUrlRepository;
+        this.hotSetConfiguration = hotSetConfiguration;
+    }
+
+    @Override
+    public Health health() {
+        if (!hotSetConfiguration.isEnabled()) {
+            return Health.up().build();
+        }
+
+        CacheStats stats = nearCacheUrlRepository.cacheStats();
+        double hitRatio = stats.requestCount() >= MIN_LOOKUPS ? stats.hitRate() : hotSetSnapshot.coverage();
+        boolean warmedUp = System.nanoTime() - startedAt >= hotSetConfiguration.getMaxWarmUp().toNanos();
+        if (!warm && (hotSetSnapshot.isLoaded() && hitRatio >= hotSetConfiguration.getWarmHitRatio() || warmedUp)) {
+            warm = true;
+        }
+
+        return (warm ? Health.up() : Health.outOfService())
+                .withDetail("snapshotLoaded", hotSetSnapshot.isLoaded())
+                .withDetail("hitRatio", hitRatio)
+                .withDetail("lookups", stats.requestCount())
+                .withDetail("warmHitRatio", hotSetConfiguration.getWarmHitRatio())
+                .build();
+    }
+}
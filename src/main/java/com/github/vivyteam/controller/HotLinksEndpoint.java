@@ -0,0 +1,31 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.HotLinksModel;
+import com.github.vivyteam.repository.HotLinkTracker;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Exposes the most redirected short codes at {@code /actuator/hotlinks}, to size caches and spot abuse.
+ */
+@Component
+@Endpoint(id = "hotlinks")
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class HotLinksEndpoint {
+
+    private final HotLinkTracker hotLinkTracker;
+
+    public HotLinksEndpoint(HotLinkTracker hotLinkTracker) {
+        this.hotLinkTracker = hotLinkTracker;
+    }
+
+    @ReadOperation
+    public Mono<HotLinksModel> hotLinks() {
+        return hotLinkTracker.hotLinks();
+    }
+}
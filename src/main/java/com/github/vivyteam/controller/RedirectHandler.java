@@ -0,0 +1,66 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.service.UrlShorteningService;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Functional handler of {@code GET /{shortUrlId}} redirects, the fast path to the annotated controller method.
+ * <p>
+ * Invalid codes do not match its route and are left to the controller, which answers them with a 400. A valid code
+ * is looked up and answered with a 302 whose {@code Location} is the stored URL, or with a static 404 body; neither
+ * throws. Original URLs were checked when shortened, so only non-ASCII ones need encoding into the header.
+ */
+@Component
+public class RedirectHandler {
+
+    static final String SHORT_URL_ID = "shortUrlId";
+    private static final String NOT_FOUND_BODY = "Unique Identifier of URL not found";
+
+    private final UrlShorteningService urlShorteningService;
+    private final ShorternerApiConfiguration apiConfiguration;
+    private final Timer validationStage;
+
+    public RedirectHandler(UrlShorteningService urlShorteningService, ShorternerApiConfiguration apiConfiguration,
+                           MeterRegistry meterRegistry) {
+        this.urlShorteningService = urlShorteningService;
+        this.apiConfiguration = apiConfiguration;
+        this.validationStage = StageTimers.timer(meterRegistry, StageTimers.VALIDATION);
+    }
+
+    public RequestPredicate validShortUrlId() {
+        return request -> validationStage.record(() -> ShortenerUrlController.isValidShortUrlId(request.pathVariable(SHORT_URL_ID),
+                apiConfiguration.getUrlLength()));
+    }
+
+    public Mono<ServerResponse> redirect(ServerRequest request) {
+        return urlShorteningService.findRedirect(request.pathVariable(SHORT_URL_ID))
+                .flatMap(urlModel -> ServerResponse.status(HttpStatus.FOUND)
+                        .header(HttpHeaders.LOCATION, location(urlModel.originalUrl()))
+                        .build())
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.NOT_FOUND)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .bodyValue(NOT_FOUND_BODY)));
+    }
+
+    static String location(String originalUrl) {
+        for (int i = 0; i < originalUrl.length(); i++) {
+            if (originalUrl.charAt(i) > 0x7F) {
+                return URI.create(originalUrl).toASCIIString();
+            }
+        }
+        return originalUrl;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.vivyteam.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Routes valid redirects to {@link RedirectHandler}. Router functions are mapped before annotated controllers, so
+ * when enabled the route takes over {@code GET /{shortUrlId}} from {@link ShortenerUrlController}.
+ */
+@Configuration
+public class RedirectRouter {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.shortener.redirect.fast-path-enabled", havingValue = "true")
+    public RouterFunction<ServerResponse> redirectRoute(RedirectHandler redirectHandler) {
+        return RouterFunctions.route(RequestPredicates.GET("/{" + RedirectHandler.SHORT_URL_ID + "}")
+                .and(redirectHandler.validShortUrlId()), redirectHandler::redirect);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the response write of every request, and logs only the requests that were slow or failed.
+ * <p>
+ * The response write is timed from the moment the response is committed, once its status and headers are final,
+ * until the exchange completes. Requests are otherwise only logged at debug level, so the log of a busy node is
+ * made of the requests worth looking at, each with its trace id.
+ */
+public class RequestObservationFilter implements WebFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestObservationFilter.class);
+
+    private final Duration slowRequestThreshold;
+    private final Timer responseWriteStage;
+
+    public RequestObservationFilter(Duration slowRequestThreshold, MeterRegistry meterRegistry) {
+        this.slowRequestThreshold = slowRequestThreshold;
+        this.responseWriteStage = StageTimers.timer(meterRegistry, StageTimers.RESPONSE_WRITE);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long receivedAt = System.nanoTime();
+        AtomicLong committedAt = new AtomicLong();
+        exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> committedAt.set(System.nanoTime())));
+
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    long completedAt = System.nanoTime();
+                    if (committedAt.get() != 0) {
+                        responseWriteStage.record(completedAt - committedAt.get(), TimeUnit.NANOSECONDS);
+                    }
+                    log(exchange, signal, Duration.ofNanos(completedAt - receivedAt));
+                });
+    }
+
+    private void log(ServerWebExchange exchange, SignalType signal, Duration elapsed) {
+        HttpStatus status = exchange.getResponse().getStatusCode();
+        if (signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError())) {
+            LOGGER.warn("Failed request {} {} -> {} in {} ms", exchange.getRequest().getMethod(),
+                    exchange.getRequest().getPath(), status, elapsed.toMillis());
+        } else if (elapsed.compareTo(slowRequestThreshold) > 0) {
+            LOGGER.warn("Slow request {} {} -> {} in {} ms", exchange.getRequest().getMethod(),
+                    exchange.getRequest().getPath(), status, elapsed.toMillis());
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Request {} {} -> {} in {} ms", exchange.getRequest().getMethod(),
+                    exchange.getRequest().getPath(), status, elapsed.toMillis());
+        }
+    }
+}
@@ -3,8 +3,14 @@ package com.github.vivyteam.controller;
 import com.github.vivyteam.configuration.ShorternerApiConfiguration;
 import com.github.vivyteam.exception.InvalidShortenedUrlException;
 import com.github.vivyteam.model.RequestUrlEntity;
+import com.github.vivyteam.model.ShortenResultModel;
 import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.model.UrlStatsModel;
 import com.github.vivyteam.service.UrlShorteningService;
+import com.github.vivyteam.service.utils.Base62Encoder;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -16,6 +22,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
@@ -23,6 +30,9 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("")
@@ -35,10 +45,14 @@ public class ShortenerUrlController {
 
     private final ShorternerApiConfiguration apiConfiguration;
 
+    private final Timer validationStage;
 
-    public ShortenerUrlController(UrlShorteningService urlShorteningService, ShorternerApiConfiguration apiConfiguration) {
+
+    public ShortenerUrlController(UrlShorteningService urlShorteningService, ShorternerApiConfiguration apiConfiguration,
+                                  MeterRegistry meterRegistry) {
         this.urlShorteningService = urlShorteningService;
         this.apiConfiguration = apiConfiguration;
+        this.validationStage = StageTimers.timer(meterRegistry, StageTimers.VALIDATION);
     }
 
     @Operation(summary = "Shorten a URL")
@@ -48,8 +62,23 @@ public class ShortenerUrlController {
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<UrlModel> shortenUrl(@RequestBody RequestUrlEntity originalUrl) {
         validateLongUrl(originalUrl.originalUrl());
+        validateTtl(originalUrl.ttl());
 
-        return urlShorteningService.createShortUrl(originalUrl.originalUrl());
+        return urlShorteningService.createShortUrl(originalUrl.originalUrl(), originalUrl.ttl());
+    }
+
+    // Links that expire are created one by one. The status is sent before the body is read, so an invalid URL gets an
+    // error record instead of failing the stream and the URLs after it.
+    @Operation(summary = "Shorten a batch of URLs sent as a JSON array or NDJSON stream")
+    @ApiResponse(responseCode = "201", description = "URLs shortened or rejected one by one, streamed back as NDJSON",
+            content = @Content(schema = @Schema(implementation = ShortenResultModel.class)))
+    @PostMapping(value = "/shorten-urls", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Flux<ShortenResultModel> shortenUrls(@RequestBody Flux<RequestUrlEntity> originalUrls) {
+        return originalUrls
+                .buffer(apiConfiguration.getBulkChunkSize())
+                .concatMap(this::shortenUrlChunk, 1);
     }
 
     @Operation(summary = "Get the original URL by its short version")
@@ -59,7 +88,17 @@ public class ShortenerUrlController {
     public Mono<UrlModel> getOriginalUrl(@PathVariable("shortUrlId") String shortUrlId) {
         validateShortUrlId(shortUrlId);
 
-        return urlShorteningService.findOriginalUrlByShortUrl(apiConfiguration.getDomainUrl() + shortUrlId);
+        return urlShorteningService.findOriginalUrlByShortUrl(shortUrlId);
+    }
+
+    @Operation(summary = "Get the redirect count of a short URL")
+    @ApiResponse(responseCode = "200", description = "Short URL stats found",
+            content = @Content(schema = @Schema(implementation = UrlStatsModel.class)))
+    @GetMapping(value = "/stats/{shortUrlId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<UrlStatsModel> getUrlStats(@PathVariable("shortUrlId") String shortUrlId) {
+        validateShortUrlId(shortUrlId);
+
+        return urlShorteningService.findUrlStats(shortUrlId);
     }
 
     @Operation(summary = "Redirect to the original URL by its short version")
@@ -69,7 +108,7 @@ public class ShortenerUrlController {
     public Mono<Void> redirectToOriginalUrl(@Valid @PathVariable("shortUrlId") String shortUrlId, ServerWebExchange exchange) {
         validateShortUrlId(shortUrlId);
 
-        return (urlShorteningService.findShortUrlAndRedirect(apiConfiguration.getDomainUrl() + shortUrlId))
+        return urlShorteningService.findShortUrlAndRedirect(shortUrlId)
                 .flatMap(urlModel -> {
                     exchange.getResponse().setStatusCode(HttpStatus.FOUND);
                     exchange.getResponse().getHeaders().setLocation(URI.create(urlModel.originalUrl()));
@@ -77,20 +116,56 @@ public class ShortenerUrlController {
                 });
     }
 
-    private void validateShortUrlId(String shortUrlId) {
-        // Check if the short URL ID is valid by checking if it has the minimum length of 7
-        if (shortUrlId.length() < apiConfiguration.getUrlLength()) {
-            LOGGER.info("Invalid shortened URL argument received: {}", shortUrlId);
+    private Flux<ShortenResultModel> shortenUrlChunk(List<RequestUrlEntity> requests) {
+        List<ShortenResultModel> rejected = new ArrayList<>();
+        List<String> accepted = new ArrayList<>(requests.size());
+        for (RequestUrlEntity request : requests) {
+            try {
+                if (request.ttl() != null) {
+                    throw new IllegalArgumentException("Links that expire must be shortened one by one: " + request.originalUrl());
+                }
+                validateLongUrl(request.originalUrl());
+                accepted.add(request.originalUrl());
+            } catch (IllegalArgumentException e) {
+                rejected.add(ShortenResultModel.rejected(request.originalUrl(), e.getMessage()));
+            }
+        }
+
+        return Flux.fromIterable(rejected)
+                .concatWith(urlShorteningService.createShortUrls(Flux.fromIterable(accepted)));
+    }
+
+    void validateShortUrlId(String shortUrlId) {
+        if (!validationStage.record(() -> isValidShortUrlId(shortUrlId, apiConfiguration.getUrlLength()))) {
+            LOGGER.debug("Invalid shortened URL argument received: {}", shortUrlId);
             throw new InvalidShortenedUrlException("Invalid shortened URL argument: " + shortUrlId);
         }
     }
 
-    private void validateLongUrl(String longUrl) {
+    // Codes are base62 encoded digest slices of url-length bytes, anything else cannot exist
+    static boolean isValidShortUrlId(String shortUrlId, int urlLength) {
+        return shortUrlId.length() >= urlLength
+                && shortUrlId.length() <= Base62Encoder.maxEncodedLength(urlLength)
+                && Base62Encoder.isBase62(shortUrlId);
+    }
+
+    void validateTtl(Duration ttl) {
+        if (ttl != null && (ttl.isNegative() || ttl.isZero() || ttl.compareTo(apiConfiguration.getMaxTtl()) > 0)) {
+            LOGGER.debug("Invalid ttl argument received at request: {}", ttl);
+            throw new IllegalArgumentException("Invalid ttl argument, it must be positive and at most "
+                    + apiConfiguration.getMaxTtl() + ": " + ttl);
+        }
+    }
+
+    void validateLongUrl(String longUrl) {
+        Timer.Sample sample = Timer.start();
         try {
             new URL(longUrl).toURI();
         } catch (MalformedURLException | URISyntaxException e) {
             LOGGER.debug("Invalid URL argument received at request: {}", longUrl);
             throw new IllegalArgumentException("Invalid URL argument: " + longUrl);
+        } finally {
+            sample.stop(validationStage);
         }
     }
 }
@@ -18,25 +18,25 @@ public class CustomExceptionHandler {
 
     @ExceptionHandler(InvalidShortenedUrlException.class)
     public Mono<ResponseEntity<String>> handleInvalidShortUrlException(InvalidShortenedUrlException e) {
-        LOGGER.info(e.getMessage());
+        LOGGER.debug(e.getMessage());
         return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
     }
 
     @ExceptionHandler(UrlNotFoundException.class)
     public Mono<ResponseEntity<String>> handleUrlNotFoundException(UrlNotFoundException e) {
-        LOGGER.info(e.getMessage());
+        LOGGER.debug(e.getMessage());
         return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage()));
     }
 
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class, NullPointerException.class})
     public Mono<ResponseEntity<String>> handleSpecificExceptions(RuntimeException e) {
-        LOGGER.info(e.getMessage());
+        LOGGER.debug(e.getMessage());
         return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
     }
 
     @ExceptionHandler(NoSuchElementException.class)
     public Mono<ResponseEntity<String>> handleNoSuchElementExceptions(RuntimeException e) {
-        LOGGER.info(e.getMessage());
+        LOGGER.debug(e.getMessage());
         return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage()));
     }
 
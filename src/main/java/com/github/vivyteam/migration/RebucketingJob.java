@@ -0,0 +1,137 @@
+package com.github.vivyteam.migration;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.repository.UrlKeyBuckets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Online migration of the mappings and the reverse index from the previous bucket layout to the current one.
+ * <p>
+ * Every previous bucket is read with HSCAN in batches. Entries are copied with HSETNX, so a newer value written by
+ * the application to the current bucket is never overwritten, and only then deleted from the previous bucket. The
+ * repository reads the previous layout whenever a field is missing from the current one, so every mapping stays
+ * readable during the migration. Clicks are only ever counted in the current layout, so the previous counts are
+ * added to them with HINCRBY instead. Each added count is marked in the slot of the current bucket by the same
+ * script, so a run retried before the previous field was deleted does not add it twice. The marks are deleted once
+ * every bucket has been moved, and {@code previous-buckets} can then be set back to zero.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class RebucketingJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RebucketingJob.class);
+    private static final RedisScript<Long> MOVE_CLICKS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/move-clicks.lua"), Long.class);
+
+    private final ReactiveHashOperations<String, String, UrlEntity> reactiveHashOperations;
+    private final ReactiveHashOperations<String, String, String> reverseIndexOperations;
+    private final ReactiveHashOperations<String, String, String> clickOperations;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final MigrationConfiguration migrationConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private Disposable execution;
+
+    public RebucketingJob(ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate,
+                          ReactiveStringRedisTemplate stringRedisTemplate,
+                          MigrationConfiguration migrationConfiguration,
+                          UrlKeyBuckets keyBuckets) {
+        this.reactiveHashOperations = reactiveRedisTemplate.opsForHash();
+        this.reverseIndexOperations = stringRedisTemplate.opsForHash();
+        this.clickOperations = stringRedisTemplate.opsForHash();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.migrationConfiguration = migrationConfiguration;
+        this.keyBuckets = keyBuckets;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!migrationConfiguration.isRebucketingEnabled() || !keyBuckets.isRebucketing()) {
+            return;
+        }
+
+        LOGGER.info("Starting rebucketing of the URL mappings");
+        execution = rebucket().subscribe(
+                moved -> LOGGER.info("Rebucketing finished, {} entries moved", moved),
+                e -> LOGGER.error("Rebucketing failed: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (execution != null) {
+            execution.dispose();
+        }
+    }
+
+    public Mono<Long> rebucket() {
+        return rebucket(reactiveHashOperations, keyBuckets.previousPrimaryKeys(), keyBuckets::primaryKey, this::copyIfAbsent)
+                .flatMap(mappings -> rebucket(reverseIndexOperations, keyBuckets.previousIndexKeys(), keyBuckets::indexKey, this::copyIfAbsent)
+                        .map(indexEntries -> mappings + indexEntries))
+                .flatMap(entries -> rebucket(clickOperations, keyBuckets.previousClicksKeys(), keyBuckets::clicksKey, this::addClicks)
+                        .map(clickCounts -> entries + clickCounts))
+                .flatMap(moved -> Flux.fromIterable(keyBuckets.movedClicksKeys())
+                        .concatMap(key -> stringRedisTemplate.delete(key), 1)
+                        .then(Mono.just(moved)));
+    }
+
+    private <V> Mono<Long> rebucket(ReactiveHashOperations<String, String, V> operations, List<String> previousKeys,
+                                    Function<String, String> keyOf, EntryCopy<V> copy) {
+        int batchSize = migrationConfiguration.getBatchSize();
+        ScanOptions scanOptions = ScanOptions.scanOptions().count(batchSize).build();
+
+        return Flux.fromIterable(previousKeys)
+                .concatMap(previousKey -> operations.scan(previousKey, scanOptions)
+                        // domain-prefixed legacy fields are left to the short code migration
+                        .filter(entry -> entry.getKey().indexOf('/') < 0)
+                        .filter(entry -> !previousKey.equals(keyOf.apply(entry.getKey())))
+                        .buffer(batchSize)
+                        .concatMap(entries -> moveBatch(operations, previousKey, entries, keyOf, copy), 1), 1)
+                .reduce(0L, Long::sum);
+    }
+
+    private <V> Mono<Long> moveBatch(ReactiveHashOperations<String, String, V> operations, String previousKey,
+                                     List<Map.Entry<String, V>> entries, Function<String, String> keyOf, EntryCopy<V> copy) {
+        Object[] movedFields = entries.stream().map(Map.Entry::getKey).toArray();
+
+        LOGGER.debug("Moving {} entries out of {}", entries.size(), previousKey);
+        return Flux.fromIterable(entries)
+                .flatMap(entry -> copy.apply(operations, keyOf.apply(entry.getKey()), entry))
+                .then(operations.remove(previousKey, movedFields))
+                .thenReturn((long) entries.size());
+    }
+
+    private <V> Mono<?> copyIfAbsent(ReactiveHashOperations<String, String, V> operations, String key, Map.Entry<String, V> entry) {
+        return operations.putIfAbsent(key, entry.getKey(), entry.getValue());
+    }
+
+    private Mono<?> addClicks(ReactiveHashOperations<String, String, String> operations, String key, Map.Entry<String, String> entry) {
+        List<String> keys = List.of(key, keyBuckets.movedClicksKey(entry.getKey()));
+        return stringRedisTemplate.execute(MOVE_CLICKS_SCRIPT, keys, List.of(entry.getKey(), entry.getValue())).next();
+    }
+
+    @FunctionalInterface
+    private interface EntryCopy<V> {
+        Mono<?> apply(ReactiveHashOperations<String, String, V> operations, String key, Map.Entry<String, V> entry);
+    }
+}
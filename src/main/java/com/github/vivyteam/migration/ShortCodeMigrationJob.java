@@ -0,0 +1,149 @@
+package com.github.vivyteam.migration;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.repository.RedisUrlRepository;
+import com.github.vivyteam.repository.UrlIndexKeys;
+import com.github.vivyteam.repository.UrlKeyBuckets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online migration of mappings stored under full domain-prefixed URLs to bare short codes.
+ * <p>
+ * Legacy fields are read with HSCAN in batches. Each batch is written under its short code with HSETNX, so a newer
+ * mapping written by the application is never overwritten, before the old fields are deleted, so every mapping stays
+ * readable during the migration, either directly or through the repository's legacy lookup. Legacy index entries, keyed by the full original URL, are moved to the reverse index the same way
+ * and the old per URL lookup cache keys are removed.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class ShortCodeMigrationJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShortCodeMigrationJob.class);
+    // Bare short codes never contain a slash, legacy fields always do
+    private static final String LEGACY_FIELD_PATTERN = "*/*";
+
+    private final ReactiveHashOperations<String, String, UrlEntity> reactiveHashOperations;
+    private final ReactiveHashOperations<String, String, String> reverseIndexOperations;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final MigrationConfiguration migrationConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private Disposable execution;
+
+    public ShortCodeMigrationJob(ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate,
+                                 ReactiveStringRedisTemplate stringRedisTemplate,
+                                 MigrationConfiguration migrationConfiguration,
+                                 UrlKeyBuckets keyBuckets) {
+        this.reactiveHashOperations = reactiveRedisTemplate.opsForHash();
+        this.reverseIndexOperations = stringRedisTemplate.opsForHash();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.migrationConfiguration = migrationConfiguration;
+        this.keyBuckets = keyBuckets;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!migrationConfiguration.isShortCodesMigrationEnabled()) {
+            return;
+        }
+
+        LOGGER.info("Starting short code migration");
+        execution = migrate().subscribe(
+                migrated -> LOGGER.info("Short code migration finished, {} entries rewritten", migrated),
+                e -> LOGGER.error("Short code migration failed: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (execution != null) {
+            execution.dispose();
+        }
+    }
+
+    public Mono<Long> migrate() {
+        return migrateMappings()
+                .flatMap(mappings -> migrateIndex().map(indexEntries -> mappings + indexEntries))
+                .flatMap(migrated -> removeOriginalUrlCache().thenReturn(migrated));
+    }
+
+    private Mono<Long> migrateMappings() {
+        int batchSize = migrationConfiguration.getBatchSize();
+        ScanOptions scanOptions = ScanOptions.scanOptions().match(LEGACY_FIELD_PATTERN).count(batchSize).build();
+
+        return reactiveHashOperations.scan(RedisUrlRepository.REDIS_KEY, scanOptions)
+                .buffer(batchSize)
+                .concatMap(this::migrateMappingBatch, 1)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> migrateMappingBatch(List<Map.Entry<String, UrlEntity>> entries) {
+        Object[] legacyFields = entries.stream().map(Map.Entry::getKey).toArray();
+
+        LOGGER.debug("Migrating {} mappings to short codes", entries.size());
+        return Flux.fromIterable(entries)
+                .flatMap(entry -> {
+                    String shortCode = UrlEntity.toShortCode(entry.getKey());
+                    UrlEntity urlEntity = new UrlEntity(entry.getValue().getOriginalUrl(), shortCode);
+                    return reactiveHashOperations.putIfAbsent(keyBuckets.primaryKey(shortCode), shortCode, urlEntity);
+                })
+                .then(reactiveHashOperations.remove(RedisUrlRepository.REDIS_KEY, legacyFields))
+                .thenReturn((long) entries.size());
+    }
+
+    // legacy index entries are keyed by the full original URL, they move to the digest keyed reverse index
+    private Mono<Long> migrateIndex() {
+        int batchSize = migrationConfiguration.getBatchSize();
+        ScanOptions scanOptions = ScanOptions.scanOptions().count(batchSize).build();
+
+        return reactiveHashOperations.scan(RedisUrlRepository.REDIS_KEY_LEGACY_INDEX, scanOptions)
+                .buffer(batchSize)
+                .concatMap(this::migrateIndexBatch, 1)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> migrateIndexBatch(List<Map.Entry<String, UrlEntity>> entries) {
+        Object[] legacyFields = entries.stream().map(Map.Entry::getKey).toArray();
+
+        LOGGER.debug("Migrating {} index entries to the reverse index", entries.size());
+        return Flux.fromIterable(entries)
+                .flatMap(entry -> {
+                    String digest = UrlIndexKeys.of(entry.getKey());
+                    String shortCode = UrlEntity.toShortCode(entry.getValue().getShortenedUrl());
+                    return reverseIndexOperations.putIfAbsent(keyBuckets.indexKey(digest), digest, shortCode);
+                })
+                .then(reactiveHashOperations.remove(RedisUrlRepository.REDIS_KEY_LEGACY_INDEX, legacyFields))
+                .thenReturn((long) entries.size());
+    }
+
+    // the per URL cache keys expire on their own, removing them just gives the memory back right away
+    private Mono<Long> removeOriginalUrlCache() {
+        int batchSize = migrationConfiguration.getBatchSize();
+        ScanOptions scanOptions = ScanOptions.scanOptions()
+                .match(RedisUrlRepository.REDIS_KEY_LEGACY_ORIGINAL_URL_CACHE + "*")
+                .count(batchSize)
+                .build();
+
+        return stringRedisTemplate.scan(scanOptions)
+                .buffer(batchSize)
+                .concatMap(keys -> stringRedisTemplate.unlink(keys.toArray(String[]::new)), 1)
+                .reduce(0L, Long::sum);
+    }
+}
@@ -0,0 +1,4 @@
+package com.github.vivyteam.model;
+
+public record HotLinkModel(String shortCode, long clicks, double clicksPerSecond) {
+}
@@ -0,0 +1,8 @@
+package com.github.vivyteam.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+public record HotLinksModel(Instant windowStart, Duration window, List<HotLinkModel> node, List<HotLinkModel> cluster) {
+}
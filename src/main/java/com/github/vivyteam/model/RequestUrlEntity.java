@@ -1,4 +1,13 @@
 package com.github.vivyteam.model;
 
-public record RequestUrlEntity(String originalUrl) {
+import java.time.Duration;
+
+/**
+ * @param ttl how long the link resolves, ISO-8601 such as {@code PT24H}, or null for a link that never expires
+ */
+public record RequestUrlEntity(String originalUrl, Duration ttl) {
+
+    public RequestUrlEntity(String originalUrl) {
+        this(originalUrl, null);
+    }
 }
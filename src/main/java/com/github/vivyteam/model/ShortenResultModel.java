@@ -0,0 +1,25 @@
+package com.github.vivyteam.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * One record of a bulk shorten response, the link of a URL or the reason it was not shortened. The response is
+ * already committed when a URL is rejected, so the error is reported in its record instead of the status.
+ *
+ * @param error why the URL was not shortened, or null when it was
+ */
+public record ShortenResultModel(String originalUrl,
+                                 @JsonInclude(JsonInclude.Include.NON_NULL) String shortenedUrl,
+                                 @JsonInclude(JsonInclude.Include.NON_NULL) Instant expiresAt,
+                                 @JsonInclude(JsonInclude.Include.NON_NULL) String error) {
+
+    public static ShortenResultModel shortened(UrlModel urlModel) {
+        return new ShortenResultModel(urlModel.originalUrl(), urlModel.shortenedUrl(), urlModel.expiresAt(), null);
+    }
+
+    public static ShortenResultModel rejected(String originalUrl, String error) {
+        return new ShortenResultModel(originalUrl, null, null, error);
+    }
+}
@@ -1,8 +1,10 @@
 package com.github.vivyteam.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.redis.core.RedisHash;
 
+import java.time.Instant;
 import java.util.Objects;
 
 @RedisHash
@@ -12,21 +14,40 @@ public class UrlEntity {
     private String id;
     private String originalUrl;
     private String shortenedUrl;
+    // Epoch milliseconds, left out of the JSON of links that never expire so their stored values do not change
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long expiresAt;
 
     public UrlEntity(String originalUrl, String shortenedUrl) {
         this.originalUrl = originalUrl;
         this.shortenedUrl = shortenedUrl;
     }
 
+    public UrlEntity(String originalUrl, String shortenedUrl, Long expiresAt) {
+        this.originalUrl = originalUrl;
+        this.shortenedUrl = shortenedUrl;
+        this.expiresAt = expiresAt;
+    }
+
     public UrlEntity() {
     }
 
+    // Entries written before the keyspace held bare codes store the full domain-prefixed URL
     public UrlModel toModel() {
-        return new UrlModel(originalUrl, shortenedUrl);
+        return new UrlModel(originalUrl, toShortCode(shortenedUrl), expiresAt == null ? null : Instant.ofEpochMilli(expiresAt));
+    }
+
+    public static String toShortCode(String shortenedUrl) {
+        return shortenedUrl.substring(shortenedUrl.lastIndexOf('/') + 1);
     }
 
     public static UrlEntity fromModel(UrlModel urlModel) {
-        return new UrlEntity(urlModel.originalUrl(), urlModel.shortenedUrl());
+        return new UrlEntity(urlModel.originalUrl(), urlModel.shortenedUrl(),
+                urlModel.expiresAt() == null ? null : urlModel.expiresAt().toEpochMilli());
+    }
+
+    public boolean hasExpiredAt(long epochMillis) {
+        return expiresAt != null && expiresAt <= epochMillis;
     }
 
     public String getOriginalUrl() {
@@ -37,6 +58,10 @@ public class UrlEntity {
         return shortenedUrl;
     }
 
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
     public String getId() {
         return id;
     }
@@ -53,17 +78,22 @@ public class UrlEntity {
         this.shortenedUrl = shortenedUrl;
     }
 
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         UrlEntity urlEntity = (UrlEntity) o;
-        return Objects.equals(originalUrl, urlEntity.originalUrl) && Objects.equals(shortenedUrl, urlEntity.shortenedUrl);
+        return Objects.equals(originalUrl, urlEntity.originalUrl) && Objects.equals(shortenedUrl, urlEntity.shortenedUrl)
+                && Objects.equals(expiresAt, urlEntity.expiresAt);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(originalUrl, shortenedUrl);
+        return Objects.hash(originalUrl, shortenedUrl, expiresAt);
     }
 
     @Override
@@ -71,6 +101,9 @@ public class UrlEntity {
         final StringBuilder sb = new StringBuilder();
         sb.append("{ originalUrl='").append(originalUrl).append('\'');
         sb.append(", shortenedUrl='").append(shortenedUrl).append('\'');
+        if (expiresAt != null) {
+            sb.append(", expiresAt=").append(expiresAt);
+        }
         sb.append('}');
         return sb.toString();
     }
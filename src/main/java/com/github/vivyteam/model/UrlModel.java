@@ -1,4 +1,20 @@
 package com.github.vivyteam.model;
 
-public record UrlModel(String originalUrl, String shortenedUrl) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * @param expiresAt when the link stops resolving, or null for a link that never expires
+ */
+public record UrlModel(String originalUrl, String shortenedUrl,
+                       @JsonInclude(JsonInclude.Include.NON_NULL) Instant expiresAt) {
+
+    public UrlModel(String originalUrl, String shortenedUrl) {
+        this(originalUrl, shortenedUrl, null);
+    }
+
+    public boolean hasExpiredAt(long epochMillis) {
+        return expiresAt != null && expiresAt.toEpochMilli() <= epochMillis;
+    }
 }
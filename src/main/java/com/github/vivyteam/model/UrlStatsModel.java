@@ -0,0 +1,4 @@
+package com.github.vivyteam.model;
+
+public record UrlStatsModel(String originalUrl, String shortenedUrl, long clicks) {
+}
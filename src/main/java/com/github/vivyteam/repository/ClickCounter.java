@@ -0,0 +1,212 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.ClickCountingConfiguration;
+import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redirect counts per short code, counted in memory and periodically added to Redis.
+ * <p>
+ * Each code has a {@link LongAdder}, whose cells spread concurrent increments over CPUs, so counting a redirect takes
+ * no lock and allocates nothing once the code has been seen. Every flush period the counts are drained and sent as
+ * HINCRBY commands on the shared connection, at most one per code. Counts not flushed yet are lost with the node, so
+ * the loss is bounded by the flush period; a failed flush puts its counts back. At most {@code max-pending-codes}
+ * codes are held, so while Redis is down the clicks of codes beyond them are dropped rather than filling the heap.
+ * Flushed counts also feed the {@link HotLinkTracker}, which keeps the redirect path free of any other bookkeeping.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class ClickCounter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClickCounter.class);
+    public static final String REDIS_KEY = "shortener:url:clicks";
+
+    private final ReactiveHashOperations<String, String, String> clickOperations;
+    private final ReactiveHashOperations<String, String, String> readClickOperations;
+    private final ClickCountingConfiguration clickCountingConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private final HotLinkTracker hotLinkTracker;
+    private final ConcurrentMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Counter flushedClicks;
+    private final Counter droppedClicks;
+    private final Timer flushLatency;
+    private Disposable flushes;
+
+    // Totals are read from the read connection, a replica lagging behind only delays them like the flush period does
+    public ClickCounter(ReactiveStringRedisTemplate stringRedisTemplate,
+                        @Qualifier(RedisConfiguration.READ_STRING_TEMPLATE) ReactiveStringRedisTemplate readStringRedisTemplate,
+                        ClickCountingConfiguration clickCountingConfiguration,
+                        UrlKeyBuckets keyBuckets,
+                        HotLinkTracker hotLinkTracker,
+                        MeterRegistry meterRegistry) {
+        this.clickOperations = stringRedisTemplate.opsForHash();
+        this.readClickOperations = readStringRedisTemplate.opsForHash();
+        this.clickCountingConfiguration = clickCountingConfiguration;
+        this.keyBuckets = keyBuckets;
+        this.hotLinkTracker = hotLinkTracker;
+
+        this.flushedClicks = Counter.builder("shortener.clicks.flushed")
+                .description("Redirects added to the Redis click counts")
+                .register(meterRegistry);
+        this.droppedClicks = Counter.builder("shortener.clicks.dropped")
+                .description("Redirects not counted because too many short codes had clicks not flushed yet")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("shortener.clicks.flush")
+                .description("Time taken to add the pending click counts to Redis")
+                .register(meterRegistry);
+        Gauge.builder("shortener.clicks.pending-codes", pending, Map::size)
+                .description("Short codes with clicks not flushed yet")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!clickCountingConfiguration.isEnabled()) {
+            return;
+        }
+
+        flushes = Flux.interval(clickCountingConfiguration.getFlushPeriod())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush().onErrorResume(e -> {
+                    LOGGER.warn("Click counts flush failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    // The last counts are flushed before the connection goes away
+    @PreDestroy
+    public void stop() {
+        if (flushes != null) {
+            flushes.dispose();
+            flush().onErrorResume(e -> Mono.empty())
+                    .block(clickCountingConfiguration.getFlushPeriod());
+        }
+    }
+
+    public void increment(String shortCode) {
+        if (!clickCountingConfiguration.isEnabled()) {
+            return;
+        }
+
+        LongAdder counter = pending.get(shortCode);
+        if (counter == null) {
+            counter = counterOf(shortCode);
+            if (counter == null) {
+                droppedClicks.increment();
+                return;
+            }
+        }
+        counter.increment();
+
+        // A flush may have dropped the code as idle before this increment, which would then never be drained
+        if (pending.get(shortCode) != counter) {
+            add(shortCode, counter.sumThenReset());
+        }
+    }
+
+    /**
+     * @return the clicks flushed to Redis by every node, plus the ones this node has not flushed yet
+     */
+    public Mono<Long> totalClicks(String shortCode) {
+        LongAdder counter = pending.get(shortCode);
+        long unflushed = counter == null ? 0 : counter.sum();
+
+        Flux<String> keys = Flux.just(keyBuckets.clicksKey(shortCode));
+        String previousKey = keyBuckets.previousClicksKey(shortCode);
+        if (previousKey != null) {
+            keys = keys.concatWith(Mono.just(previousKey));
+        }
+
+        return keys.concatMap(key -> readClickOperations.get(key, shortCode))
+                .map(Long::parseLong)
+                .reduce(unflushed, Long::sum);
+    }
+
+    /**
+     * Drains the pending counts into one HINCRBY per code.
+     *
+     * @return the number of clicks flushed
+     */
+    public Mono<Long> flush() {
+        List<Map.Entry<String, Long>> drained = drain();
+        if (drained.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        Timer.Sample sample = Timer.start();
+        long clicks = drained.stream().mapToLong(Map.Entry::getValue).sum();
+        return Flux.fromIterable(drained)
+                .flatMap(entry -> clickOperations.increment(keyBuckets.clicksKey(entry.getKey()), entry.getKey(), entry.getValue()))
+                .then(Mono.fromCallable(() -> {
+                    sample.stop(flushLatency);
+                    flushedClicks.increment(clicks);
+                    drained.forEach(entry -> hotLinkTracker.record(entry.getKey(), entry.getValue()));
+                    LOGGER.debug("Flushed {} clicks of {} short codes", clicks, drained.size());
+                    return clicks;
+                }))
+                // HINCRBY is not idempotent, so a partially applied flush may count some clicks twice once retried
+                .doOnError(e -> drained.forEach(entry -> add(entry.getKey(), entry.getValue())));
+    }
+
+    private void add(String shortCode, long clicks) {
+        if (clicks == 0) {
+            return;
+        }
+        LongAdder counter = counterOf(shortCode);
+        if (counter == null) {
+            droppedClicks.increment(clicks);
+            return;
+        }
+        counter.add(clicks);
+    }
+
+    // The bound is checked before inserting, so concurrent first clicks may overshoot it by a few codes
+    private LongAdder counterOf(String shortCode) {
+        LongAdder counter = pending.get(shortCode);
+        if (counter != null || pending.size() >= clickCountingConfiguration.getMaxPendingCodes()) {
+            return counter;
+        }
+        return pending.computeIfAbsent(shortCode, code -> new LongAdder());
+    }
+
+    private List<Map.Entry<String, Long>> drain() {
+        List<Map.Entry<String, Long>> drained = new ArrayList<>();
+        pending.forEach((shortCode, counter) -> {
+            long clicks = counter.sumThenReset();
+            if (clicks == 0 && pending.computeIfPresent(shortCode, (code, current) ->
+                    current == counter && current.sum() == 0 ? null : current) == null) {
+                // idle codes are dropped, an increment that got the counter before is moved back by its own check
+                clicks = counter.sumThenReset();
+            }
+            if (clicks != 0) {
+                drained.add(Map.entry(shortCode, clicks));
+            }
+        });
+        return drained;
+    }
+}
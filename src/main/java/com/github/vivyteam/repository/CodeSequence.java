@@ -0,0 +1,144 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.CodeGeneratorConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster-wide sequence of ids, leased from a Redis counter in ranges so most ids are handed out without a round trip.
+ * <p>
+ * Each lease is an INCRBY of the lease size, which gives this node the range of ids right below the new value. Ids
+ * are taken from the current range with a single atomic increment. When a range runs low, the next one is leased in
+ * the background, so callers only wait on Redis when ids are taken faster than a lease comes back. At most one lease
+ * is in flight, and each leased range is used by a single node exactly once. The ids of a range left unused when the
+ * node stops are skipped.
+ */
+@Component
+@ConditionalOnProperty(name = CodeGeneratorConfiguration.STRATEGY_PROPERTY, havingValue = CodeGeneratorConfiguration.SEQUENCE_STRATEGY)
+public class CodeSequence {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CodeSequence.class);
+    public static final String REDIS_KEY = "shortener:code-sequence";
+
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final int leaseSize;
+    private final long refillThreshold;
+    private final Counter leases;
+    private final Queue<Range> spares = new ArrayDeque<>();
+    private volatile Range current = new Range(0, 0);
+    private Mono<Range> pendingLease;
+
+    public CodeSequence(ReactiveStringRedisTemplate stringRedisTemplate,
+                        CodeGeneratorConfiguration codeGeneratorConfiguration,
+                        MeterRegistry meterRegistry) {
+        if (codeGeneratorConfiguration.getLeaseSize() < 1) {
+            throw new IllegalArgumentException("Lease size must be positive: " + codeGeneratorConfiguration.getLeaseSize());
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseSize = codeGeneratorConfiguration.getLeaseSize();
+        this.refillThreshold = Math.max(1, leaseSize / 10);
+        this.leases = Counter.builder("shortener.code-sequence.leases")
+                .description("Ranges of ids leased from the Redis counter")
+                .register(meterRegistry);
+        Gauge.builder("shortener.code-sequence.remaining", this, sequence -> sequence.current.remaining())
+                .description("Ids left in the range this node is handing out")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the next id of this node, only waiting on Redis when its ranges are used up
+     */
+    public Mono<Long> next() {
+        Range range = current;
+        long id = range.take();
+        if (id >= 0) {
+            if (range.end() - id == refillThreshold) {
+                prefetch();
+            }
+            return Mono.just(id);
+        }
+        return Mono.defer(() -> advance(range)).then(Mono.defer(this::next));
+    }
+
+    // Moves on to a spare range, or waits for one to be leased, unless another caller already moved on
+    private Mono<Void> advance(Range exhausted) {
+        synchronized (this) {
+            if (current != exhausted) {
+                return Mono.empty();
+            }
+            Range spare = spares.poll();
+            if (spare != null) {
+                current = spare;
+                return Mono.empty();
+            }
+            return lease().then();
+        }
+    }
+
+    private void prefetch() {
+        synchronized (this) {
+            if (!spares.isEmpty() || pendingLease != null) {
+                return;
+            }
+            lease().subscribe(range -> {
+            }, e -> LOGGER.warn("Code sequence lease failed: {}", e.getMessage()));
+        }
+    }
+
+    // The leased range is installed once, by the lease itself, whoever is waiting on it
+    private synchronized Mono<Range> lease() {
+        if (pendingLease == null) {
+            pendingLease = stringRedisTemplate.opsForValue().increment(REDIS_KEY, leaseSize)
+                    .map(end -> new Range(end - leaseSize, end))
+                    .doOnNext(this::install)
+                    .doOnError(e -> leaseFailed())
+                    .cache();
+        }
+        return pendingLease;
+    }
+
+    // Cleared before the waiting callers resume, so a caller finding this range used up again leases another one
+    private synchronized void install(Range leased) {
+        pendingLease = null;
+        leases.increment();
+        if (current.remaining() == 0) {
+            current = leased;
+        } else {
+            spares.add(leased);
+        }
+    }
+
+    private synchronized void leaseFailed() {
+        pendingLease = null;
+    }
+
+    private record Range(long end, AtomicLong next) {
+
+        private Range(long start, long end) {
+            this(end, new AtomicLong(start));
+        }
+
+        /**
+         * @return the next id of the range, or -1 when it is used up
+         */
+        private long take() {
+            long id = next.getAndIncrement();
+            return id < end ? id : -1;
+        }
+
+        private long remaining() {
+            return Math.max(0, end - next.get());
+        }
+    }
+}
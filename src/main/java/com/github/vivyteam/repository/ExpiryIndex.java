@@ -0,0 +1,117 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.ExpiryConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Short codes of the links that expire, grouped by when they expire so the sweeper only reads the ones that are due.
+ * <p>
+ * Expiry times are cut in buckets of {@code bucket-width} aligned on the epoch. The codes of each bucket are kept in
+ * a sorted set scored by their expiry in epoch milliseconds, {@code shortener:url:expiry:<bucket>}, so no single key
+ * grows with the whole keyspace and buckets spread over the shards of a Redis Cluster. Buckets holding codes are
+ * registered in {@code shortener:url:expiry:buckets}, scored by their number, so the due ones are found without
+ * scanning the keyspace.
+ */
+@Component
+public class ExpiryIndex {
+
+    public static final String REDIS_KEY = "shortener:url:expiry";
+    public static final String BUCKETS_KEY = REDIS_KEY + ":buckets";
+
+    private final ReactiveZSetOperations<String, String> zSetOperations;
+    private final long bucketWidthMillis;
+
+    public ExpiryIndex(ReactiveStringRedisTemplate stringRedisTemplate, ExpiryConfiguration expiryConfiguration) {
+        this.zSetOperations = stringRedisTemplate.opsForZSet();
+        this.bucketWidthMillis = expiryConfiguration.getBucketWidth().toMillis();
+        if (bucketWidthMillis < 1) {
+            throw new IllegalArgumentException("Expiry bucket width must be positive: " + expiryConfiguration.getBucketWidth());
+        }
+    }
+
+    /**
+     * Indexes the codes of the mappings that expire, the others are skipped.
+     *
+     * @return the number of commands sent
+     */
+    public Mono<Integer> add(List<UrlEntity> urlEntities) {
+        Map<Long, List<ZSetOperations.TypedTuple<String>>> byBucket = new LinkedHashMap<>();
+        for (UrlEntity urlEntity : urlEntities) {
+            if (urlEntity.getExpiresAt() != null) {
+                byBucket.computeIfAbsent(bucketOf(urlEntity.getExpiresAt()), bucket -> new ArrayList<>())
+                        .add(new DefaultTypedTuple<>(UrlEntity.toShortCode(urlEntity.getShortenedUrl()), (double) urlEntity.getExpiresAt()));
+            }
+        }
+        if (byBucket.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        List<ZSetOperations.TypedTuple<String>> buckets = byBucket.keySet().stream()
+                .map(bucket -> (ZSetOperations.TypedTuple<String>) new DefaultTypedTuple<>(String.valueOf(bucket), (double) bucket))
+                .toList();
+        return Flux.fromIterable(byBucket.entrySet())
+                .flatMap(entry -> zSetOperations.addAll(key(entry.getKey()), entry.getValue()))
+                .then(zSetOperations.addAll(BUCKETS_KEY, buckets))
+                .thenReturn(byBucket.size() + 1);
+    }
+
+    /**
+     * @return the buckets holding codes that may have expired by {@code now}, oldest first
+     */
+    public Flux<Long> dueBuckets(long now) {
+        return zSetOperations.rangeByScore(BUCKETS_KEY, Range.closed(0.0, (double) bucketOf(now)))
+                .map(Long::parseLong);
+    }
+
+    /**
+     * @return up to {@code limit} codes of the bucket that have expired by {@code now}, soonest expired first
+     */
+    public Mono<List<String>> due(long bucket, long now, int limit) {
+        return zSetOperations.rangeByScore(key(bucket), Range.closed(0.0, (double) now),
+                        RedisZSetCommands.Limit.limit().count(limit))
+                .collectList();
+    }
+
+    public Mono<Long> remove(long bucket, List<String> shortCodes) {
+        return zSetOperations.remove(key(bucket), shortCodes.toArray());
+    }
+
+    /**
+     * Unregisters a bucket once it is over and holds no code: codes are only added to buckets that are not over yet.
+     *
+     * @return whether the bucket was unregistered
+     */
+    public Mono<Boolean> retireIfDrained(long bucket, long now) {
+        if ((bucket + 1) * bucketWidthMillis > now) {
+            return Mono.just(false);
+        }
+
+        return zSetOperations.size(key(bucket))
+                .filter(size -> size == 0)
+                .flatMap(size -> zSetOperations.remove(BUCKETS_KEY, String.valueOf(bucket)))
+                .map(removed -> removed > 0)
+                .defaultIfEmpty(false);
+    }
+
+    private long bucketOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, bucketWidthMillis);
+    }
+
+    static String key(long bucket) {
+        return REDIS_KEY + ":" + bucket;
+    }
+}
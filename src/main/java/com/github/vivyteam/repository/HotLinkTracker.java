@@ -0,0 +1,148 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.HotLinksConfiguration;
+import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.HotLinkModel;
+import com.github.vivyteam.model.HotLinksModel;
+import com.github.vivyteam.service.utils.SpaceSaving;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The most redirected short codes, per fixed time window.
+ * <p>
+ * Each node keeps a {@link SpaceSaving} sketch of the clicks it flushes, so its memory is bounded by the configured
+ * capacity whatever the number of codes. Windows are aligned on the epoch, so every node closes the same window at
+ * the same time. When a window closes, the node adds its top codes to a sorted set of that window with ZINCRBY, which
+ * gives the top codes of the whole cluster. The counts are estimates: a code may be overcounted by the clicks of the
+ * codes it evicted from a sketch, and codes outside a node's top are missing from the cluster counts.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class HotLinkTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotLinkTracker.class);
+    public static final String REDIS_KEY = "shortener:url:hot-links";
+    private static final int RETAINED_WINDOWS = 3;
+
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final ReactiveZSetOperations<String, String> readZSetOperations;
+    private final HotLinksConfiguration hotLinksConfiguration;
+    private volatile SpaceSaving<String> current;
+    private volatile ClosedWindow closed;
+    private Disposable rotations;
+
+    public HotLinkTracker(ReactiveStringRedisTemplate stringRedisTemplate,
+                          @Qualifier(RedisConfiguration.READ_STRING_TEMPLATE) ReactiveStringRedisTemplate readStringRedisTemplate,
+                          HotLinksConfiguration hotLinksConfiguration) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.readZSetOperations = readStringRedisTemplate.opsForZSet();
+        this.hotLinksConfiguration = hotLinksConfiguration;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!hotLinksConfiguration.isEnabled()) {
+            return;
+        }
+
+        current = new SpaceSaving<>(hotLinksConfiguration.getCapacity());
+        long windowMillis = hotLinksConfiguration.getWindow().toMillis();
+        Duration untilNextWindow = Duration.ofMillis(windowMillis - System.currentTimeMillis() % windowMillis);
+        rotations = Flux.interval(untilNextWindow, hotLinksConfiguration.getWindow())
+                .onBackpressureDrop()
+                .concatMap(tick -> rotate().onErrorResume(e -> {
+                    LOGGER.warn("Hot links publication failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rotations != null) {
+            rotations.dispose();
+        }
+    }
+
+    /**
+     * @param shortCode the redirected code
+     * @param clicks    the number of redirects counted since it was last recorded
+     */
+    public void record(String shortCode, long clicks) {
+        SpaceSaving<String> sketch = current;
+        if (sketch != null) {
+            sketch.offer(shortCode, clicks);
+        }
+    }
+
+    /**
+     * @return the top codes of the last closed window, as counted by this node and by the whole cluster
+     */
+    public Mono<HotLinksModel> hotLinks() {
+        ClosedWindow window = closed;
+        if (window == null) {
+            return Mono.empty();
+        }
+
+        int top = hotLinksConfiguration.getTop();
+        List<HotLinkModel> node = window.top().stream()
+                .map(entry -> hotLink(entry.item(), entry.count()))
+                .toList();
+
+        return readZSetOperations.reverseRangeWithScores(key(window.index()), Range.closed(0L, top - 1L))
+                .map(tuple -> hotLink(tuple.getValue(), tuple.getScore().longValue()))
+                .collectList()
+                .map(cluster -> new HotLinksModel(windowStart(window.index()), hotLinksConfiguration.getWindow(), node, cluster));
+    }
+
+    private Mono<Boolean> rotate() {
+        SpaceSaving<String> finished = current;
+        current = new SpaceSaving<>(hotLinksConfiguration.getCapacity());
+
+        // the tick fires at the start of the next window, give or take the timer precision
+        long windowIndex = Math.round((double) System.currentTimeMillis() / hotLinksConfiguration.getWindow().toMillis()) - 1;
+        List<SpaceSaving.Entry<String>> top = finished.top(hotLinksConfiguration.getTop());
+        closed = new ClosedWindow(windowIndex, top);
+        if (top.isEmpty()) {
+            return Mono.empty();
+        }
+
+        String key = key(windowIndex);
+        return Flux.fromIterable(top)
+                .flatMap(entry -> stringRedisTemplate.opsForZSet().incrementScore(key, entry.item(), entry.count()))
+                .then(stringRedisTemplate.expire(key, hotLinksConfiguration.getWindow().multipliedBy(RETAINED_WINDOWS)));
+    }
+
+    private HotLinkModel hotLink(String shortCode, long clicks) {
+        return new HotLinkModel(shortCode, clicks, (double) clicks * 1000 / hotLinksConfiguration.getWindow().toMillis());
+    }
+
+    private Instant windowStart(long windowIndex) {
+        return Instant.ofEpochMilli(windowIndex * hotLinksConfiguration.getWindow().toMillis());
+    }
+
+    private static String key(long windowIndex) {
+        return REDIS_KEY + ":" + windowIndex;
+    }
+
+    private record ClosedWindow(long index, List<SpaceSaving.Entry<String>> top) {
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.HotSetConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.repository.NearCacheUrlRepository.HotMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the hottest mappings of the near-cache to a local file, so the next process on the node starts with a warm
+ * cache instead of sending every first lookup to Redis.
+ * <p>
+ * The snapshot is written on every snapshot period and once more on shutdown, to a temporary file moved over the
+ * previous one. It is loaded back as an {@link ApplicationRunner}, which Spring Boot runs before the application
+ * reports itself ready: the mappings are cached right away, then reloaded from Redis by many lookups in parallel.
+ * <p>
+ * The file holds a header, the mappings hottest first with their expiry and the lookups each one served, and a CRC-32
+ * of the whole. Snapshots of an older version are not loaded, the node then starts cold.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class HotSetSnapshot implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotSetSnapshot.class);
+    private static final int MAGIC = 0x48534554;
+    private static final int VERSION = 2;
+    private static final long NEVER_EXPIRES = 0;
+
+    private final NearCacheUrlRepository nearCacheUrlRepository;
+    private final HotSetConfiguration hotSetConfiguration;
+    private volatile List<HotMapping> loaded;
+    private Disposable snapshots;
+
+    public HotSetSnapshot(NearCacheUrlRepository nearCacheUrlRepository, HotSetConfiguration hotSetConfiguration) {
+        this.nearCacheUrlRepository = nearCacheUrlRepository;
+        this.hotSetConfiguration = hotSetConfiguration;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!hotSetConfiguration.isEnabled()) {
+            return;
+        }
+
+        load();
+        snapshots = Flux.interval(hotSetConfiguration.getSnapshotPeriod(), hotSetConfiguration.getSnapshotPeriod())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(this::save)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            LOGGER.warn("Hot set snapshot failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (snapshots == null) {
+            return;
+        }
+
+        snapshots.dispose();
+        try {
+            save();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Hot set snapshot failed on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether the startup load is over, whatever its outcome
+     */
+    public boolean isLoaded() {
+        return loaded != null;
+    }
+
+    /**
+     * @return the share of the lookups recorded in the loaded snapshot that the near-cache can now serve, 1 when
+     * there was no snapshot to load
+     */
+    public double coverage() {
+        List<HotMapping> mappings = loaded;
+        if (mappings == null) {
+            return 0;
+        }
+
+        long total = 0;
+        long cached = 0;
+        for (HotMapping mapping : mappings) {
+            total += mapping.hits();
+            if (nearCacheUrlRepository.isCached(mapping.shortCode())) {
+                cached += mapping.hits();
+            }
+        }
+        return total == 0 ? 1 : (double) cached / total;
+    }
+
+    private void load() {
+        long started = System.nanoTime();
+        List<HotMapping> mappings = List.of();
+        try {
+            mappings = read(hotSetConfiguration.getFile());
+            Long confirmed = nearCacheUrlRepository.warm(mappings, hotSetConfiguration.getLoadConcurrency())
+                    .block(hotSetConfiguration.getLoadTimeout());
+            LOGGER.info("Hot set of {} mappings loaded in {} ms, {} confirmed by Redis", mappings.size(),
+                    (System.nanoTime() - started) / 1_000_000, confirmed);
+        } catch (NoSuchFileException e) {
+            LOGGER.info("No hot set snapshot at {}, starting cold", hotSetConfiguration.getFile());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Hot set snapshot could not be fully loaded: {}", e.getMessage());
+        } finally {
+            loaded = mappings;
+        }
+    }
+
+    // An idle node keeps the snapshot of its last busy period rather than overwriting it with nothing
+    private void save() {
+        List<HotMapping> mappings = nearCacheUrlRepository.hottest(hotSetConfiguration.getSize());
+        if (mappings.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(hotSetConfiguration.getFile(), mappings);
+        } catch (IOException e) {
+            throw new IllegalStateException("Hot set snapshot could not be written to " + hotSetConfiguration.getFile(), e);
+        }
+    }
+
+    static void write(Path file, List<HotMapping> mappings) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            try (DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)), checksum))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(mappings.size());
+                for (HotMapping mapping : mappings) {
+                    writeString(output, mapping.shortCode());
+                    writeString(output, mapping.originalUrl());
+                    output.writeLong(mapping.expiresAt() == null ? NEVER_EXPIRES : mapping.expiresAt().toEpochMilli());
+                    output.writeLong(mapping.hits());
+                }
+                output.writeLong(checksum.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static List<HotMapping> read(Path file) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), checksum);
+             DataInputStream input = new DataInputStream(checked)) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unknown hot set snapshot format");
+            }
+
+            int size = input.readInt();
+            List<HotMapping> mappings = new ArrayList<>(Math.min(size, 1 << 16));
+            for (int i = 0; i < size; i++) {
+                String shortCode = readString(input);
+                String originalUrl = readString(input);
+                long expiresAt = input.readLong();
+                mappings.add(new HotMapping(shortCode, originalUrl,
+                        expiresAt == NEVER_EXPIRES ? null : Instant.ofEpochMilli(expiresAt), input.readLong()));
+            }
+            long expected = checksum.getValue();
+            if (input.readLong() != expected) {
+                throw new IOException("Hot set snapshot checksum mismatch");
+            }
+            return mappings;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        byte[] bytes = length < 0 ? null : input.readNBytes(length);
+        if (bytes == null || bytes.length != length) {
+            throw new IOException("Truncated hot set snapshot");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.ExpiryConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deletes the links that have expired, in the background, so expiry never costs the redirects anything but a time
+ * check.
+ * <p>
+ * Every sweep period, the node holding the sweep lock reads the due codes of each due {@link ExpiryIndex} bucket in
+ * batches, and deletes their mappings and reverse index entries. Batches are paced to stay under
+ * {@code max-deletes-per-second}, so a backlog of expired links is worked off without a burst of writes on Redis.
+ * The lock is released once the sweep is over, and expires with the sweep period, so another node takes over if this
+ * one goes away mid-sweep.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class LinkExpirySweeper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinkExpirySweeper.class);
+    static final String LOCK_KEY = ExpiryIndex.REDIS_KEY + ":sweep-lock";
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release-lock.lua"), Long.class);
+
+    private final RedisUrlRepository redisUrlRepository;
+    private final ExpiryIndex expiryIndex;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final ExpiryConfiguration expiryConfiguration;
+    private final Duration batchPause;
+    private final Counter deleted;
+    private final Timer sweeps;
+    private Disposable schedule;
+
+    public LinkExpirySweeper(RedisUrlRepository redisUrlRepository,
+                             ExpiryIndex expiryIndex,
+                             ReactiveStringRedisTemplate stringRedisTemplate,
+                             ExpiryConfiguration expiryConfiguration,
+                             MeterRegistry meterRegistry) {
+        if (expiryConfiguration.getBatchSize() < 1 || expiryConfiguration.getMaxDeletesPerSecond() < 1) {
+            throw new IllegalArgumentException("Expiry batch size and max deletes per second must be positive");
+        }
+        this.redisUrlRepository = redisUrlRepository;
+        this.expiryIndex = expiryIndex;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.expiryConfiguration = expiryConfiguration;
+        this.batchPause = Duration.ofNanos(1_000_000_000L * expiryConfiguration.getBatchSize() / expiryConfiguration.getMaxDeletesPerSecond());
+        this.deleted = Counter.builder("shortener.expiry.deleted")
+                .description("Expired links deleted by the sweeper")
+                .register(meterRegistry);
+        this.sweeps = Timer.builder("shortener.expiry.sweeps")
+                .description("Sweeps of the expired links run by this node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!expiryConfiguration.isSweeperEnabled()) {
+            return;
+        }
+
+        schedule = Flux.interval(expiryConfiguration.getSweepPeriod())
+                .onBackpressureDrop()
+                .concatMap(tick -> sweep(System.currentTimeMillis()).onErrorResume(e -> {
+                    LOGGER.warn("Expired links sweep failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * Deletes the links expired by {@code now}, unless another node is already sweeping.
+     *
+     * @return the number of mappings deleted, empty when another node holds the lock
+     */
+    public Mono<Long> sweep(long now) {
+        String token = UUID.randomUUID().toString();
+        return stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, expiryConfiguration.getSweepPeriod())
+                .filter(Boolean::booleanValue)
+                .flatMap(locked -> Mono.usingWhen(Mono.just(token), held -> sweepDueBuckets(now), this::releaseLock));
+    }
+
+    private Mono<Long> sweepDueBuckets(long now) {
+        Timer.Sample sample = Timer.start();
+        return expiryIndex.dueBuckets(now)
+                .concatMap(bucket -> sweepBucket(bucket, now), 1)
+                .reduce(0L, Long::sum)
+                .doOnNext(total -> {
+                    sample.stop(sweeps);
+                    if (total > 0) {
+                        LOGGER.info("Deleted {} expired links", total);
+                    }
+                });
+    }
+
+    private Mono<Long> releaseLock(String token) {
+        return stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), List.of(token)).next();
+    }
+
+    // A full batch means more codes may be due, the bucket is read again until a batch comes back short
+    private Mono<Long> sweepBucket(long bucket, long now) {
+        return sweepBatch(bucket, now)
+                .expand(batch -> batch.full() ? sweepBatch(bucket, now) : Mono.empty())
+                .reduce(0L, (total, batch) -> total + batch.deleted())
+                .flatMap(total -> expiryIndex.retireIfDrained(bucket, now).thenReturn(total));
+    }
+
+    private Mono<Batch> sweepBatch(long bucket, long now) {
+        int batchSize = expiryConfiguration.getBatchSize();
+        return expiryIndex.due(bucket, now, batchSize)
+                .filter(shortCodes -> !shortCodes.isEmpty())
+                .flatMap(shortCodes -> redisUrlRepository.deleteExpired(shortCodes, now)
+                        .flatMap(deletedMappings -> expiryIndex.remove(bucket, shortCodes)
+                                .thenReturn(new Batch(shortCodes.size() == batchSize, deletedMappings))))
+                .doOnNext(batch -> deleted.increment(batch.deleted()))
+                .delayElement(batchPause);
+    }
+
+    private record Batch(boolean full, long deleted) {
+    }
+}
@@ -0,0 +1,335 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.MirrorConfiguration;
+import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.repository.mirror.OffHeapMappings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Copy of every mapping in this node's memory, out of the heap, so a read-mostly node answers lookups of existing
+ * codes without Redis.
+ * <p>
+ * The mirror is loaded from an HSCAN of the mappings at startup and rebuilt on every resync period, which also
+ * catches up with anything a node may have missed. Every write is applied locally and published with its original
+ * URL on a Redis pub/sub channel for the other nodes. Until the first load has finished, or after the subscription
+ * dropped until the next one, lookups fall back to Redis. Pub/sub delivers at most once and a code may be looked up
+ * before its message arrives, so codes the mirror does not know fall back to Redis too.
+ * <p>
+ * Messages start with their format version and the time they were published, in epoch milliseconds, followed by one
+ * {@code shortCode \t expiresAt \t length \t originalUrl} entry per line, the URL length making any character in it
+ * safe. The expiry is in epoch milliseconds, 0 for a link that never expires. Messages of nodes not upgraded yet have
+ * no version, only the publishing time, and their entries no expiry. Messages of an unknown version, or malformed, are
+ * skipped and left to the next resync. Expired mappings stay in the mirror until the next resync but are not
+ * returned, and the mappings it returns carry no expiry.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class MappingMirror {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappingMirror.class);
+    static final String CHANGES_CHANNEL = "shortener:url:changes";
+    static final int MESSAGE_VERSION = 2;
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final char ENTRY_SEPARATOR = '\n';
+
+    private final ReactiveHashOperations<String, String, UrlEntity> reactiveHashOperations;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final MirrorConfiguration mirrorConfiguration;
+    private final MigrationConfiguration migrationConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter fallbacks;
+    private final Counter skippedMessages;
+    private final Counter publishFailures;
+    private final Timer changeLag;
+    private final Sinks.Many<Boolean> resyncRequests = Sinks.many().unicast().onBackpressureBuffer();
+    private volatile OffHeapMappings mirror;
+    private volatile OffHeapMappings rebuilding;
+    private volatile long syncedAt;
+    private Disposable subscriptions;
+
+    // The full scan is sent to the read connection, replicas can take it
+    public MappingMirror(@Qualifier(RedisConfiguration.READ_TEMPLATE) ReactiveRedisTemplate<String, UrlEntity> readRedisTemplate,
+                         ReactiveStringRedisTemplate stringRedisTemplate,
+                         MirrorConfiguration mirrorConfiguration,
+                         MigrationConfiguration migrationConfiguration,
+                         UrlKeyBuckets keyBuckets,
+                         MeterRegistry meterRegistry) {
+        this.reactiveHashOperations = readRedisTemplate.opsForHash();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.mirrorConfiguration = mirrorConfiguration;
+        this.migrationConfiguration = migrationConfiguration;
+        this.keyBuckets = keyBuckets;
+
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.fallbacks = lookupCounter(meterRegistry, "fallback");
+        this.skippedMessages = Counter.builder("shortener.mirror.skipped-messages")
+                .description("Change messages of an unknown version or malformed, left to the next resync")
+                .register(meterRegistry);
+        this.publishFailures = Counter.builder("shortener.mirror.publish-failures")
+                .description("Change messages that could not be published, left to the lookups falling back to Redis")
+                .register(meterRegistry);
+        this.changeLag = Timer.builder("shortener.mirror.change-lag")
+                .description("Time from a write being published by any node to its mirror update on this one")
+                .register(meterRegistry);
+        Gauge.builder("shortener.mirror.entries", this, MappingMirror::entries)
+                .description("Mappings held by the mirror")
+                .register(meterRegistry);
+        Gauge.builder("shortener.mirror.memory", this, MappingMirror::memoryBytes)
+                .description("Direct memory held by the mirror")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        Gauge.builder("shortener.mirror.memory-per-entry", this, MappingMirror::memoryBytesPerEntry)
+                .description("Direct memory held by the mirror per mapping, index and replaced records included")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        Gauge.builder("shortener.mirror.sync-age", this, MappingMirror::syncAgeSeconds)
+                .description("Time since the mirror was last loaded in full from Redis")
+                .baseUnit(BaseUnits.SECONDS)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!mirrorConfiguration.isEnabled()) {
+            return;
+        }
+
+        // If the subscription drops we may have missed writes, so lookups go to Redis until reloaded
+        Disposable listener = stringRedisTemplate.listenToChannel(CHANGES_CHANNEL)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnNext(this::applyMessage)
+                .doOnError(e -> {
+                    LOGGER.warn("Mapping mirror subscription failed, reading from Redis until reloaded: {}", e.getMessage());
+                    mirror = null;
+                    resyncRequests.tryEmitNext(Boolean.TRUE);
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+
+        Flux<Boolean> resyncTicks = Flux.interval(Duration.ZERO, mirrorConfiguration.getResyncPeriod())
+                .onBackpressureDrop()
+                .map(tick -> Boolean.TRUE);
+        Disposable resync = Flux.merge(resyncTicks, resyncRequests.asFlux())
+                .concatMap(request -> resync().onErrorResume(e -> {
+                    LOGGER.warn("Mapping mirror resync failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+
+        subscriptions = Disposables.composite(listener, resync);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscriptions != null) {
+            subscriptions.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mirrorConfiguration.isEnabled();
+    }
+
+    /**
+     * Answers a lookup from the mirror once it is loaded.
+     *
+     * @param fallback the Redis lookup, used while the mirror is not loaded, cannot hold the code or does not know it
+     */
+    public Mono<UrlModel> findByShortenedUrl(String shortCode, Supplier<Mono<UrlModel>> fallback) {
+        OffHeapMappings current = mirror;
+        if (current == null || !OffHeapMappings.isMirrorable(shortCode)) {
+            fallbacks.increment();
+            return fallback.get();
+        }
+
+        String originalUrl = current.get(shortCode, System.currentTimeMillis());
+        if (originalUrl == null) {
+            misses.increment();
+            return fallback.get();
+        }
+        hits.increment();
+        return Mono.just(new UrlModel(originalUrl, shortCode));
+    }
+
+    /**
+     * Applies freshly written mappings to this node's mirror and publishes them for the other nodes. The mappings are
+     * already stored, so a failed publish is only logged: the other nodes find them in Redis until their next resync.
+     */
+    public Mono<Long> publish(List<UrlModel> urlModels) {
+        if (!mirrorConfiguration.isEnabled() || urlModels.isEmpty()) {
+            return Mono.empty();
+        }
+
+        StringBuilder message = new StringBuilder().append(MESSAGE_VERSION)
+                .append(FIELD_SEPARATOR).append(System.currentTimeMillis());
+        for (UrlModel urlModel : urlModels) {
+            long expiresAt = urlModel.expiresAt() == null ? 0 : urlModel.expiresAt().toEpochMilli();
+            applyLocally(urlModel.shortenedUrl(), urlModel.originalUrl(), expiresAt);
+            message.append(ENTRY_SEPARATOR).append(urlModel.shortenedUrl())
+                    .append(FIELD_SEPARATOR).append(expiresAt)
+                    .append(FIELD_SEPARATOR).append(urlModel.originalUrl().length())
+                    .append(FIELD_SEPARATOR).append(urlModel.originalUrl());
+        }
+        return stringRedisTemplate.convertAndSend(CHANGES_CHANNEL, message.toString())
+                .onErrorResume(e -> {
+                    publishFailures.increment();
+                    LOGGER.warn("Mapping mirror change of {} mappings could not be published: {}", urlModels.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // A bad message must not end the subscription, that would drop the mirror until the next load
+    private void applyMessage(String message) {
+        try {
+            int position = message.indexOf(ENTRY_SEPARATOR);
+            if (position < 0) {
+                return;
+            }
+            int versionEnd = message.indexOf(FIELD_SEPARATOR);
+            boolean versioned = versionEnd >= 0 && versionEnd < position;
+            if (versioned && Integer.parseInt(message, 0, versionEnd, 10) != MESSAGE_VERSION) {
+                skip(message, "unknown version");
+                return;
+            }
+            long publishedAt = Long.parseLong(message, versioned ? versionEnd + 1 : 0, position, 10);
+
+            while (position < message.length()) {
+                int codeEnd = message.indexOf(FIELD_SEPARATOR, position + 1);
+                int expiryEnd = versioned ? message.indexOf(FIELD_SEPARATOR, codeEnd + 1) : codeEnd;
+                long expiresAt = versioned ? Long.parseLong(message, codeEnd + 1, expiryEnd, 10) : 0;
+                int lengthEnd = message.indexOf(FIELD_SEPARATOR, expiryEnd + 1);
+                int urlEnd = lengthEnd + 1 + Integer.parseInt(message, expiryEnd + 1, lengthEnd, 10);
+                applyLocally(message.substring(position + 1, codeEnd), message.substring(lengthEnd + 1, urlEnd), expiresAt);
+                position = urlEnd;
+            }
+            changeLag.record(Math.max(0, System.currentTimeMillis() - publishedAt), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            skip(message, e.toString());
+        }
+    }
+
+    private void skip(String message, String reason) {
+        skippedMessages.increment();
+        LOGGER.warn("Skipping mapping mirror change message, {}: {}", reason,
+                message.length() > 100 ? message.substring(0, 100) + "..." : message);
+    }
+
+    private void applyLocally(String shortCode, String originalUrl, long expiresAt) {
+        if (!OffHeapMappings.isMirrorable(shortCode)) {
+            return;
+        }
+        long expiry = expiresAt == 0 ? OffHeapMappings.NEVER : expiresAt;
+
+        // The mirror being rebuilt is read first: once it is gone, it has already replaced the current one
+        OffHeapMappings next = rebuilding;
+        OffHeapMappings current = mirror;
+        if (next != null) {
+            next.put(shortCode, originalUrl, expiry);
+        }
+        if (current != null) {
+            current.put(shortCode, originalUrl, expiry);
+        }
+    }
+
+    // Scanned entries never replace a write applied meanwhile, which is at least as recent as what the scan read
+    private Mono<Long> resync() {
+        OffHeapMappings current = mirror;
+        OffHeapMappings next = new OffHeapMappings(current == null ? mirrorConfiguration.getExpectedEntries() : current.size(),
+                (int) mirrorConfiguration.getChunkSize().toBytes());
+        rebuilding = next;
+
+        long started = System.nanoTime();
+        return scanMappings()
+                .filter(urlModel -> OffHeapMappings.isMirrorable(urlModel.shortenedUrl()))
+                .doOnNext(urlModel -> next.putIfAbsent(urlModel.shortenedUrl(), urlModel.originalUrl(),
+                        urlModel.expiresAt() == null ? OffHeapMappings.NEVER : urlModel.expiresAt().toEpochMilli()))
+                .count()
+                .doOnNext(count -> {
+                    mirror = next;
+                    syncedAt = System.nanoTime();
+                    LOGGER.info("Mapping mirror loaded {} mappings in {} ms, {} bytes of direct memory", next.size(),
+                            (syncedAt - started) / 1_000_000, next.memoryBytes());
+                })
+                .doFinally(signal -> rebuilding = null);
+    }
+
+    // The current layout first, so its mappings win over the copies still left in the previous and legacy ones
+    private Flux<UrlModel> scanMappings() {
+        Set<String> keys = new LinkedHashSet<>(keyBuckets.primaryKeys());
+        if (keyBuckets.isRebucketing()) {
+            keys.addAll(keyBuckets.previousPrimaryKeys());
+        }
+        if (migrationConfiguration.isLegacyLookupEnabled()) {
+            keys.add(RedisUrlRepository.REDIS_KEY);
+        }
+
+        ScanOptions scanOptions = ScanOptions.scanOptions().count(migrationConfiguration.getBatchSize()).build();
+        return Flux.fromIterable(keys)
+                .concatMap(key -> reactiveHashOperations.scan(key, scanOptions), 1)
+                .map(entry -> new UrlModel(entry.getValue().getOriginalUrl(), UrlEntity.toShortCode(entry.getKey()),
+                        entry.getValue().toModel().expiresAt()));
+    }
+
+    private double entries() {
+        OffHeapMappings current = mirror;
+        return current == null ? 0 : current.size();
+    }
+
+    private double memoryBytes() {
+        OffHeapMappings current = mirror;
+        return current == null ? 0 : current.memoryBytes();
+    }
+
+    private double memoryBytesPerEntry() {
+        OffHeapMappings current = mirror;
+        return current == null || current.size() == 0 ? 0 : (double) current.memoryBytes() / current.size();
+    }
+
+    private double syncAgeSeconds() {
+        return mirror == null ? Double.NaN : (System.nanoTime() - syncedAt) / 1e9;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("shortener.mirror.lookups")
+                .description("Short code lookups answered by the mirror, or sent to Redis as a miss or while it is not loaded")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
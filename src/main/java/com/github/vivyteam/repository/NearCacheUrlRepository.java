@@ -0,0 +1,315 @@
+package com.github.vivyteam.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.vivyteam.configuration.NearCacheConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.service.utils.RequestCoalescer;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache in front of the Redis repository for the redirect lookups.
+ * <p>
+ * Entries are bounded by size and expire after a fixed time. Every write publishes the shortened URLs on a
+ * Redis pub/sub channel, one per line, so all nodes drop their local copy as soon as a mapping changes.
+ * <p>
+ * Lookups missing the cache are first checked against the {@link ShortCodeFilter}, which every write keeps up to date.
+ * When the {@link MappingMirror} is enabled and loaded, it answers every lookup instead.
+ * <p>
+ * Each entry counts the lookups it served, so the hottest ones can be saved by the {@link HotSetSnapshot} and loaded
+ * back by the next process.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class NearCacheUrlRepository implements UrlRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearCacheUrlRepository.class);
+    static final String INVALIDATION_CHANNEL = "shortener:url:invalidation";
+    private static final String CACHE_NAME = "shortener.near-cache";
+    private static final String MESSAGE_SEPARATOR = "\n";
+
+    private final UrlRepository delegate;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final NearCacheConfiguration nearCacheConfiguration;
+    private final ShortCodeFilter shortCodeFilter;
+    private final MappingMirror mappingMirror;
+    private final Cache<String, CachedMapping> cache;
+    private final RequestCoalescer<String, UrlModel> lookups;
+    private final Timer nearCacheStage;
+    private Disposable invalidationSubscription;
+
+    public NearCacheUrlRepository(RedisUrlRepository delegate,
+                                  ReactiveStringRedisTemplate stringRedisTemplate,
+                                  NearCacheConfiguration nearCacheConfiguration,
+                                  ShortCodeFilter shortCodeFilter,
+                                  MappingMirror mappingMirror,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.nearCacheConfiguration = nearCacheConfiguration;
+        this.shortCodeFilter = shortCodeFilter;
+        this.mappingMirror = mappingMirror;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(nearCacheConfiguration.getMaximumSize())
+                .expireAfterWrite(nearCacheConfiguration.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.lookups = new RequestCoalescer<>("findByShortenedUrl", meterRegistry);
+        this.nearCacheStage = StageTimers.timer(meterRegistry, StageTimers.NEAR_CACHE);
+    }
+
+    @PostConstruct
+    public void subscribeToInvalidations() {
+        if (!nearCacheConfiguration.isEnabled()) {
+            return;
+        }
+
+        // If the subscription drops we may have missed invalidations, so the whole cache is discarded before retrying
+        invalidationSubscription = stringRedisTemplate.listenToChannel(INVALIDATION_CHANNEL)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnNext(message -> cache.invalidateAll(List.of(message.split(MESSAGE_SEPARATOR))))
+                .doOnError(e -> {
+                    LOGGER.warn("Near-cache invalidation subscription failed, clearing cache: {}", e.getMessage());
+                    cache.invalidateAll();
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribeFromInvalidations() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
+    @Override
+    public Mono<UrlModel> save(UrlModel urlModel) {
+        return delegate.save(urlModel)
+                .flatMap(savedUrlModel -> invalidate(savedUrlModel.shortenedUrl())
+                        .then(shortCodeFilter.add(List.of(savedUrlModel.shortenedUrl())))
+                        .then(mappingMirror.publish(List.of(savedUrlModel)))
+                        .thenReturn(savedUrlModel));
+    }
+
+    // Creates never overwrite an existing code, so there is nothing to invalidate
+    @Override
+    public Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes, Instant expiresAt) {
+        return delegate.create(originalUrl, candidateShortCodes, expiresAt)
+                .flatMap(createdUrlModel -> shortCodeFilter.add(List.of(createdUrlModel.shortenedUrl()))
+                        .then(mappingMirror.publish(List.of(createdUrlModel)))
+                        .thenReturn(createdUrlModel));
+    }
+
+    @Override
+    public Mono<UrlModel> findByShortenedUrl(String shortenedUrl) {
+        if (mappingMirror.isEnabled()) {
+            return mappingMirror.findByShortenedUrl(shortenedUrl, () -> findCachedOrLoad(shortenedUrl));
+        }
+        return findCachedOrLoad(shortenedUrl);
+    }
+
+    @Override
+    public Mono<UrlModel> findByOriginalUrl(String originalUrl) {
+        return delegate.findByOriginalUrl(originalUrl);
+    }
+
+    @Override
+    public Flux<UrlModel> saveAll(List<UrlModel> urlModels) {
+        return delegate.saveAll(urlModels)
+                .collectList()
+                .flatMapMany(savedUrlModels -> {
+                    List<String> shortCodes = savedUrlModels.stream().map(UrlModel::shortenedUrl).toList();
+                    return invalidate(shortCodes)
+                            .then(shortCodeFilter.add(shortCodes))
+                            .then(mappingMirror.publish(savedUrlModels))
+                            .thenMany(Flux.fromIterable(savedUrlModels));
+                });
+    }
+
+    @Override
+    public Flux<UrlModel> createAll(Map<String, List<String>> candidateShortCodes) {
+        return delegate.createAll(candidateShortCodes)
+                .collectList()
+                .flatMapMany(createdUrlModels -> {
+                    List<String> shortCodes = createdUrlModels.stream().map(UrlModel::shortenedUrl).toList();
+                    return shortCodeFilter.add(shortCodes)
+                            .then(mappingMirror.publish(createdUrlModels))
+                            .thenMany(Flux.fromIterable(createdUrlModels));
+                });
+    }
+
+    @Override
+    public Flux<UrlModel> findAllByOriginalUrl(List<String> originalUrls) {
+        return delegate.findAllByOriginalUrl(originalUrls);
+    }
+
+    /**
+     * @return up to {@code limit} cached mappings, hottest first as ranked by the cache eviction policy
+     */
+    public List<HotMapping> hottest(int limit) {
+        if (!nearCacheConfiguration.isEnabled()) {
+            return List.of();
+        }
+
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).values().stream()
+                        .map(cached -> new HotMapping(cached.urlModel().shortenedUrl(), cached.urlModel().originalUrl(),
+                                cached.urlModel().expiresAt(), cached.hits().sum()))
+                        .toList())
+                .orElse(List.of());
+    }
+
+    /**
+     * Caches the mappings of a hot-set snapshot right away, then reloads them from Redis, so the changes this node
+     * missed while it was down replace them. A mapping Redis cannot be reached for stays as it was in the snapshot,
+     * expiry included, and mappings that have expired since the snapshot are left out.
+     *
+     * @return the number of mappings confirmed by Redis
+     */
+    public Mono<Long> warm(List<HotMapping> mappings, int concurrency) {
+        if (!nearCacheConfiguration.isEnabled() || mappings.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        long now = System.currentTimeMillis();
+        List<HotMapping> liveMappings = mappings.stream()
+                .filter(mapping -> mapping.expiresAt() == null || mapping.expiresAt().toEpochMilli() > now)
+                .toList();
+        liveMappings.forEach(mapping -> cache.put(mapping.shortCode(), CachedMapping.of(
+                new UrlModel(mapping.originalUrl(), mapping.shortCode(), mapping.expiresAt()), mapping.hits())));
+        return Flux.fromIterable(liveMappings)
+                .flatMap(mapping -> delegate.findByShortenedUrl(mapping.shortCode())
+                        .doOnNext(urlModel -> cache.put(mapping.shortCode(), CachedMapping.of(urlModel, mapping.hits())))
+                        .switchIfEmpty(Mono.fromRunnable(() -> cache.invalidate(mapping.shortCode())))
+                        .onErrorResume(e -> Mono.empty()), concurrency)
+                .count();
+    }
+
+    /**
+     * Checks the cache without counting a lookup.
+     */
+    public boolean isCached(String shortenedUrl) {
+        return cache.asMap().containsKey(shortenedUrl);
+    }
+
+    /**
+     * @return the hits and misses of the cache since startup
+     */
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    private Mono<UrlModel> findCachedOrLoad(String shortenedUrl) {
+        if (nearCacheConfiguration.isEnabled()) {
+            long lookupStart = System.nanoTime();
+            CachedMapping cached = cache.getIfPresent(shortenedUrl);
+            nearCacheStage.record(System.nanoTime() - lookupStart, TimeUnit.NANOSECONDS);
+            if (cached != null) {
+                // Expired links are dropped on the first lookup after their expiry, Redis would not return them either
+                if (cached.hasExpired()) {
+                    cache.invalidate(shortenedUrl);
+                    return Mono.empty();
+                }
+                cached.hits().increment();
+                return Mono.just(cached.urlModel());
+            }
+        }
+
+        // Most codes that were never created are answered here, without a Redis round trip. The filter may not have
+        // heard of a code just created on another node yet, so some of its rejections are still checked in Redis.
+        if (!shortCodeFilter.mightContain(shortenedUrl)) {
+            return shortCodeFilter.tryVerifyRejection() ? verifyRejection(shortenedUrl) : Mono.empty();
+        }
+
+        // A viral code gets thousands of concurrent misses, they all share a single Redis lookup
+        if (nearCacheConfiguration.isCoalesceLookups()) {
+            return lookups.coalesce(shortenedUrl, this::load);
+        }
+        return load(shortenedUrl);
+    }
+
+    private Mono<UrlModel> load(String shortenedUrl) {
+        return delegate.findByShortenedUrl(shortenedUrl)
+                .doOnNext(urlModel -> {
+                    if (nearCacheConfiguration.isEnabled()) {
+                        cache.put(shortenedUrl, CachedMapping.of(urlModel, 0));
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(shortCodeFilter::recordFalsePositive));
+    }
+
+    private Mono<UrlModel> verifyRejection(String shortenedUrl) {
+        return delegate.findByShortenedUrl(shortenedUrl)
+                .doOnNext(urlModel -> {
+                    shortCodeFilter.recordFalseNegative(shortenedUrl);
+                    if (nearCacheConfiguration.isEnabled()) {
+                        cache.put(shortenedUrl, CachedMapping.of(urlModel, 0));
+                    }
+                });
+    }
+
+    private Mono<Long> invalidate(String shortenedUrl) {
+        return invalidate(List.of(shortenedUrl));
+    }
+
+    private Mono<Long> invalidate(List<String> shortenedUrls) {
+        if (!nearCacheConfiguration.isEnabled() || shortenedUrls.isEmpty()) {
+            return Mono.empty();
+        }
+
+        cache.invalidateAll(shortenedUrls);
+        return stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, String.join(MESSAGE_SEPARATOR, shortenedUrls));
+    }
+
+    /**
+     * A mapping of the hot set, with its expiry, null when it never expires, and the lookups the cache served for it.
+     */
+    public record HotMapping(String shortCode, String originalUrl, Instant expiresAt, long hits) {
+
+        public HotMapping(String shortCode, String originalUrl, long hits) {
+            this(shortCode, originalUrl, null, hits);
+        }
+    }
+
+    private record CachedMapping(UrlModel urlModel, LongAdder hits) {
+
+        private boolean hasExpired() {
+            return urlModel.expiresAt() != null && urlModel.hasExpiredAt(System.currentTimeMillis());
+        }
+
+        private static CachedMapping of(UrlModel urlModel, long hits) {
+            LongAdder counter = new LongAdder();
+            counter.add(hits);
+            return new CachedMapping(urlModel, counter);
+        }
+    }
+}
@@ -1,72 +1,633 @@
 package com.github.vivyteam.repository;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.ReadRoutingConfiguration;
+import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.configuration.WriteBatchingConfiguration;
 import com.github.vivyteam.model.UrlEntity;
 import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.service.utils.MicroBatcher;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.ReactiveHashOperations;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
-import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Repository
 public class RedisUrlRepository implements UrlRepository {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisUrlRepository.class);
-    private static final String REDIS_KEY = "shortener:url";
-    private static final String REDIS_KEY_SECONDARY_INDEX = "url:index";
-    private static final String REDIS_KEY_FIND_BY_ORIGINAL_URL_CACHE = "shortener:url:originalUrlCache";
-
-    @Value("${app.shortener.cache-expiration-time}")
-    private Duration cacheExpirationTime;
+    public static final String REDIS_KEY = "shortener:url";
+    public static final String REDIS_KEY_REVERSE_INDEX = "shortener:url:index";
+    public static final String REDIS_KEY_LEGACY_INDEX = "url:index";
+    public static final String REDIS_KEY_LEGACY_ORIGINAL_URL_CACHE = "shortener:url:originalUrlCache";
+    private static final RedisScript<UrlEntity> CLAIM_SHORT_CODE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/claim-short-code.lua"), UrlEntity.class);
+    private static final RedisScript<String> CLAIM_SHORT_CODES_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/claim-short-codes.lua"), String.class);
+    private static final RedisScript<Long> DELETE_EXPIRED_MAPPINGS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/delete-expired-mappings.lua"), Long.class);
+    private static final RedisScript<Long> DELETE_INDEX_ENTRIES_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/delete-index-entries.lua"), Long.class);
+    private static final RedisElementWriter<byte[]> SCRIPT_ARGS_WRITER = RedisElementWriter.from(RedisSerializer.byteArray());
+    private static final RedisElementReader<String> CLAIM_FLAGS_READER = RedisElementReader.from(RedisSerializer.string());
 
+    private final ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
     private final ReactiveHashOperations<String, String, UrlEntity> reactiveHashOperations;
-    private final ReactiveValueOperations<String, UrlEntity> reactiveValueOperations;
+    private final ReactiveHashOperations<String, String, String> reverseIndexOperations;
+    private final HashReads primaryReads;
+    private final HashReads replicaReads;
+    private final RedisSerializer<UrlEntity> urlEntitySerializer;
+    private final ShorternerApiConfiguration apiConfiguration;
+    private final MigrationConfiguration migrationConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private final ExpiryIndex expiryIndex;
+    private final ReadRoutingConfiguration readRoutingConfiguration;
+    private final Cache<String, Boolean> recentWrites;
+    private final AtomicLong primaryRetrySecond = new AtomicLong();
+    private final AtomicInteger primaryRetriesInSecond = new AtomicInteger();
+    private final MicroBatcher<UrlModel> saveBatcher;
+    private final MicroBatcher<UrlEntity> reverseIndexBatcher;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> commandCounters = new ConcurrentHashMap<>();
+    private final LongAdder inFlightCommands = new LongAdder();
+    private final Timer redisStage;
 
-    public RedisUrlRepository(ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate) {
+    public RedisUrlRepository(ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate,
+                              ReactiveStringRedisTemplate stringRedisTemplate,
+                              @Qualifier(RedisConfiguration.READ_TEMPLATE) ReactiveRedisTemplate<String, UrlEntity> readRedisTemplate,
+                              @Qualifier(RedisConfiguration.READ_STRING_TEMPLATE) ReactiveStringRedisTemplate readStringRedisTemplate,
+                              RedisSerializer<UrlEntity> urlEntitySerializer,
+                              ShorternerApiConfiguration apiConfiguration,
+                              MigrationConfiguration migrationConfiguration,
+                              UrlKeyBuckets keyBuckets,
+                              ExpiryIndex expiryIndex,
+                              ReadRoutingConfiguration readRoutingConfiguration,
+                              WriteBatchingConfiguration writeBatchingConfiguration,
+                              MeterRegistry meterRegistry) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.urlEntitySerializer = urlEntitySerializer;
         this.reactiveHashOperations = reactiveRedisTemplate.opsForHash();
-        this.reactiveValueOperations = reactiveRedisTemplate.opsForValue();
+        this.reverseIndexOperations = stringRedisTemplate.opsForHash();
+        this.primaryReads = new HashReads(reactiveHashOperations, reverseIndexOperations);
+        this.replicaReads = new HashReads(readRedisTemplate.opsForHash(), readStringRedisTemplate.opsForHash());
+        this.apiConfiguration = apiConfiguration;
+        this.migrationConfiguration = migrationConfiguration;
+        this.keyBuckets = keyBuckets;
+        this.expiryIndex = expiryIndex;
+        this.readRoutingConfiguration = readRoutingConfiguration;
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(readRoutingConfiguration.getReadYourWritesMaximumSize())
+                .expireAfterWrite(readRoutingConfiguration.getReadYourWritesWindow())
+                .build();
+        this.meterRegistry = meterRegistry;
+        this.redisStage = StageTimers.timer(meterRegistry, StageTimers.REDIS);
+        // Lettuce keeps its command queue to itself, the commands awaiting their reply are the closest we can watch
+        Gauge.builder("shortener.redis.commands.in-flight", inFlightCommands, LongAdder::sum)
+                .description("Redis commands sent by repository operations and still awaiting their reply")
+                .register(meterRegistry);
+
+        if (writeBatchingConfiguration.isEnabled()) {
+            this.saveBatcher = new MicroBatcher<>("save", writeBatchingConfiguration.getMaxBatchSize(),
+                    writeBatchingConfiguration.getWindow(), writeBatchingConfiguration.getMaxInFlightFlushes(),
+                    urlModels -> writeAll(urlModels, "save"), meterRegistry);
+            this.reverseIndexBatcher = new MicroBatcher<>("create", writeBatchingConfiguration.getMaxBatchSize(),
+                    writeBatchingConfiguration.getWindow(), writeBatchingConfiguration.getMaxInFlightFlushes(),
+                    urlEntities -> writeReverseIndexBatch(urlEntities, "create"), meterRegistry);
+        } else {
+            this.saveBatcher = null;
+            this.reverseIndexBatcher = null;
+        }
+    }
+
+    // Writes still waiting for their batch are flushed before the connection goes away
+    @PreDestroy
+    public void stop() {
+        if (saveBatcher != null) {
+            saveBatcher.dispose();
+            reverseIndexBatcher.dispose();
+        }
     }
 
+    // With write batching, saves arriving together share the multi-field HSETs of one flush
     @Override
     public Mono<UrlModel> save(UrlModel urlModel) {
+        if (saveBatcher != null) {
+            return saveBatcher.submit(urlModel)
+                    .thenReturn(UrlEntity.fromModel(urlModel).toModel());
+        }
+
         UrlEntity urlEntity = UrlEntity.fromModel(urlModel);
+        String digest = UrlIndexKeys.of(urlEntity.getOriginalUrl());
         LOGGER.debug("Saving URL: {}", urlEntity);
-        return reactiveHashOperations.put(REDIS_KEY, urlEntity.getShortenedUrl(), urlEntity)
-                .then(reactiveHashOperations.put(REDIS_KEY_SECONDARY_INDEX, urlEntity.getOriginalUrl(), urlEntity))
-                .doOnSuccess(success -> LOGGER.debug("URL saved successfully: {}", urlEntity))
+        return reactiveHashOperations.put(keyBuckets.primaryKey(urlEntity.getShortenedUrl()), urlEntity.getShortenedUrl(), urlEntity)
+                .then(reverseIndexOperations.put(keyBuckets.indexKey(digest), digest, urlEntity.getShortenedUrl()))
+                .transform(sent("save", 2))
+                .then(indexExpiry(List.of(urlEntity), "save"))
+                .doOnSuccess(success -> {
+                    recordWrite(urlEntity.getShortenedUrl(), digest);
+                    LOGGER.debug("URL saved successfully: {}", urlEntity);
+                })
                 .thenReturn(urlEntity.toModel());
     }
 
+    // The index entry and the candidate codes live in buckets that may sit on different shards, so they are read and
+    // claimed with separate commands. Concurrent creates of one URL still end up with the same code: they try the same
+    // candidates in the same order and every claim is atomic within its bucket. A claim only compares the normalized
+    // original URL a code holds, so creates of one URL with different expiries or letter cases still agree. A mapping of another URL that has
+    // expired but is not swept yet still holds its code, so the URL gets another one.
     @Override
-    public Mono<UrlModel> findByShortenedUrl(String shortenedUrl) {
-        LOGGER.debug("Searching for URL with shortened URL: {}", shortenedUrl);
-        return reactiveHashOperations.get(REDIS_KEY, shortenedUrl)
+    public Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes, Instant expiresAt) {
+        LOGGER.debug("Creating URL: {} with {} candidate codes", originalUrl, candidateShortCodes.size());
+        String digest = UrlIndexKeys.of(originalUrl);
+        Long expiresAtMillis = expiresAt == null ? null : expiresAt.toEpochMilli();
+
+        return findEntityByOriginalUrl(primaryReads, originalUrl, digest, "create")
+                // the index is keyed by a digest, a different URL behind it is a digest collision and the URL claims its own code
+                .filter(urlEntity -> isMappingOf(urlEntity, originalUrl) && isLive(urlEntity))
+                .switchIfEmpty(Mono.defer(() -> claim(originalUrl, digest, candidateShortCodes, expiresAtMillis)))
+                .doOnNext(urlEntity -> LOGGER.debug("URL created: {}", urlEntity))
+                .map(UrlEntity::toModel);
+    }
+
+    @Override
+    public Mono<UrlModel> findByShortenedUrl(String shortCode) {
+        LOGGER.debug("Searching for URL with short code: {}", shortCode);
+        return routeRead(shortCode, reads -> findEntityByShortCode(reads, shortCode, "findByShortenedUrl"))
+                .filter(RedisUrlRepository::isLive)
                 .doOnNext(urlEntity -> LOGGER.debug("Found URL: {} -> {}", urlEntity.getOriginalUrl(), urlEntity.getShortenedUrl()))
                 .map(UrlEntity::toModel);
     }
 
-    // first we try to find in cache, if not found, then we try to find in secondary index, and If its in secondary index, save it in cache
     @Override
     public Mono<UrlModel> findByOriginalUrl(String originalUrl) {
         LOGGER.debug("Searching for URL with original URL: {}", originalUrl);
+        String digest = UrlIndexKeys.of(originalUrl);
+        return routeRead(digest, reads -> findEntityByOriginalUrl(reads, originalUrl, digest, "findByOriginalUrl"))
+                .filter(urlEntity -> isMappingOf(urlEntity, originalUrl) && isLive(urlEntity))
+                .doOnNext(urlEntity -> LOGGER.debug("URL already created found it: {} -> {}", urlEntity.getOriginalUrl(), urlEntity.getShortenedUrl()))
+                .map(UrlEntity::toModel);
+    }
+
+    @Override
+    public Flux<UrlModel> saveAll(List<UrlModel> urlModels) {
+        if (urlModels.isEmpty()) {
+            return Flux.empty();
+        }
+
+        LOGGER.debug("Saving {} URLs", urlModels.size());
+        return writeAll(urlModels, "saveAll")
+                .thenMany(Flux.fromIterable(urlModels));
+    }
+
+    // The first candidate of every URL is claimed by one script call per primary bucket, all sent together. A URL whose
+    // first candidate is held by another URL, or that got a mapping meanwhile, goes through create with its candidates.
+    @Override
+    public Flux<UrlModel> createAll(Map<String, List<String>> candidateShortCodes) {
+        if (candidateShortCodes.isEmpty()) {
+            return Flux.empty();
+        }
+        if (keyBuckets.isRebucketing()) {
+            // a code may still be held in its previous bucket, which the script of the current one cannot see
+            return UrlRepository.super.createAll(candidateShortCodes);
+        }
+
+        LOGGER.debug("Creating {} URLs", candidateShortCodes.size());
+        Map<String, List<UrlEntity>> byPrimaryKey = new LinkedHashMap<>();
+        candidateShortCodes.forEach((originalUrl, candidates) -> {
+            UrlEntity urlEntity = new UrlEntity(originalUrl, candidates.get(0));
+            byPrimaryKey.computeIfAbsent(keyBuckets.primaryKey(urlEntity.getShortenedUrl()), key -> new ArrayList<>())
+                    .add(urlEntity);
+        });
+        byte[] now = utf8(String.valueOf(System.currentTimeMillis()));
+
+        return Flux.fromIterable(byPrimaryKey.entrySet())
+                .flatMap(entry -> claimAll(entry.getKey(), entry.getValue(), now))
+                .collectList()
+                .transform(sent("createAll", byPrimaryKey.size()))
+                .flatMapMany(claimedByKey -> {
+                    List<UrlEntity> claimed = claimedByKey.stream().flatMap(List::stream).toList();
+                    Set<String> claimedUrls = claimed.stream().map(UrlEntity::getOriginalUrl).collect(Collectors.toSet());
+                    Map<String, List<String>> unclaimed = new LinkedHashMap<>();
+                    candidateShortCodes.forEach((originalUrl, candidates) -> {
+                        if (!claimedUrls.contains(originalUrl)) {
+                            unclaimed.put(originalUrl, candidates);
+                        }
+                    });
+
+                    Mono<Void> reverseIndex = claimed.isEmpty() ? Mono.empty() : writeReverseIndexBatch(claimed, "createAll");
+                    return reverseIndex
+                            .thenMany(Flux.fromIterable(claimed).map(UrlEntity::toModel))
+                            .concatWith(UrlRepository.super.createAll(unclaimed));
+                });
+    }
+
+    // one HMGET per index bucket, then one HMGET per primary bucket for the codes the index points to
+    @Override
+    public Flux<UrlModel> findAllByOriginalUrl(List<String> originalUrls) {
+        if (originalUrls.isEmpty()) {
+            return Flux.empty();
+        }
+
+        LOGGER.debug("Searching for {} URLs in reverse index", originalUrls.size());
+        Set<String> normalizedUrls = originalUrls.stream().map(UrlIndexKeys::normalize).collect(Collectors.toSet());
+        List<String> digests = originalUrls.stream().map(UrlIndexKeys::of).distinct().toList();
 
-        return reactiveValueOperations.get(REDIS_KEY_FIND_BY_ORIGINAL_URL_CACHE + originalUrl)
-                .switchIfEmpty(
-                        reactiveHashOperations.get(REDIS_KEY_SECONDARY_INDEX, originalUrl)
-                                .doOnNext(urlEntity -> LOGGER.debug("URL found in secondary index: {} -> {}", urlEntity.getOriginalUrl(), urlEntity.getShortenedUrl()))
-                                .flatMap(urlEntity -> reactiveValueOperations.set(
-                                                REDIS_KEY_FIND_BY_ORIGINAL_URL_CACHE + originalUrl,
-                                                urlEntity,
-                                                cacheExpirationTime)
-                                        .thenReturn(urlEntity)
-                                )
-                )
-                .doOnNext(urlEntity -> LOGGER.info("URL already created found it: {} -> {}", urlEntity.getOriginalUrl(), urlEntity.getShortenedUrl()))
+        return multiGet(reverseIndexOperations, digests, keyBuckets::indexKey, keyBuckets::previousIndexKey, "findAllByOriginalUrl")
+                .map(shortCodes -> shortCodes.values().stream().distinct().toList())
+                .flatMap(shortCodes -> multiGet(reactiveHashOperations, shortCodes, keyBuckets::primaryKey,
+                        keyBuckets::previousPrimaryKey, "findAllByOriginalUrl"))
+                .flatMapMany(urlEntities -> {
+                    List<UrlEntity> found = urlEntities.values().stream()
+                            .filter(urlEntity -> normalizedUrls.contains(UrlIndexKeys.normalize(urlEntity.getOriginalUrl())))
+                            .toList();
+                    Set<String> foundUrls = found.stream()
+                            .map(urlEntity -> UrlIndexKeys.normalize(urlEntity.getOriginalUrl()))
+                            .collect(Collectors.toSet());
+                    List<String> missingUrls = originalUrls.stream()
+                            .filter(originalUrl -> !foundUrls.contains(UrlIndexKeys.normalize(originalUrl)))
+                            .toList();
+                    return Flux.fromIterable(found)
+                            .filter(RedisUrlRepository::isLive)
+                            .concatWith(findAllByLegacyOriginalUrl(missingUrls));
+                })
                 .map(UrlEntity::toModel);
     }
+
+    /**
+     * Deletes the mappings of the given codes that have expired by {@code now}, then the reverse index entries still
+     * pointing to them. A mapping written again meanwhile without an expiry, or with a later one, is left alone. Each
+     * bucket is cleared by a single script call, and the calls of all buckets are sent together.
+     *
+     * @return the number of mappings deleted
+     */
+    public Mono<Long> deleteExpired(List<String> shortCodes, long now) {
+        if (shortCodes.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        return multiGet(reactiveHashOperations, shortCodes, keyBuckets::primaryKey, keyBuckets::previousPrimaryKey, "deleteExpired")
+                .flatMap(found -> {
+                    Map<String, List<String>> codesByKey = new LinkedHashMap<>();
+                    Map<String, List<String>> indexEntriesByKey = new LinkedHashMap<>();
+                    found.forEach((shortCode, urlEntity) -> {
+                        if (!urlEntity.hasExpiredAt(now)) {
+                            return;
+                        }
+                        String digest = UrlIndexKeys.of(urlEntity.getOriginalUrl());
+                        addToBuckets(codesByKey, List.of(shortCode), keyBuckets.primaryKey(shortCode), keyBuckets.previousPrimaryKey(shortCode));
+                        addToBuckets(indexEntriesByKey, List.of(digest, shortCode), keyBuckets.indexKey(digest), keyBuckets.previousIndexKey(digest));
+                    });
+                    if (codesByKey.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+
+                    return deleteInBuckets(DELETE_EXPIRED_MAPPINGS_SCRIPT, codesByKey, String.valueOf(now))
+                            .flatMap(deleted -> deleteInBuckets(DELETE_INDEX_ENTRIES_SCRIPT, indexEntriesByKey, null)
+                                    .thenReturn(deleted));
+                });
+    }
+
+    // Replicas may lag behind the primary. Keys this node wrote within the read-your-writes window are read from the
+    // primary, and a replica miss is retried on the primary in case the mapping was just created by another node. The
+    // retries are capped per second, so lookups of unknown codes do not all reach the primary.
+    private Mono<UrlEntity> routeRead(String key, Function<HashReads, Mono<UrlEntity>> lookup) {
+        if (!readRoutingConfiguration.isReadYourWritesEnabled()) {
+            return lookup.apply(replicaReads);
+        }
+        if (recentWrites.getIfPresent(key) != null) {
+            return lookup.apply(primaryReads);
+        }
+
+        return lookup.apply(replicaReads)
+                .switchIfEmpty(Mono.defer(() -> tryRetryOnPrimary() ? lookup.apply(primaryReads) : Mono.empty()));
+    }
+
+    private boolean tryRetryOnPrimary() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = primaryRetrySecond.get();
+        if (current != second && primaryRetrySecond.compareAndSet(current, second)) {
+            primaryRetriesInSecond.set(0);
+        }
+        return primaryRetriesInSecond.incrementAndGet() <= readRoutingConfiguration.getMaxPrimaryRetriesPerSecond();
+    }
+
+    private void recordWrite(String shortCode, String digest) {
+        if (readRoutingConfiguration.isReadYourWritesEnabled()) {
+            recentWrites.put(shortCode, Boolean.TRUE);
+            recentWrites.put(digest, Boolean.TRUE);
+        }
+    }
+
+    private Mono<UrlEntity> findEntityByShortCode(HashReads reads, String shortCode, String operation) {
+        return get(reads.mappings(), keyBuckets.primaryKey(shortCode), keyBuckets.previousPrimaryKey(shortCode), shortCode, operation)
+                .switchIfEmpty(Mono.defer(() -> findByLegacyShortenedUrl(reads, shortCode, operation)));
+    }
+
+    private Mono<UrlEntity> findEntityByOriginalUrl(HashReads reads, String originalUrl, String digest, String operation) {
+        return get(reads.reverseIndex(), keyBuckets.indexKey(digest), keyBuckets.previousIndexKey(digest), digest, operation)
+                .flatMap(shortCode -> findEntityByShortCode(reads, shortCode, operation))
+                .switchIfEmpty(Mono.defer(() -> findByLegacyOriginalUrl(reads, originalUrl, operation)));
+    }
+
+    private Mono<UrlEntity> claim(String originalUrl, String digest, List<String> candidateShortCodes, Long expiresAt) {
+        return Flux.fromIterable(candidateShortCodes)
+                .concatMap(shortCode -> claim(originalUrl, shortCode, expiresAt))
+                .next()
+                .flatMap(urlEntity -> writeReverseIndex(urlEntity, digest)
+                        .then(indexExpiry(List.of(urlEntity), "create"))
+                        .thenReturn(urlEntity));
+    }
+
+    private Mono<List<UrlEntity>> claimAll(String primaryKey, List<UrlEntity> urlEntities, byte[] now) {
+        List<byte[]> args = new ArrayList<>(1 + 3 * urlEntities.size());
+        args.add(now);
+        for (UrlEntity urlEntity : urlEntities) {
+            args.add(utf8(urlEntity.getShortenedUrl()));
+            args.add(urlEntitySerializer.serialize(urlEntity));
+            args.add(utf8(UrlIndexKeys.normalize(urlEntity.getOriginalUrl())));
+        }
+
+        return reactiveRedisTemplate.execute(CLAIM_SHORT_CODES_SCRIPT, List.of(primaryKey), args, SCRIPT_ARGS_WRITER, CLAIM_FLAGS_READER)
+                .next()
+                .map(flags -> {
+                    List<UrlEntity> claimed = new ArrayList<>(urlEntities.size());
+                    for (int i = 0; i < urlEntities.size(); i++) {
+                        if (flags.charAt(i) == '1') {
+                            claimed.add(urlEntities.get(i));
+                        }
+                    }
+                    return claimed;
+                });
+    }
+
+    private Mono<Void> writeReverseIndex(UrlEntity urlEntity, String digest) {
+        if (reverseIndexBatcher != null) {
+            return reverseIndexBatcher.submit(urlEntity);
+        }
+
+        return reverseIndexOperations.put(keyBuckets.indexKey(digest), digest, urlEntity.getShortenedUrl())
+                .transform(sent("create", 1))
+                .doOnSuccess(success -> recordWrite(urlEntity.getShortenedUrl(), digest))
+                .then();
+    }
+
+    private Mono<UrlEntity> claim(String originalUrl, String shortCode, Long expiresAt) {
+        List<byte[]> args = List.of(utf8(shortCode), urlEntitySerializer.serialize(new UrlEntity(originalUrl, shortCode, expiresAt)),
+                utf8(UrlIndexKeys.normalize(originalUrl)), utf8(String.valueOf(System.currentTimeMillis())));
+        Mono<UrlEntity> claimed = reactiveRedisTemplate.execute(CLAIM_SHORT_CODE_SCRIPT, List.of(keyBuckets.primaryKey(shortCode)), args,
+                        SCRIPT_ARGS_WRITER, RedisElementReader.from(urlEntitySerializer))
+                .next()
+                .transform(sent("create", 1));
+
+        String previousKey = keyBuckets.previousPrimaryKey(shortCode);
+        if (previousKey == null) {
+            return claimed;
+        }
+
+        // a code that has not been rebucketed yet still belongs to its URL
+        return reactiveHashOperations.get(previousKey, shortCode)
+                .transform(sent("create", 1))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(existing -> existing.isPresent()
+                        ? Mono.justOrEmpty(existing.filter(urlEntity -> UrlIndexKeys.sameUrl(urlEntity.getOriginalUrl(), originalUrl) && isLive(urlEntity)))
+                        : claimed);
+    }
+
+    private Mono<Void> indexExpiry(List<UrlEntity> urlEntities, String operation) {
+        return Mono.defer(() -> expiryIndex.add(urlEntities))
+                .doOnNext(commands -> countCommands(operation, commands))
+                .then();
+    }
+
+    // While rebucketing, an entry may still sit in its previous bucket, so it is deleted from both
+    private static void addToBuckets(Map<String, List<String>> byKey, List<String> args, String key, String previousKey) {
+        byKey.computeIfAbsent(key, bucketKey -> new ArrayList<>()).addAll(args);
+        if (previousKey != null) {
+            byKey.computeIfAbsent(previousKey, bucketKey -> new ArrayList<>()).addAll(args);
+        }
+    }
+
+    private Mono<Long> deleteInBuckets(RedisScript<Long> script, Map<String, List<String>> argsByKey, String firstArg) {
+        return Flux.fromIterable(argsByKey.entrySet())
+                .flatMap(entry -> {
+                    List<String> args = new ArrayList<>(entry.getValue().size() + 1);
+                    if (firstArg != null) {
+                        args.add(firstArg);
+                    }
+                    args.addAll(entry.getValue());
+                    return stringRedisTemplate.execute(script, List.of(entry.getKey()), args).next();
+                })
+                .reduce(0L, Long::sum)
+                .transform(sent("deleteExpired", argsByKey.size()));
+    }
+
+    // until the short code migration has run, mappings may still be stored under the full domain-prefixed URL
+    private Mono<UrlEntity> findByLegacyShortenedUrl(HashReads reads, String shortCode, String operation) {
+        if (!migrationConfiguration.isLegacyLookupEnabled()) {
+            return Mono.empty();
+        }
+
+        return reads.mappings().get(REDIS_KEY, apiConfiguration.getDomainUrl() + shortCode)
+                .transform(sent(operation, 1));
+    }
+
+    private Mono<UrlEntity> findByLegacyOriginalUrl(HashReads reads, String originalUrl, String operation) {
+        if (!migrationConfiguration.isLegacyLookupEnabled()) {
+            return Mono.empty();
+        }
+
+        return reads.mappings().get(REDIS_KEY_LEGACY_INDEX, originalUrl)
+                .transform(sent(operation, 1));
+    }
+
+    private Flux<UrlEntity> findAllByLegacyOriginalUrl(List<String> originalUrls) {
+        if (!migrationConfiguration.isLegacyLookupEnabled() || originalUrls.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return reactiveHashOperations.multiGet(REDIS_KEY_LEGACY_INDEX, originalUrls)
+                .transform(sent("findAllByOriginalUrl", 1))
+                .flatMapIterable(urlEntities -> urlEntities.stream().filter(Objects::nonNull).toList());
+    }
+
+    // while rebucketing, a field missing from its current bucket may still be in its previous one
+    private <V> Mono<V> get(ReactiveHashOperations<String, String, V> operations, String key, String previousKey,
+                            String field, String operation) {
+        Mono<V> current = operations.get(key, field)
+                .transform(sent(operation, 1));
+        if (previousKey == null) {
+            return current;
+        }
+
+        return current.switchIfEmpty(Mono.defer(() -> operations.get(previousKey, field)
+                .transform(sent(operation, 1))));
+    }
+
+    private <V> Mono<Map<String, V>> multiGet(ReactiveHashOperations<String, String, V> operations, List<String> fields,
+                                              Function<String, String> keyOf, Function<String, String> previousKeyOf,
+                                              String operation) {
+        return multiGet(operations, fields, keyOf, operation)
+                .flatMap(found -> {
+                    List<String> missing = fields.stream()
+                            .filter(field -> !found.containsKey(field) && previousKeyOf.apply(field) != null)
+                            .toList();
+                    return multiGet(operations, missing, previousKeyOf, operation)
+                            .map(previous -> {
+                                Map<String, V> merged = new HashMap<>(found);
+                                merged.putAll(previous);
+                                return merged;
+                            });
+                });
+    }
+
+    // one HMGET per bucket key, HMGET answers with null for every field that is not in the hash
+    private <V> Mono<Map<String, V>> multiGet(ReactiveHashOperations<String, String, V> operations, List<String> fields,
+                                              Function<String, String> keyOf, String operation) {
+        if (fields.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        Map<String, List<String>> fieldsByKey = fields.stream()
+                .collect(Collectors.groupingBy(keyOf, LinkedHashMap::new, Collectors.toList()));
+
+        return Flux.fromIterable(fieldsByKey.entrySet())
+                .flatMap(entry -> operations.multiGet(entry.getKey(), entry.getValue())
+                        .transform(sent(operation, 1))
+                        .flatMapIterable(values -> {
+                            List<Map.Entry<String, V>> found = new ArrayList<>(values.size());
+                            for (int i = 0; i < values.size(); i++) {
+                                if (values.get(i) != null) {
+                                    found.add(Map.entry(entry.getValue().get(i), values.get(i)));
+                                }
+                            }
+                            return found;
+                        }))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    // one multi-field HSET per bucket key, all sent together on the shared connection
+    private Mono<Void> writeAll(List<UrlModel> urlModels, String operation) {
+        Map<String, Map<String, UrlEntity>> byPrimaryKey = new LinkedHashMap<>();
+        Map<String, Map<String, String>> byIndexKey = new LinkedHashMap<>();
+        for (UrlModel urlModel : urlModels) {
+            UrlEntity urlEntity = UrlEntity.fromModel(urlModel);
+            String digest = UrlIndexKeys.of(urlEntity.getOriginalUrl());
+            byPrimaryKey.computeIfAbsent(keyBuckets.primaryKey(urlEntity.getShortenedUrl()), key -> new LinkedHashMap<>())
+                    .put(urlEntity.getShortenedUrl(), urlEntity);
+            byIndexKey.computeIfAbsent(keyBuckets.indexKey(digest), key -> new LinkedHashMap<>())
+                    .put(digest, urlEntity.getShortenedUrl());
+        }
+
+        return Mono.when(putAll(reactiveHashOperations, byPrimaryKey), putAll(reverseIndexOperations, byIndexKey))
+                .transform(sent(operation, byPrimaryKey.size() + byIndexKey.size()))
+                .doOnSuccess(success -> recordWrites(byIndexKey))
+                .then(indexExpiry(byPrimaryKey.values().stream().flatMap(urlEntities -> urlEntities.values().stream()).toList(), operation));
+    }
+
+    // the index entries of the codes claimed by creates, one multi-field HSET per index bucket
+    private Mono<Void> writeReverseIndexBatch(List<UrlEntity> urlEntities, String operation) {
+        Map<String, Map<String, String>> byIndexKey = new LinkedHashMap<>();
+        for (UrlEntity urlEntity : urlEntities) {
+            String digest = UrlIndexKeys.of(urlEntity.getOriginalUrl());
+            byIndexKey.computeIfAbsent(keyBuckets.indexKey(digest), key -> new LinkedHashMap<>())
+                    .put(digest, urlEntity.getShortenedUrl());
+        }
+
+        return putAll(reverseIndexOperations, byIndexKey)
+                .transform(sent(operation, byIndexKey.size()))
+                .doOnSuccess(success -> recordWrites(byIndexKey));
+    }
+
+    private void recordWrites(Map<String, Map<String, String>> byIndexKey) {
+        byIndexKey.values().forEach(codes -> codes.forEach((digest, shortCode) -> recordWrite(shortCode, digest)));
+    }
+
+    private static <V> Mono<Void> putAll(ReactiveHashOperations<String, String, V> operations, Map<String, Map<String, V>> byKey) {
+        return Flux.fromIterable(byKey.entrySet())
+                .flatMap(entry -> operations.putAll(entry.getKey(), entry.getValue()))
+                .then();
+    }
+
+    // Expired mappings stay in Redis until swept, reads skip them meanwhile
+    private static boolean isLive(UrlEntity urlEntity) {
+        return urlEntity.getExpiresAt() == null || !urlEntity.hasExpiredAt(System.currentTimeMillis());
+    }
+
+    private static boolean isMappingOf(UrlEntity urlEntity, String originalUrl) {
+        if (UrlIndexKeys.sameUrl(urlEntity.getOriginalUrl(), originalUrl)) {
+            return true;
+        }
+        LOGGER.warn("Reverse index collision between {} and {}", originalUrl, urlEntity.getOriginalUrl());
+        return false;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Counts and times the commands of a repository operation from the moment they are sent until they are answered
+    private <T> Function<Mono<T>, Mono<T>> sent(String operation, int commands) {
+        return reply -> Mono.defer(() -> {
+            countCommands(operation, commands);
+            inFlightCommands.add(commands);
+            long sentAt = System.nanoTime();
+            return reply.doFinally(signal -> {
+                inFlightCommands.add(-commands);
+                redisStage.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+            });
+        });
+    }
+
+    // Number of commands sent to Redis per repository operation, to keep an eye on each operation's round trip budget
+    private void countCommands(String operation, int commands) {
+        commandCounters.computeIfAbsent(operation, name -> Counter.builder("shortener.redis.commands")
+                        .description("Redis commands issued by repository operations")
+                        .tag("operation", name)
+                        .register(meterRegistry))
+                .increment(commands);
+    }
+
+    private record HashReads(ReactiveHashOperations<String, String, UrlEntity> mappings,
+                             ReactiveHashOperations<String, String, String> reverseIndex) {
+    }
 }
@@ -0,0 +1,158 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.repository.segment.SegmentStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository keeping the mappings on local disk in a {@link SegmentStore}, for deployments without Redis.
+ * <p>
+ * Lookups only probe the off-heap indexes and read the memory-mapped records, so they complete on the calling event
+ * loop thread without a lock. Writes may start a new segment file, so they run on the bounded elastic scheduler, one
+ * at a time. The active segment is flushed to disk every sync period, which bounds what a crash of the machine can
+ * lose. Mostly dead segments are compacted and the indexes checkpointed every compaction period, and on shutdown.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.SEGMENTS_STORAGE)
+public class SegmentUrlRepository implements UrlRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentUrlRepository.class);
+
+    private final SegmentStore store;
+    private final SegmentStorageConfiguration segmentStorageConfiguration;
+    private final Counter compactedSegments;
+    private Disposable maintenance;
+
+    public SegmentUrlRepository(SegmentStorageConfiguration segmentStorageConfiguration, MeterRegistry meterRegistry) throws IOException {
+        this.segmentStorageConfiguration = segmentStorageConfiguration;
+        this.store = SegmentStore.open(segmentStorageConfiguration.getDirectory(),
+                Math.toIntExact(segmentStorageConfiguration.getSegmentSize().toBytes()));
+
+        this.compactedSegments = Counter.builder("shortener.segments.compacted")
+                .description("Segment files compacted away")
+                .register(meterRegistry);
+        Gauge.builder("shortener.segments.mappings", store, SegmentStore::mappings)
+                .description("URL mappings stored in the segment files")
+                .register(meterRegistry);
+        Gauge.builder("shortener.segments.files", store, SegmentStore::segmentCount)
+                .description("Segment files of the append-only log")
+                .register(meterRegistry);
+        Gauge.builder("shortener.segments.index.memory", store, SegmentStore::indexMemoryBytes)
+                .description("Off-heap memory of the short code and original URL indexes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        Disposable syncs = Flux.interval(segmentStorageConfiguration.getSyncPeriod())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(store::sync)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            LOGGER.warn("Segment sync failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+        Disposable compactions = Flux.interval(segmentStorageConfiguration.getCompactionPeriod())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(this::compact)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            LOGGER.warn("Segment compaction failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+
+        maintenance = Disposables.composite(syncs, compactions);
+    }
+
+    // The indexes are checkpointed on the way out, so the next start does not replay the log
+    @PreDestroy
+    public void stop() throws IOException {
+        if (maintenance != null) {
+            maintenance.dispose();
+        }
+        store.checkpoint();
+    }
+
+    @Override
+    public Mono<UrlModel> save(UrlModel urlModel) {
+        return Mono.fromCallable(() -> {
+                    store.put(urlModel.shortenedUrl(), urlModel.originalUrl());
+                    return urlModel;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Records have no room for an expiry, links that expire need the Redis storage and its sweeper
+    @Override
+    public Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes, Instant expiresAt) {
+        if (expiresAt != null) {
+            return Mono.error(new IllegalArgumentException("Links that expire are not supported by the segments storage"));
+        }
+        return Mono.fromCallable(() -> store.create(originalUrl, candidateShortCodes))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(shortCode -> new UrlModel(originalUrl, shortCode));
+    }
+
+    @Override
+    public Mono<UrlModel> findByShortenedUrl(String shortenedUrl) {
+        return Mono.fromSupplier(() -> store.findOriginalUrl(shortenedUrl))
+                .map(originalUrl -> new UrlModel(originalUrl, shortenedUrl));
+    }
+
+    @Override
+    public Mono<UrlModel> findByOriginalUrl(String originalUrl) {
+        return Mono.fromSupplier(() -> store.findShortCode(originalUrl))
+                .map(shortCode -> new UrlModel(originalUrl, shortCode));
+    }
+
+    @Override
+    public Flux<UrlModel> saveAll(List<UrlModel> urlModels) {
+        return Mono.fromCallable(() -> {
+                    for (UrlModel urlModel : urlModels) {
+                        store.put(urlModel.shortenedUrl(), urlModel.originalUrl());
+                    }
+                    return urlModels;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(savedUrlModels -> savedUrlModels);
+    }
+
+    @Override
+    public Flux<UrlModel> findAllByOriginalUrl(List<String> originalUrls) {
+        return Flux.fromIterable(originalUrls)
+                .concatMap(this::findByOriginalUrl);
+    }
+
+    private int compact() throws IOException {
+        int compacted = store.compact(segmentStorageConfiguration.getCompactionThreshold());
+        if (compacted > 0) {
+            compactedSegments.increment(compacted);
+            store.checkpoint();
+            LOGGER.info("Compacted {} segment files", compacted);
+        }
+        return compacted;
+    }
+}
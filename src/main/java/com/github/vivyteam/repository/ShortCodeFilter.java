@@ -0,0 +1,297 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.BloomFilterConfiguration;
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.SegmentStorageConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.service.utils.BloomFilter;
+import io.lettuce.core.event.connection.ConnectionActivatedEvent;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory Bloom filter of every existing short code, so lookups of codes that were never created are answered
+ * without a Redis round trip.
+ * <p>
+ * The filter is built from an HSCAN of the mappings on the primary at startup and rebuilt on every resync period,
+ * which also catches up with anything a node may have missed. New codes are added locally and published on a Redis
+ * pub/sub channel, one per line, for the other nodes. Until the first build has finished every code passes.
+ * <p>
+ * Pub/sub delivers at most once, so a code created on another node may be missing: its message is still on its way,
+ * or was lost while a connection was reestablished. Every reconnect therefore lets every code through until the
+ * filter is rebuilt, and up to {@code max-verifications-per-second} rejections are still checked in Redis. A code
+ * found there is added and the filter rebuilt, since it has missed a message.
+ */
+@Component
+@ConditionalOnProperty(name = SegmentStorageConfiguration.STORAGE_PROPERTY, havingValue = SegmentStorageConfiguration.REDIS_STORAGE,
+        matchIfMissing = true)
+public class ShortCodeFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShortCodeFilter.class);
+    static final String CREATED_CHANNEL = "shortener:url:created";
+    private static final String MESSAGE_SEPARATOR = "\n";
+
+    private final ReactiveHashOperations<String, String, UrlEntity> reactiveHashOperations;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final BloomFilterConfiguration bloomFilterConfiguration;
+    private final MigrationConfiguration migrationConfiguration;
+    private final UrlKeyBuckets keyBuckets;
+    private final Counter rejectedLookups;
+    private final Counter passedLookups;
+    private final Counter falsePositives;
+    private final Counter falseNegatives;
+    private final Counter publishFailures;
+    private final ClientResources clientResources;
+    private final Sinks.Many<Boolean> resyncRequests = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicBoolean resyncRequested = new AtomicBoolean();
+    private final AtomicLong verificationSecond = new AtomicLong();
+    private final AtomicInteger verificationsInSecond = new AtomicInteger();
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuilding;
+    private Disposable subscriptions;
+
+    // The full scan is sent to the primary, a lagging replica would leave out the codes it has not received yet
+    public ShortCodeFilter(ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate,
+                           ReactiveStringRedisTemplate stringRedisTemplate,
+                           BloomFilterConfiguration bloomFilterConfiguration,
+                           MigrationConfiguration migrationConfiguration,
+                           UrlKeyBuckets keyBuckets,
+                           ClientResources clientResources,
+                           MeterRegistry meterRegistry) {
+        this.reactiveHashOperations = reactiveRedisTemplate.opsForHash();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.clientResources = clientResources;
+        this.bloomFilterConfiguration = bloomFilterConfiguration;
+        this.migrationConfiguration = migrationConfiguration;
+        this.keyBuckets = keyBuckets;
+
+        this.rejectedLookups = lookupCounter(meterRegistry, "rejected");
+        this.passedLookups = lookupCounter(meterRegistry, "passed");
+        this.falsePositives = Counter.builder("shortener.bloom-filter.false-positives")
+                .description("Lookups the filter let through for codes that do not exist")
+                .register(meterRegistry);
+        this.falseNegatives = Counter.builder("shortener.bloom-filter.false-negatives")
+                .description("Rejected codes found in Redis, created on another node without the filter hearing of it")
+                .register(meterRegistry);
+        this.publishFailures = Counter.builder("shortener.bloom-filter.publish-failures")
+                .description("New codes that could not be published to the other nodes")
+                .register(meterRegistry);
+        Gauge.builder("shortener.bloom-filter.memory", this, ShortCodeFilter::memoryBytes)
+                .description("Memory held by the short code filter")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        Gauge.builder("shortener.bloom-filter.expected-false-positive-rate", this, ShortCodeFilter::expectedFalsePositiveRate)
+                .description("False positive rate expected from the bits set in the short code filter")
+                .register(meterRegistry);
+        Gauge.builder("shortener.bloom-filter.approximate-elements", this, ShortCodeFilter::approximateElementCount)
+                .description("Short codes in the filter, estimated from the bits set")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!bloomFilterConfiguration.isEnabled()) {
+            return;
+        }
+
+        // If the subscription drops we may have missed codes, so the filter lets everything through until rebuilt
+        Disposable listener = stringRedisTemplate.listenToChannel(CREATED_CHANNEL)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnNext(message -> addLocally(List.of(message.split(MESSAGE_SEPARATOR))))
+                .doOnError(e -> invalidate("subscription failed: " + e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+
+        // Lettuce resubscribes on its own after a reconnect, the messages sent meanwhile are gone
+        Disposable reconnects = clientResources.eventBus().get()
+                .filter(ConnectionActivatedEvent.class::isInstance)
+                .filter(event -> filter != null)
+                .subscribe(event -> invalidate("connection reestablished"));
+
+        Flux<Boolean> resyncTicks = Flux.interval(Duration.ZERO, bloomFilterConfiguration.getResyncPeriod())
+                .onBackpressureDrop()
+                .map(tick -> Boolean.TRUE);
+        Disposable resync = Flux.merge(resyncTicks, resyncRequests.asFlux())
+                .doOnNext(request -> resyncRequested.set(false))
+                .concatMap(request -> resync().onErrorResume(e -> {
+                    LOGGER.warn("Short code filter resync failed: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+
+        subscriptions = Disposables.composite(listener, reconnects, resync);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscriptions != null) {
+            subscriptions.dispose();
+        }
+    }
+
+    /**
+     * @return false when the code definitely does not exist, true when it may exist or the filter is not built yet
+     */
+    public boolean mightContain(String shortCode) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+
+        boolean mightContain = current.mightContain(shortCode);
+        (mightContain ? passedLookups : rejectedLookups).increment();
+        return mightContain;
+    }
+
+    public void recordFalsePositive() {
+        if (filter != null) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * @return true when a rejected code should still be looked up in Redis, within the verifications allowed per second
+     */
+    public boolean tryVerifyRejection() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = verificationSecond.get();
+        if (current != second && verificationSecond.compareAndSet(current, second)) {
+            verificationsInSecond.set(0);
+        }
+        return verificationsInSecond.incrementAndGet() <= bloomFilterConfiguration.getMaxVerificationsPerSecond();
+    }
+
+    /**
+     * Adds a code the filter rejected but Redis holds, and rebuilds the filter, which has missed at least its message.
+     */
+    public void recordFalseNegative(String shortCode) {
+        falseNegatives.increment();
+        addLocally(List.of(shortCode));
+        requestResync();
+    }
+
+    /**
+     * Adds freshly written codes to this node's filter and publishes them for the other nodes. The codes are already
+     * stored, so a failed publish is only logged: the other nodes find them by verifying their rejections in Redis.
+     */
+    public Mono<Long> add(List<String> shortCodes) {
+        if (!bloomFilterConfiguration.isEnabled() || shortCodes.isEmpty()) {
+            return Mono.empty();
+        }
+
+        addLocally(shortCodes);
+        return stringRedisTemplate.convertAndSend(CREATED_CHANNEL, String.join(MESSAGE_SEPARATOR, shortCodes))
+                .onErrorResume(e -> {
+                    publishFailures.increment();
+                    LOGGER.warn("Short code filter could not publish {} new codes: {}", shortCodes.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Codes may have been missed, so the filter lets everything through until rebuilt
+    private void invalidate(String reason) {
+        LOGGER.warn("Short code filter {}, disabling the filter until resynced", reason);
+        filter = null;
+        requestResync();
+    }
+
+    // A single rebuild is queued however many times it is asked for before it starts
+    private void requestResync() {
+        if (resyncRequested.compareAndSet(false, true)) {
+            resyncRequests.tryEmitNext(Boolean.TRUE);
+        }
+    }
+
+    private void addLocally(List<String> shortCodes) {
+        // The filter being rebuilt is read first: once it is gone, it has already replaced the current one
+        BloomFilter next = rebuilding;
+        BloomFilter current = filter;
+        for (String shortCode : shortCodes) {
+            if (next != null) {
+                next.put(shortCode);
+            }
+            if (current != null) {
+                current.put(shortCode);
+            }
+        }
+    }
+
+    private Mono<Long> resync() {
+        BloomFilter next = new BloomFilter(bloomFilterConfiguration.getExpectedInsertions(), bloomFilterConfiguration.getFalsePositiveRate());
+        rebuilding = next;
+
+        return scanShortCodes()
+                .doOnNext(next::put)
+                .count()
+                .doOnNext(count -> {
+                    filter = next;
+                    LOGGER.info("Short code filter synced with {} codes", count);
+                })
+                .doFinally(signal -> rebuilding = null);
+    }
+
+    private Flux<String> scanShortCodes() {
+        Set<String> keys = new LinkedHashSet<>(keyBuckets.primaryKeys());
+        if (keyBuckets.isRebucketing()) {
+            keys.addAll(keyBuckets.previousPrimaryKeys());
+        }
+        if (migrationConfiguration.isLegacyLookupEnabled()) {
+            keys.add(RedisUrlRepository.REDIS_KEY);
+        }
+
+        ScanOptions scanOptions = ScanOptions.scanOptions().count(migrationConfiguration.getBatchSize()).build();
+        return Flux.fromIterable(keys)
+                .concatMap(key -> reactiveHashOperations.scan(key, scanOptions), 1)
+                .map(entry -> UrlEntity.toShortCode(entry.getKey()));
+    }
+
+    private double memoryBytes() {
+        BloomFilter current = filter;
+        return current == null ? 0 : current.bitSize() / Byte.SIZE;
+    }
+
+    private double expectedFalsePositiveRate() {
+        BloomFilter current = filter;
+        return current == null ? 0 : current.expectedFalsePositiveRate();
+    }
+
+    private double approximateElementCount() {
+        BloomFilter current = filter;
+        return current == null ? 0 : current.approximateElementCount();
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("shortener.bloom-filter.lookups")
+                .description("Short code lookups checked against the filter")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.service.utils.ShortCodeHasher;
+
+import java.util.Locale;
+
+/**
+ * Fields of the reverse index: a fixed-width digest of the normalized original URL, whatever the URL length.
+ * <p>
+ * Two URLs only differing in the case of their scheme or authority share the same field. Digest collisions are
+ * resolved by comparing the normalized URL of the primary record the field points to.
+ */
+public final class UrlIndexKeys {
+
+    private static final int DIGEST_BYTES = 16;
+    private static final ShortCodeHasher HASHER = new ShortCodeHasher();
+
+    private UrlIndexKeys() {
+    }
+
+    public static String of(String originalUrl) {
+        return HASHER.fingerprint(normalize(originalUrl), DIGEST_BYTES);
+    }
+
+    public static boolean sameUrl(String originalUrl, String otherUrl) {
+        return normalize(originalUrl).equals(normalize(otherUrl));
+    }
+
+    /**
+     * Lower-cases the scheme and authority of a URL and keeps everything after them untouched.
+     */
+    public static String normalize(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return url;
+        }
+
+        int authorityEnd = schemeEnd + 3;
+        while (authorityEnd < url.length() && "/?#".indexOf(url.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+
+        String prefix = url.substring(0, authorityEnd);
+        String normalizedPrefix = prefix.toLowerCase(Locale.ROOT);
+        return normalizedPrefix.equals(prefix) ? url : normalizedPrefix + url.substring(authorityEnd);
+    }
+}
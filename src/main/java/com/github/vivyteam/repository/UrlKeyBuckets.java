@@ -0,0 +1,143 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.ShardingConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads the primary hash and the reverse index over a fixed number of bucket keys, so mappings are shared by the
+ * shards of a Redis Cluster instead of living in one key pinned to a single slot.
+ * <p>
+ * Primary buckets are chosen from the short code and index buckets from the original URL digest. Each bucket key
+ * carries its number as hash tag, {@code shortener:url:{17}} and {@code shortener:url:index:{17}}. Click counts use
+ * the bucket of their code, {@code shortener:url:clicks:{17}}, so they share the slot of the mapping. A single bucket
+ * keeps the unbucketed key names. While the data is being rebucketed, the layout of the previous bucket count is
+ * still readable through the {@code previous} keys. A previous count of zero, the default, means the layout is not
+ * changing.
+ */
+@Component
+public class UrlKeyBuckets {
+
+    private static final String MOVED_SUFFIX = ":moved";
+
+    private final int buckets;
+    private final int previousBuckets;
+
+    @Autowired
+    public UrlKeyBuckets(ShardingConfiguration shardingConfiguration, MigrationConfiguration migrationConfiguration) {
+        this(shardingConfiguration.getBuckets(), migrationConfiguration.getPreviousBuckets());
+    }
+
+    public UrlKeyBuckets(int buckets, int previousBuckets) {
+        if (buckets < 1 || previousBuckets < 0) {
+            throw new IllegalArgumentException("Bucket counts must be positive: " + buckets + ", " + previousBuckets);
+        }
+        this.buckets = buckets;
+        this.previousBuckets = previousBuckets == 0 ? buckets : previousBuckets;
+    }
+
+    public String primaryKey(String shortCode) {
+        return key(RedisUrlRepository.REDIS_KEY, shortCode, buckets);
+    }
+
+    public String indexKey(String originalUrlDigest) {
+        return key(RedisUrlRepository.REDIS_KEY_REVERSE_INDEX, originalUrlDigest, buckets);
+    }
+
+    public String clicksKey(String shortCode) {
+        return key(ClickCounter.REDIS_KEY, shortCode, buckets);
+    }
+
+    /**
+     * @return the primary key of the code in the previous layout, or null when the layout has not changed
+     */
+    public String previousPrimaryKey(String shortCode) {
+        return isRebucketing() ? key(RedisUrlRepository.REDIS_KEY, shortCode, previousBuckets) : null;
+    }
+
+    /**
+     * @return the index key of the digest in the previous layout, or null when the layout has not changed
+     */
+    public String previousIndexKey(String originalUrlDigest) {
+        return isRebucketing() ? key(RedisUrlRepository.REDIS_KEY_REVERSE_INDEX, originalUrlDigest, previousBuckets) : null;
+    }
+
+    /**
+     * @return the click counts key of the code in the previous layout, or null when the layout has not changed
+     */
+    public String previousClicksKey(String shortCode) {
+        return isRebucketing() ? key(ClickCounter.REDIS_KEY, shortCode, previousBuckets) : null;
+    }
+
+    /**
+     * @return the key marking the click counts already moved to {@link #clicksKey(String)} by a rebucketing, in the
+     * same slot as the counts
+     */
+    public String movedClicksKey(String shortCode) {
+        return buckets == 1 ? "{" + ClickCounter.REDIS_KEY + "}" + MOVED_SUFFIX
+                : bucketKey(ClickCounter.REDIS_KEY + MOVED_SUFFIX, bucketOf(shortCode, buckets));
+    }
+
+    public List<String> movedClicksKeys() {
+        return buckets == 1 ? List.of("{" + ClickCounter.REDIS_KEY + "}" + MOVED_SUFFIX)
+                : keys(ClickCounter.REDIS_KEY + MOVED_SUFFIX, buckets);
+    }
+
+    public List<String> primaryKeys() {
+        return keys(RedisUrlRepository.REDIS_KEY, buckets);
+    }
+
+    public List<String> previousPrimaryKeys() {
+        return keys(RedisUrlRepository.REDIS_KEY, previousBuckets);
+    }
+
+    public List<String> previousIndexKeys() {
+        return keys(RedisUrlRepository.REDIS_KEY_REVERSE_INDEX, previousBuckets);
+    }
+
+    public List<String> previousClicksKeys() {
+        return keys(ClickCounter.REDIS_KEY, previousBuckets);
+    }
+
+    public boolean isRebucketing() {
+        return buckets != previousBuckets;
+    }
+
+    /**
+     * Maps a value to a bucket. {@link String#hashCode()} is specified by the language, so every node agrees on the
+     * bucket, and the murmur3 finalizer spreads the codes that only differ in their last characters.
+     */
+    public static int bucketOf(String value, int buckets) {
+        int hash = value.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, buckets);
+    }
+
+    private static String key(String name, String value, int buckets) {
+        return buckets == 1 ? name : bucketKey(name, bucketOf(value, buckets));
+    }
+
+    private static List<String> keys(String name, int buckets) {
+        if (buckets == 1) {
+            return List.of(name);
+        }
+
+        List<String> keys = new ArrayList<>(buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            keys.add(bucketKey(name, bucket));
+        }
+        return keys;
+    }
+
+    private static String bucketKey(String name, int bucket) {
+        return name + ":{" + bucket + "}";
+    }
+}
@@ -1,13 +1,49 @@
 package com.github.vivyteam.repository;
 
 import com.github.vivyteam.model.UrlModel;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of URL mappings. Mappings are keyed by the bare short code: the {@code shortenedUrl} of every
+ * {@link UrlModel} passed to or returned by a repository holds the code without any domain.
+ */
 public interface UrlRepository {
 
     Mono<UrlModel> save(UrlModel urlModel);
 
+    /**
+     * Atomically stores the original URL under the first candidate code that is free, or returns the mapping the
+     * URL already has. Completes empty when every candidate belongs to another URL.
+     */
+    default Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes) {
+        return create(originalUrl, candidateShortCodes, null);
+    }
+
+    /**
+     * Same as {@link #create(String, List)} for a link that stops resolving at {@code expiresAt}, or never when null.
+     * A URL that already has a live mapping keeps it, along with its expiry.
+     */
+    Mono<UrlModel> create(String originalUrl, List<String> candidateShortCodes, Instant expiresAt);
+
     Mono<UrlModel> findByShortenedUrl(String shortenedUrl);
 
     Mono<UrlModel> findByOriginalUrl(String originalUrl);
+
+    Flux<UrlModel> saveAll(List<UrlModel> urlModels);
+
+    /**
+     * Creates the mappings of a batch of URLs, each as {@link #create(String, List)} would with its own candidates.
+     * URLs whose candidates all belong to other URLs are left out.
+     */
+    default Flux<UrlModel> createAll(Map<String, List<String>> candidateShortCodes) {
+        return Flux.fromIterable(candidateShortCodes.entrySet())
+                .concatMap(entry -> create(entry.getKey(), entry.getValue()));
+    }
+
+    Flux<UrlModel> findAllByOriginalUrl(List<String> originalUrls);
 }
@@ -0,0 +1,154 @@
+package com.github.vivyteam.repository.codec;
+
+import com.github.vivyteam.model.UrlEntity;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Redis value serializer for {@link UrlEntity} with a compact, versioned binary layout.
+ * <p>
+ * Version 1 layout: {@code [0x01][varint length][originalUrl UTF-8][varint length][shortenedUrl UTF-8]}.
+ * Links that expire are written as version 2, {@code [0x02][8 bytes big-endian expiresAt]} followed by the same fields,
+ * the expiry sitting at a fixed offset so Redis scripts can read it.
+ * Values starting with {@code '{'} are entries written by the previous Jackson serializer and are still read, so
+ * existing keys keep working while they are rewritten. The format used for writes is configurable.
+ */
+public class UrlEntityRedisSerializer implements RedisSerializer<UrlEntity> {
+
+    public enum Format {
+        BINARY,
+        JSON
+    }
+
+    static final byte VERSION_1 = 1;
+    static final byte VERSION_2 = 2;
+    private static final byte JSON_OBJECT_START = '{';
+
+    private final Format writeFormat;
+    private final Jackson2JsonRedisSerializer<UrlEntity> jsonSerializer = new Jackson2JsonRedisSerializer<>(UrlEntity.class);
+
+    public UrlEntityRedisSerializer(Format writeFormat) {
+        this.writeFormat = writeFormat;
+    }
+
+    @Override
+    public byte[] serialize(UrlEntity urlEntity) throws SerializationException {
+        if (urlEntity == null) {
+            return null;
+        }
+        if (writeFormat == Format.JSON) {
+            return jsonSerializer.serialize(urlEntity);
+        }
+
+        byte[] originalUrl = utf8(urlEntity.getOriginalUrl());
+        byte[] shortenedUrl = utf8(urlEntity.getShortenedUrl());
+        Long expiresAt = urlEntity.getExpiresAt();
+        int expiryBytes = expiresAt == null ? 0 : Long.BYTES;
+        byte[] bytes = new byte[1 + expiryBytes + varIntSize(originalUrl.length) + originalUrl.length
+                + varIntSize(shortenedUrl.length) + shortenedUrl.length];
+
+        int position = 0;
+        if (expiresAt == null) {
+            bytes[position++] = VERSION_1;
+        } else {
+            bytes[position++] = VERSION_2;
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                bytes[position++] = (byte) (expiresAt >>> shift);
+            }
+        }
+        position = writeField(bytes, position, originalUrl);
+        writeField(bytes, position, shortenedUrl);
+        return bytes;
+    }
+
+    @Override
+    public UrlEntity deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JSON_OBJECT_START) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != VERSION_1 && bytes[0] != VERSION_2) {
+            throw new SerializationException("Unknown UrlEntity encoding version: " + bytes[0]);
+        }
+
+        try {
+            Reader reader = new Reader(bytes, 1);
+            Long expiresAt = bytes[0] == VERSION_2 ? reader.readLong() : null;
+            String originalUrl = reader.readString();
+            String shortenedUrl = reader.readString();
+            return new UrlEntity(originalUrl, shortenedUrl, expiresAt);
+        } catch (IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated UrlEntity value of " + bytes.length + " bytes", e);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int writeField(byte[] bytes, int position, byte[] field) {
+        int length = field.length;
+        int offset = position;
+        while ((length & ~0x7F) != 0) {
+            bytes[offset++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        bytes[offset++] = (byte) length;
+        System.arraycopy(field, 0, bytes, offset, field.length);
+        return offset + field.length;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        int remaining = value >>> 7;
+        while (remaining != 0) {
+            size++;
+            remaining >>>= 7;
+        }
+        return size;
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private long readLong() {
+            if (bytes.length - position < Long.BYTES) {
+                throw new IndexOutOfBoundsException("Expiry exceeds the value size");
+            }
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << Byte.SIZE) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private String readString() {
+            int length = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = bytes[position++];
+                length |= (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+
+            if (length > bytes.length - position) {
+                throw new IndexOutOfBoundsException("Field length " + length + " exceeds the value size");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.vivyteam.repository.mirror;
+
+import com.github.vivyteam.repository.segment.OffHeapIndex;
+import com.github.vivyteam.service.utils.Base62Encoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Short code to original URL mappings held out of the heap: the records are appended to direct buffer chunks, and
+ * found through an {@link OffHeapIndex} keyed by the short code decoded as a 64-bit number.
+ * <p>
+ * A record is the length of the short code, the short code in ASCII, the expiry in epoch milliseconds, the length of
+ * the original URL and the original URL in UTF-8. Decoding drops leading zero digits, so a slot only matches when its record holds the exact code.
+ * Replacing a mapping appends a new record and leaves the previous one behind, it is only reclaimed when the
+ * mappings are rebuilt from scratch.
+ * <p>
+ * A single writer appends while any number of readers look mappings up without locking: a record is written before
+ * the index publishes its location, and the chunk array is replaced in one volatile write before that.
+ */
+public class OffHeapMappings {
+
+    private static final int MAX_SHORT_CODE_LENGTH = 255;
+    public static final long NEVER = Long.MAX_VALUE;
+    private static final Base62Encoder BASE62_ENCODER = new Base62Encoder();
+
+    private final int chunkSize;
+    private final OffHeapIndex index;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer active;
+    private int writePosition;
+    private long allocatedBytes;
+
+    /**
+     * @param expectedSize the number of mappings to size the index for, it grows past it anyway
+     * @param chunkSize    the size of the buffers records are appended to, larger records get a buffer of their own
+     */
+    public OffHeapMappings(int expectedSize, int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.index = new OffHeapIndex(expectedSize);
+    }
+
+    /**
+     * Only base62 codes are keyed by their decoded value, and the API never creates any other.
+     */
+    public static boolean isMirrorable(String shortCode) {
+        return !shortCode.isEmpty() && shortCode.length() <= MAX_SHORT_CODE_LENGTH && Base62Encoder.isBase62(shortCode);
+    }
+
+    /**
+     * @param now the current time in epoch milliseconds
+     * @return the original URL of a mirrorable short code, or null when unknown or expired by {@code now}
+     */
+    public String get(String shortCode, long now) {
+        long location = index.get(keyOf(shortCode), candidate -> shortCodeEquals(candidate, shortCode));
+        return location == 0 || expiresAt(location) <= now ? null : originalUrl(location);
+    }
+
+    public boolean put(String shortCode, String originalUrl) {
+        return put(shortCode, originalUrl, NEVER);
+    }
+
+    /**
+     * Stores a mapping, replacing the one the short code may have. Only called by the writer.
+     *
+     * @param expiresAt when the mapping expires in epoch milliseconds, {@link #NEVER} for a link that never does
+     * @return whether the mapping changed
+     */
+    public synchronized boolean put(String shortCode, String originalUrl, long expiresAt) {
+        long key = keyOf(shortCode);
+        long current = index.get(key, candidate -> shortCodeEquals(candidate, shortCode));
+        if (current != 0 && expiresAt == expiresAt(current) && originalUrl.equals(originalUrl(current))) {
+            return false;
+        }
+        index.put(key, append(shortCode, originalUrl, expiresAt), candidate -> shortCodeEquals(candidate, shortCode));
+        return true;
+    }
+
+    public boolean putIfAbsent(String shortCode, String originalUrl) {
+        return putIfAbsent(shortCode, originalUrl, NEVER);
+    }
+
+    /**
+     * Stores a mapping unless the short code already has one. Only called by the writer.
+     *
+     * @return whether the mapping was added
+     */
+    public synchronized boolean putIfAbsent(String shortCode, String originalUrl, long expiresAt) {
+        long key = keyOf(shortCode);
+        if (index.get(key, candidate -> shortCodeEquals(candidate, shortCode)) != 0) {
+            return false;
+        }
+        index.put(key, append(shortCode, originalUrl, expiresAt), candidate -> shortCodeEquals(candidate, shortCode));
+        return true;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the direct memory held by the index and the record chunks
+     */
+    public synchronized long memoryBytes() {
+        return index.memoryBytes() + allocatedBytes;
+    }
+
+    private long append(String shortCode, String originalUrl, long expiresAt) {
+        byte[] url = originalUrl.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = 1 + shortCode.length() + Long.BYTES + Integer.BYTES + url.length;
+        if (active == null || writePosition + recordBytes > active.capacity()) {
+            addChunk(Math.max(chunkSize, recordBytes));
+        }
+
+        int offset = writePosition;
+        active.put(offset, (byte) shortCode.length());
+        for (int i = 0; i < shortCode.length(); i++) {
+            active.put(offset + 1 + i, (byte) shortCode.charAt(i));
+        }
+        active.putLong(offset + 1 + shortCode.length(), expiresAt);
+        active.putInt(offset + 1 + shortCode.length() + Long.BYTES, url.length);
+        active.put(offset + 1 + shortCode.length() + Long.BYTES + Integer.BYTES, url);
+        writePosition = offset + recordBytes;
+        return (long) chunks.length << 32 | offset;
+    }
+
+    private void addChunk(int size) {
+        ByteBuffer[] current = chunks;
+        ByteBuffer[] grown = Arrays.copyOf(current, current.length + 1);
+        active = ByteBuffer.allocateDirect(size);
+        grown[current.length] = active;
+        writePosition = 0;
+        allocatedBytes += size;
+        chunks = grown;
+    }
+
+    private boolean shortCodeEquals(long location, String shortCode) {
+        ByteBuffer chunk = chunkOf(location);
+        int offset = (int) location;
+        int length = chunk.get(offset) & 0xFF;
+        if (length != shortCode.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(offset + 1 + i) != shortCode.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long expiresAt(long location) {
+        ByteBuffer chunk = chunkOf(location);
+        return chunk.getLong((int) location + 1 + (chunk.get((int) location) & 0xFF));
+    }
+
+    private String originalUrl(long location) {
+        ByteBuffer chunk = chunkOf(location);
+        int urlLengthOffset = (int) location + 1 + (chunk.get((int) location) & 0xFF) + Long.BYTES;
+        byte[] url = new byte[chunk.getInt(urlLengthOffset)];
+        chunk.get(urlLengthOffset + Integer.BYTES, url);
+        return new String(url, StandardCharsets.UTF_8);
+    }
+
+    // Locations count chunks from one, so they never collide with the empty and removed slots of the index
+    private ByteBuffer chunkOf(long location) {
+        return chunks[(int) (location >>> 32) - 1];
+    }
+
+    private static long keyOf(String shortCode) {
+        return OffHeapIndex.mix(BASE62_ENCODER.decode(shortCode));
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.vivyteam.repository.segment;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Open-addressing hash table from a 64-bit key hash to a record location, stored in a direct buffer out of the heap.
+ * <p>
+ * Each slot holds the key hash and the location of the record holding the key, 16 bytes in all, and is probed
+ * linearly. Keys themselves are not stored: a slot matches when its hash is equal and the record it points to holds
+ * the key, as checked by the caller. Location {@code 0} marks an empty slot and {@link #TOMBSTONE} a removed one.
+ * <p>
+ * A single writer mutates the table while any number of readers probe it without locking. The location of a slot is
+ * published with release semantics after its hash, and the record it points to has been written before that, so a
+ * reader that acquires a location sees both. Growing the table builds a new buffer that replaces the current one in
+ * one volatile write.
+ */
+public class OffHeapIndex {
+
+    public static final long TOMBSTONE = 1L;
+    static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0L;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final double MAX_LOAD = 0.7;
+
+    private volatile ByteBuffer table;
+    private int capacity;
+    private int size;
+    private int used;
+
+    /**
+     * @param expectedSize the number of keys to size the table for, it grows past it anyway
+     */
+    public OffHeapIndex(int expectedSize) {
+        this.capacity = tableCapacity(expectedSize);
+        this.table = allocateSlots(capacity);
+    }
+
+    private OffHeapIndex(ByteBuffer table, int capacity, int size, int used) {
+        this.table = table;
+        this.capacity = capacity;
+        this.size = size;
+        this.used = used;
+    }
+
+    /**
+     * @param hash    the hash of the key
+     * @param matches whether the record at a location holds the key
+     * @return the location of the key, or 0 when absent
+     */
+    public long get(long hash, LongPredicate matches) {
+        ByteBuffer slots = table;
+        int mask = slots.capacity() / SLOT_BYTES - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long location = (long) LONGS.getAcquire(slots, slot * SLOT_BYTES + 8);
+            if (location == EMPTY) {
+                return EMPTY;
+            }
+            if (location != TOMBSTONE && (long) LONGS.get(slots, slot * SLOT_BYTES) == hash && matches.test(location)) {
+                return location;
+            }
+        }
+    }
+
+    /**
+     * Points the key at a new location, adding it when absent. Only called by the writer.
+     *
+     * @return the previous location of the key, or 0 when it was added
+     */
+    public long put(long hash, long location, LongPredicate matches) {
+        if (used + 1 > capacity * MAX_LOAD) {
+            resize(size + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+        }
+
+        ByteBuffer slots = table;
+        int mask = capacity - 1;
+        int free = -1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long current = (long) LONGS.get(slots, slot * SLOT_BYTES + 8);
+            if (current == EMPTY) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                LONGS.set(slots, free * SLOT_BYTES, hash);
+                LONGS.setRelease(slots, free * SLOT_BYTES + 8, location);
+                size++;
+                return EMPTY;
+            }
+            if (current == TOMBSTONE) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if ((long) LONGS.get(slots, slot * SLOT_BYTES) == hash && matches.test(current)) {
+                LONGS.setRelease(slots, slot * SLOT_BYTES + 8, location);
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Moves the slot pointing at a location to another one, as records are rewritten. Only called by the writer.
+     *
+     * @return whether a slot pointed at the expected location
+     */
+    public boolean replace(long hash, long expected, long location) {
+        int slot = find(hash, expected);
+        if (slot < 0) {
+            return false;
+        }
+        LONGS.setRelease(table, slot * SLOT_BYTES + 8, location);
+        return true;
+    }
+
+    /**
+     * Removes the slot pointing at a location. Only called by the writer.
+     *
+     * @return whether a slot pointed at the location
+     */
+    public boolean remove(long hash, long location) {
+        int slot = find(hash, location);
+        if (slot < 0) {
+            return false;
+        }
+        LONGS.setRelease(table, slot * SLOT_BYTES + 8, TOMBSTONE);
+        size--;
+        return true;
+    }
+
+    /**
+     * Calls the consumer with the hash and location of every key, in no particular order. Only called by the writer.
+     */
+    public void forEach(SlotConsumer consumer) {
+        ByteBuffer slots = table;
+        for (int slot = 0; slot < capacity; slot++) {
+            long location = (long) LONGS.get(slots, slot * SLOT_BYTES + 8);
+            if (location != EMPTY && location != TOMBSTONE) {
+                consumer.accept((long) LONGS.get(slots, slot * SLOT_BYTES), location);
+            }
+        }
+    }
+
+    /**
+     * Writes the table as is, in native byte order, for a checkpoint. Only called by the writer.
+     */
+    public void writeTo(FileChannel channel, CRC32 checksum) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(capacity).putInt(size).flip();
+        checksum.update(header.duplicate());
+        writeFully(channel, header);
+
+        ByteBuffer slots = table.duplicate().clear();
+        checksum.update(slots.duplicate());
+        writeFully(channel, slots);
+    }
+
+    /**
+     * Reads back a table written by {@link #writeTo}, on a machine of the same byte order.
+     */
+    public static OffHeapIndex readFrom(FileChannel channel, CRC32 checksum) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(8));
+        checksum.update(header.duplicate());
+        int capacity = header.getInt();
+        int size = header.getInt();
+        if (capacity < 16 || Integer.bitCount(capacity) != 1 || capacity > Integer.MAX_VALUE / SLOT_BYTES || size < 0 || size > capacity) {
+            throw new IOException("Invalid index header, capacity " + capacity + " and size " + size);
+        }
+
+        ByteBuffer slots = readFully(channel, allocateSlots(capacity));
+        checksum.update(slots.duplicate());
+        int used = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if ((long) LONGS.get(slots, slot * SLOT_BYTES + 8) != EMPTY) {
+                used++;
+            }
+        }
+        return new OffHeapIndex(slots, capacity, size, used);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    private int find(long hash, long location) {
+        ByteBuffer slots = table;
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long current = (long) LONGS.get(slots, slot * SLOT_BYTES + 8);
+            if (current == EMPTY) {
+                return -1;
+            }
+            if (current == location && (long) LONGS.get(slots, slot * SLOT_BYTES) == hash) {
+                return slot;
+            }
+        }
+    }
+
+    // Rebuilds the table without its tombstones, growing it when the keys alone fill it up
+    private void resize(int newCapacity) {
+        ByteBuffer resized = allocateSlots(newCapacity);
+        int mask = newCapacity - 1;
+        forEach((hash, location) -> {
+            int slot = (int) hash & mask;
+            while ((long) LONGS.get(resized, slot * SLOT_BYTES + 8) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            LONGS.set(resized, slot * SLOT_BYTES, hash);
+            LONGS.set(resized, slot * SLOT_BYTES + 8, location);
+        });
+        capacity = newCapacity;
+        used = size;
+        table = resized;
+    }
+
+    // Acquire and release accesses need slots aligned on 8 bytes, which direct buffers do not promise
+    private static ByteBuffer allocateSlots(int capacity) {
+        int bytes = capacity * SLOT_BYTES;
+        return ByteBuffer.allocateDirect(bytes + 8).alignedSlice(8).limit(bytes).slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Index ended after " + buffer.position() + " bytes");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int tableCapacity(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(16, Math.ceil(expectedSize / MAX_LOAD)));
+        return capacity < expectedSize / MAX_LOAD ? capacity * 2 : capacity;
+    }
+
+    /**
+     * 64-bit hash of a key, FNV-1a over its characters finished with the Murmur3 mixer so the low bits used to pick
+     * a slot depend on every character.
+     */
+    public static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Murmur3 64-bit finalizer, spreads every bit of a key over the low bits of its hash.
+     */
+    public static long mix(long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @FunctionalInterface
+    public interface SlotConsumer {
+        void accept(long hash, long location);
+    }
+}
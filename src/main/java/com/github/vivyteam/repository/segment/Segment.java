@@ -0,0 +1,176 @@
+package com.github.vivyteam.repository.segment;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the append-only log, mapped in memory as a whole.
+ * <p>
+ * A record is its payload length and CRC-32, followed by the payload: the length of the short code, the short code
+ * in ASCII and the original URL in UTF-8. The file is created at its full size, so a zero length marks the end of
+ * the records; a record whose checksum does not match was torn by a crash and ends them too.
+ * <p>
+ * Records are only appended by the writer, and read by anyone through absolute reads of the mapping. The mapping is
+ * never unmapped explicitly, so a reader still holding a segment that was compacted away keeps reading valid memory.
+ */
+final class Segment {
+
+    static final int HEADER_BYTES = 8;
+
+    private final int id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+
+    private Segment(int id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    static Segment open(Path directory, int id, int size) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // an existing segment keeps the size it was created with
+            long mappedSize = Math.max(channel.size(), size);
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        }
+    }
+
+    static String fileName(int id) {
+        return String.format("segment-%010d.log", id);
+    }
+
+    static int idOf(Path path) {
+        String fileName = path.getFileName().toString();
+        return Integer.parseInt(fileName.substring("segment-".length(), fileName.length() - ".log".length()));
+    }
+
+    int id() {
+        return id;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * @return the offset of the appended record, or -1 when it does not fit in the segment
+     */
+    int append(byte[] shortCode, byte[] originalUrl) {
+        int payloadLength = 1 + shortCode.length + originalUrl.length;
+        int offset = writePosition;
+        if (offset + HEADER_BYTES + payloadLength > buffer.capacity()) {
+            return -1;
+        }
+
+        int payload = offset + HEADER_BYTES;
+        buffer.put(payload, (byte) shortCode.length);
+        buffer.put(payload + 1, shortCode);
+        buffer.put(payload + 1 + shortCode.length, originalUrl);
+        buffer.putInt(offset + 4, (int) checksum(payload, payloadLength));
+        buffer.putInt(offset, payloadLength);
+        writePosition = payload + payloadLength;
+        return offset;
+    }
+
+    /**
+     * Walks the records from the given offset, and positions the next append after the last valid one.
+     */
+    void recover(int from, RecordConsumer consumer) {
+        int offset = from;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int payloadLength = buffer.getInt(offset);
+            if (payloadLength <= 1 || offset + HEADER_BYTES + payloadLength > buffer.capacity()
+                    || (int) checksum(offset + HEADER_BYTES, payloadLength) != buffer.getInt(offset + 4)) {
+                break;
+            }
+            consumer.accept(this, offset);
+            offset += HEADER_BYTES + payloadLength;
+        }
+
+        // what is left of a torn record must not be read as a record once shorter ones are appended over its start
+        for (int i = offset; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        writePosition = offset;
+    }
+
+    int recordBytes(int offset) {
+        return HEADER_BYTES + buffer.getInt(offset);
+    }
+
+    boolean shortCodeEquals(int offset, String shortCode) {
+        int payload = offset + HEADER_BYTES;
+        int length = buffer.get(payload) & 0xFF;
+        if (length != shortCode.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(payload + 1 + i) != shortCode.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean originalUrlEquals(int offset, byte[] originalUrl) {
+        int payload = offset + HEADER_BYTES;
+        int urlStart = payload + 1 + (buffer.get(payload) & 0xFF);
+        if (payload + buffer.getInt(offset) - urlStart != originalUrl.length) {
+            return false;
+        }
+        for (int i = 0; i < originalUrl.length; i++) {
+            if (buffer.get(urlStart + i) != originalUrl[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String shortCode(int offset) {
+        int payload = offset + HEADER_BYTES;
+        byte[] shortCode = new byte[buffer.get(payload) & 0xFF];
+        buffer.get(payload + 1, shortCode);
+        return new String(shortCode, StandardCharsets.US_ASCII);
+    }
+
+    String originalUrl(int offset) {
+        int payload = offset + HEADER_BYTES;
+        int urlStart = payload + 1 + (buffer.get(payload) & 0xFF);
+        byte[] originalUrl = new byte[payload + buffer.getInt(offset) - urlStart];
+        buffer.get(urlStart, originalUrl);
+        return new String(originalUrl, StandardCharsets.UTF_8);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private long checksum(int payload, int payloadLength) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(payload, payloadLength));
+        return crc.getValue();
+    }
+
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(Segment segment, int offset);
+    }
+}
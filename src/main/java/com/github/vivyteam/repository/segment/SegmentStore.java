@@ -0,0 +1,409 @@
+package com.github.vivyteam.repository.segment;
+
+import com.github.vivyteam.repository.UrlIndexKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * URL mappings stored in an append-only log of memory-mapped segment files, indexed out of the heap.
+ * <p>
+ * Every write appends a record to the active segment, and a new segment is started once it is full. Two
+ * {@link OffHeapIndex indexes} point at the records: one by short code, one by original URL. Reads probe them and
+ * read the record from the mapping without taking any lock; writes are serialized by the store.
+ * <p>
+ * On restart the indexes are loaded from the last checkpoint and only the records appended after it are replayed,
+ * or every record is replayed when there is no valid checkpoint. A record replaced by a later one for the same code
+ * is dead, and segments made mostly of dead records are compacted: their live records are appended again and the
+ * file deleted. The checkpoint is removed first, since it points into the deleted segments.
+ */
+public class SegmentStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentStore.class);
+    static final String CHECKPOINT_FILE = "index.checkpoint";
+    private static final int CHECKPOINT_MAGIC = 0x55524c53;
+    // version 2 indexes original URLs by their normalized form
+    private static final int CHECKPOINT_VERSION = 2;
+    private static final int INITIAL_INDEX_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final int segmentSize;
+    private volatile Segment[] segments = new Segment[0];
+    private volatile Segment active;
+    private volatile int segmentFiles;
+    private long[] liveBytes = new long[0];
+    private List<Segment> retired = new ArrayList<>();
+    private OffHeapIndex byShortCode = new OffHeapIndex(INITIAL_INDEX_SIZE);
+    private OffHeapIndex byOriginalUrl = new OffHeapIndex(INITIAL_INDEX_SIZE);
+
+    private SegmentStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the store kept in a directory, creating it when missing, and recovers its indexes.
+     */
+    public static SegmentStore open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        SegmentStore store = new SegmentStore(directory, segmentSize);
+        store.recover();
+        return store;
+    }
+
+    /**
+     * @return the original URL of a short code, or null when unknown
+     */
+    public String findOriginalUrl(String shortCode) {
+        long hash = OffHeapIndex.hash(shortCode);
+        while (true) {
+            long location = byShortCode.get(hash, candidate -> holdsShortCode(candidate, shortCode));
+            if (location == 0) {
+                return null;
+            }
+            // a segment compacted away right after the lookup is retried, the index already points at the copy
+            Segment segment = segmentOf(location);
+            if (segment != null) {
+                return segment.originalUrl(offsetOf(location));
+            }
+        }
+    }
+
+    /**
+     * @return the short code an original URL, or a URL only differing in the case of its scheme or authority, was last
+     * stored under, or null when unknown
+     */
+    public String findShortCode(String originalUrl) {
+        String normalizedUrl = UrlIndexKeys.normalize(originalUrl);
+        byte[] url = normalizedUrl.getBytes(StandardCharsets.UTF_8);
+        long hash = OffHeapIndex.hash(normalizedUrl);
+        while (true) {
+            long location = byOriginalUrl.get(hash, candidate -> holdsOriginalUrl(candidate, normalizedUrl, url));
+            if (location == 0) {
+                return null;
+            }
+            Segment segment = segmentOf(location);
+            if (segment != null) {
+                return segment.shortCode(offsetOf(location));
+            }
+        }
+    }
+
+    /**
+     * Stores a mapping, replacing the one the short code may have.
+     */
+    public synchronized void put(String shortCode, String originalUrl) throws IOException {
+        String current = findOriginalUrl(shortCode);
+        if (!originalUrl.equals(current)) {
+            append(shortCode, originalUrl);
+        }
+    }
+
+    /**
+     * Stores the original URL under the first candidate code that is free, unless it already has a code.
+     *
+     * @return the code of the URL, or null when every candidate belongs to another URL
+     */
+    public synchronized String create(String originalUrl, List<String> candidateShortCodes) throws IOException {
+        String existing = findShortCode(originalUrl);
+        if (existing != null) {
+            return existing;
+        }
+
+        for (String shortCode : candidateShortCodes) {
+            String current = findOriginalUrl(shortCode);
+            if (current == null) {
+                append(shortCode, originalUrl);
+                return shortCode;
+            }
+            if (UrlIndexKeys.sameUrl(current, originalUrl)) {
+                return shortCode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Flushes the active segment to disk. Sealed segments were flushed when the next one was started.
+     */
+    public void sync() {
+        active.force();
+    }
+
+    /**
+     * Appends again the live records of the sealed segments whose live bytes are below a ratio of their size, and
+     * deletes them.
+     *
+     * @return the number of segments compacted
+     */
+    public synchronized int compact(double liveRatioThreshold) throws IOException {
+        // segments retired by the previous compaction are no longer read by anyone
+        retired.forEach(segment -> segments[segment.id()] = null);
+        retired = new ArrayList<>();
+
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment != null && segment != active && liveBytes[segment.id()] < liveRatioThreshold * segment.size()) {
+                candidates.add(segment);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE));
+        for (Segment segment : candidates) {
+            List<long[]> records = new ArrayList<>();
+            byShortCode.forEach((hash, location) -> {
+                if (segmentOf(location) == segment) {
+                    records.add(new long[]{hash, location});
+                }
+            });
+
+            for (long[] record : records) {
+                int offset = offsetOf(record[1]);
+                String originalUrl = segment.originalUrl(offset);
+                long location = appendRecord(segment.shortCode(offset), originalUrl);
+                byShortCode.replace(record[0], record[1], location);
+                byOriginalUrl.replace(urlHash(originalUrl), record[1], location);
+                addLiveBytes(location);
+            }
+            liveBytes[segment.id()] = 0;
+            segment.delete();
+            segmentFiles--;
+            retired.add(segment);
+            LOGGER.debug("Compacted segment {}, {} live records moved", segment.id(), records.size());
+        }
+        active.force();
+        return candidates.size();
+    }
+
+    /**
+     * Writes both indexes and the log position they cover, so the next start only replays what follows.
+     */
+    public synchronized void checkpoint() throws IOException {
+        active.force();
+
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 checksum = new CRC32();
+            ByteBuffer header = ByteBuffer.allocate(16)
+                    .putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putInt(active.id()).putInt(active.writePosition())
+                    .flip();
+            checksum.update(header.duplicate());
+            write(channel, header);
+            byShortCode.writeTo(channel, checksum);
+            byOriginalUrl.writeTo(channel, checksum);
+            write(channel, ByteBuffer.allocate(8).putLong(checksum.getValue()).flip());
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int mappings() {
+        return byShortCode.size();
+    }
+
+    public long indexMemoryBytes() {
+        return byShortCode.memoryBytes() + byOriginalUrl.memoryBytes();
+    }
+
+    public int segmentCount() {
+        return segmentFiles;
+    }
+
+    private void recover() throws IOException {
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.log"))
+                    .map(Segment::idOf)
+                    .sorted()
+                    .toList();
+        }
+        if (ids.isEmpty()) {
+            active = addSegment(0);
+            return;
+        }
+        for (int id : ids) {
+            addSegment(id);
+        }
+
+        int fromSegment = ids.get(0);
+        int fromOffset = 0;
+        long checkpointed = loadCheckpoint();
+        if (checkpointed != 0) {
+            fromSegment = (int) (checkpointed >>> 32) - 1;
+            fromOffset = offsetOf(checkpointed);
+            byShortCode.forEach((hash, location) -> addLiveBytes(location));
+        }
+
+        long started = System.nanoTime();
+        for (int id : ids) {
+            if (id >= fromSegment) {
+                segments[id].recover(id == fromSegment ? fromOffset : 0, (segment, offset) -> index(segment, offset));
+            }
+        }
+        active = segments[ids.get(ids.size() - 1)];
+        LOGGER.info("Recovered {} URL mappings from {} segments in {} ms", byShortCode.size(), ids.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // A missing, torn or outdated checkpoint only means replaying every segment
+    private long loadCheckpoint() {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CRC32 checksum = new CRC32();
+            ByteBuffer header = read(channel, 16);
+            checksum.update(header.duplicate());
+            if (header.getInt() != CHECKPOINT_MAGIC || header.getInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Unknown checkpoint format");
+            }
+            int segmentId = header.getInt();
+            int position = header.getInt();
+            if (segmentId >= segments.length || segments[segmentId] == null) {
+                throw new IOException("Checkpoint of missing segment " + segmentId);
+            }
+
+            OffHeapIndex shortCodes = OffHeapIndex.readFrom(channel, checksum);
+            OffHeapIndex originalUrls = OffHeapIndex.readFrom(channel, checksum);
+            if (read(channel, 8).getLong() != checksum.getValue()) {
+                throw new IOException("Checkpoint checksum mismatch");
+            }
+            byShortCode = shortCodes;
+            byOriginalUrl = originalUrls;
+            return location(segmentId, position);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring segment index checkpoint, replaying every segment: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private Segment addSegment(int id) throws IOException {
+        Segment segment = Segment.open(directory, id, segmentSize);
+        if (id >= segments.length) {
+            Segment[] grown = Arrays.copyOf(segments, Math.max(id + 1, segments.length * 2));
+            grown[id] = segment;
+            liveBytes = Arrays.copyOf(liveBytes, grown.length);
+            segments = grown;
+        } else {
+            segments[id] = segment;
+        }
+        segmentFiles++;
+        return segment;
+    }
+
+    private void append(String shortCode, String originalUrl) throws IOException {
+        long location = appendRecord(shortCode, originalUrl);
+        index(segmentOf(location), offsetOf(location));
+    }
+
+    private long appendRecord(String shortCode, String originalUrl) throws IOException {
+        if (shortCode.isEmpty() || shortCode.length() > 0xFF || !shortCode.chars().allMatch(c -> c < 0x80)) {
+            throw new IllegalArgumentException("Invalid short code: " + shortCode);
+        }
+        byte[] code = shortCode.getBytes(StandardCharsets.US_ASCII);
+        byte[] url = originalUrl.getBytes(StandardCharsets.UTF_8);
+
+        int offset = active.append(code, url);
+        if (offset < 0) {
+            if (Segment.HEADER_BYTES + 1 + code.length + url.length > segmentSize) {
+                throw new IllegalArgumentException("Original URL too long for a segment: " + url.length + " bytes");
+            }
+            active.force();
+            active = addSegment(active.id() + 1);
+            offset = active.append(code, url);
+        }
+        return location(active.id(), offset);
+    }
+
+    // Points both indexes at a record, and marks the record of the code it replaces as dead
+    private void index(Segment segment, int offset) {
+        String shortCode = segment.shortCode(offset);
+        String normalizedUrl = UrlIndexKeys.normalize(segment.originalUrl(offset));
+        byte[] url = normalizedUrl.getBytes(StandardCharsets.UTF_8);
+        long location = location(segment.id(), offset);
+
+        addLiveBytes(location);
+        long previous = byShortCode.put(OffHeapIndex.hash(shortCode), location, candidate -> holdsShortCode(candidate, shortCode));
+        if (previous != 0) {
+            Segment previousSegment = segmentOf(previous);
+            liveBytes[previousSegment.id()] -= previousSegment.recordBytes(offsetOf(previous));
+            // the URL the code pointed at no longer maps back to it
+            byOriginalUrl.remove(urlHash(previousSegment.originalUrl(offsetOf(previous))), previous);
+        }
+        byOriginalUrl.put(OffHeapIndex.hash(normalizedUrl), location, candidate -> holdsOriginalUrl(candidate, normalizedUrl, url));
+    }
+
+    private void addLiveBytes(long location) {
+        Segment segment = segmentOf(location);
+        liveBytes[segment.id()] += segment.recordBytes(offsetOf(location));
+    }
+
+    private boolean holdsShortCode(long location, String shortCode) {
+        Segment segment = segmentOf(location);
+        return segment != null && segment.shortCodeEquals(offsetOf(location), shortCode);
+    }
+
+    // Most URLs are stored in their normalized form already, the bytes are compared before decoding the record
+    private boolean holdsOriginalUrl(long location, String normalizedUrl, byte[] normalizedBytes) {
+        Segment segment = segmentOf(location);
+        if (segment == null) {
+            return false;
+        }
+        int offset = offsetOf(location);
+        return segment.originalUrlEquals(offset, normalizedBytes)
+                || UrlIndexKeys.normalize(segment.originalUrl(offset)).equals(normalizedUrl);
+    }
+
+    private static long urlHash(String originalUrl) {
+        return OffHeapIndex.hash(UrlIndexKeys.normalize(originalUrl));
+    }
+
+    private Segment segmentOf(long location) {
+        Segment[] current = segments;
+        int id = (int) (location >>> 32) - 1;
+        return id < current.length ? current[id] : null;
+    }
+
+    // Segment ids are shifted by one so that no location is 0, the empty slot of the indexes
+    private static long location(int segmentId, int offset) {
+        return ((long) (segmentId + 1) << 32) | offset;
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static ByteBuffer read(FileChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Checkpoint ended early");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.vivyteam.service;
+
+import com.github.vivyteam.configuration.CodeGeneratorConfiguration;
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.service.utils.ShortCodeHasher;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Derives the codes of a URL from its SHA-256 digest, so the same URL always gets the same codes on every node without
+ * any coordination. Collisions between URLs fall back to the next candidates of the digest.
+ */
+@Component
+@ConditionalOnProperty(name = CodeGeneratorConfiguration.STRATEGY_PROPERTY, havingValue = CodeGeneratorConfiguration.HASH_STRATEGY, matchIfMissing = true)
+public class HashShortCodeGenerator implements ShortCodeGenerator {
+
+    private final ShortCodeHasher shortCodeHasher = new ShortCodeHasher();
+    private final ShorternerApiConfiguration apiConfiguration;
+    private final Timer encodeStage;
+
+    public HashShortCodeGenerator(ShorternerApiConfiguration apiConfiguration, MeterRegistry meterRegistry) {
+        this.apiConfiguration = apiConfiguration;
+        this.encodeStage = StageTimers.timer(meterRegistry, StageTimers.ENCODE);
+    }
+
+    @Override
+    public Mono<List<String>> candidates(String originalUrl) {
+        return Mono.fromCallable(() -> encodeStage.record(() -> shortCodeHasher.candidates(originalUrl,
+                apiConfiguration.getUrlLength(), apiConfiguration.getCollisionCandidates())));
+    }
+}
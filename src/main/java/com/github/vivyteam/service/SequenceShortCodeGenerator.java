@@ -0,0 +1,85 @@
+package com.github.vivyteam.service;
+
+import com.github.vivyteam.configuration.CodeGeneratorConfiguration;
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.repository.CodeSequence;
+import com.github.vivyteam.service.utils.Base62Encoder;
+import com.github.vivyteam.service.utils.FeistelPermutation;
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Hands out codes from the cluster-wide {@link CodeSequence}, so every code is unique without hashing the URL or
+ * retrying on collisions.
+ * <p>
+ * Ids are encoded as exactly {@code url-length} base62 characters, which caps the sequence at {@code 62^url-length}
+ * ids. With {@code permute} enabled the ids are first shuffled by a keyed {@link FeistelPermutation}, so consecutive
+ * codes cannot be guessed from one another. The key must be the same on every node and must never change, or codes
+ * handed out before would be handed out again, so it has no default and the node does not start without one. Hash codes created before switching strategies are longer than
+ * {@code url-length} characters unless their digest slice was unusually small, so clashes with them are rare and
+ * are rejected by the repository like any other taken code.
+ */
+@Component
+@ConditionalOnProperty(name = CodeGeneratorConfiguration.STRATEGY_PROPERTY, havingValue = CodeGeneratorConfiguration.SEQUENCE_STRATEGY)
+public class SequenceShortCodeGenerator implements ShortCodeGenerator {
+
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+    private final CodeSequence codeSequence;
+    private final FeistelPermutation permutation;
+    private final int urlLength;
+    private final long capacity;
+    private final Timer encodeStage;
+
+    public SequenceShortCodeGenerator(CodeSequence codeSequence,
+                                      ShorternerApiConfiguration apiConfiguration,
+                                      CodeGeneratorConfiguration codeGeneratorConfiguration,
+                                      MeterRegistry meterRegistry) {
+        this.codeSequence = codeSequence;
+        this.urlLength = apiConfiguration.getUrlLength();
+        this.capacity = capacity(urlLength);
+        this.permutation = codeGeneratorConfiguration.isPermute() ? permutation(capacity, codeGeneratorConfiguration) : null;
+        this.encodeStage = StageTimers.timer(meterRegistry, StageTimers.ENCODE);
+    }
+
+    @Override
+    public Mono<List<String>> candidates(String originalUrl) {
+        return codeSequence.next()
+                .map(id -> List.of(encodeStage.record(() -> encode(id))));
+    }
+
+    private String encode(long id) {
+        if (id >= capacity) {
+            throw new IllegalStateException("Code sequence exhausted every " + urlLength + " character short code");
+        }
+        return base62Encoder.encode(permutation != null ? permutation.permute(id) : id, urlLength);
+    }
+
+    private static FeistelPermutation permutation(long capacity, CodeGeneratorConfiguration codeGeneratorConfiguration) {
+        Long key = codeGeneratorConfiguration.getPermutationKey();
+        if (key == null) {
+            throw new IllegalStateException("Permuted short codes need a permutation key, set SHORTENER_CODE_PERMUTATION_KEY");
+        }
+        return new FeistelPermutation(capacity, key);
+    }
+
+    private static long capacity(int urlLength) {
+        if (urlLength < 1) {
+            throw new IllegalArgumentException("Short code length must be positive: " + urlLength);
+        }
+        try {
+            long capacity = 1;
+            for (int i = 0; i < urlLength; i++) {
+                capacity = Math.multiplyExact(capacity, 62L);
+            }
+            return capacity;
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Sequential short codes support at most 10 characters: " + urlLength, e);
+        }
+    }
+}
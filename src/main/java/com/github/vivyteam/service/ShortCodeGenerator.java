@@ -0,0 +1,18 @@
+package com.github.vivyteam.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Strategy picking the short codes a new mapping is created with, selected by
+ * {@code app.shortener.code-generator.strategy}.
+ */
+public interface ShortCodeGenerator {
+
+    /**
+     * @param originalUrl the URL being shortened
+     * @return the codes to try, in order, until one is free. A generator handing out unique codes returns a single one
+     */
+    Mono<List<String>> candidates(String originalUrl);
+}
@@ -1,92 +1,254 @@
 package com.github.vivyteam.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.vivyteam.configuration.CreateDeduplicationConfiguration;
 import com.github.vivyteam.configuration.ShorternerApiConfiguration;
 import com.github.vivyteam.exception.UrlNotFoundException;
+import com.github.vivyteam.model.ShortenResultModel;
 import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.model.UrlStatsModel;
+import com.github.vivyteam.repository.ClickCounter;
+import com.github.vivyteam.repository.UrlIndexKeys;
 import com.github.vivyteam.repository.UrlRepository;
-import com.github.vivyteam.service.utils.Base62Encoder;
+import com.github.vivyteam.service.utils.RequestCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class UrlShorteningService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UrlShorteningService.class);
-    private final Base62Encoder base62Encoder = new Base62Encoder();
+    private static final String RECENT_CREATES_CACHE_NAME = "shortener.recent-creates";
     private final UrlRepository urlRepository;
+    private final ShortCodeGenerator shortCodeGenerator;
     private final ShorternerApiConfiguration apiConfiguration;
+    private final CreateDeduplicationConfiguration createDeduplicationConfiguration;
+    private final Cache<CreateKey, UrlModel> recentCreates;
+    private final RequestCoalescer<CreateKey, UrlModel> inFlightCreates;
+    private final ClickCounter clickCounter;
 
 
+    // Clicks are counted in Redis, so there is no click counter with the local segment storage
     public UrlShorteningService(UrlRepository urlRepository,
-                                ShorternerApiConfiguration apiConfiguration) {
+                                ShortCodeGenerator shortCodeGenerator,
+                                ShorternerApiConfiguration apiConfiguration,
+                                CreateDeduplicationConfiguration createDeduplicationConfiguration,
+                                @Nullable ClickCounter clickCounter,
+                                MeterRegistry meterRegistry) {
         this.urlRepository = urlRepository;
+        this.shortCodeGenerator = shortCodeGenerator;
         this.apiConfiguration = apiConfiguration;
+        this.createDeduplicationConfiguration = createDeduplicationConfiguration;
+        this.recentCreates = Caffeine.newBuilder()
+                .maximumSize(createDeduplicationConfiguration.getMaximumSize())
+                .expireAfterWrite(createDeduplicationConfiguration.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentCreates, RECENT_CREATES_CACHE_NAME);
+        this.inFlightCreates = new RequestCoalescer<>("createShortUrl", meterRegistry);
+        this.clickCounter = clickCounter;
     }
 
     public Mono<UrlModel> createShortUrl(String originalUrl) {
-        LOGGER.info("Creating short URL for: {}", originalUrl);
+        return createShortUrl(originalUrl, null);
+    }
+
+    // Retried creates of a URL are answered from the mappings created recently on this node, and concurrent ones
+    // join the create already in flight, so retry storms neither hash the URL again nor reach Redis. Links that expire
+    // and permanent ones are deduplicated apart. Like in the repository, a URL that already has a live mapping keeps
+    // it, with its own expiry, but a permanent link is never answered with one that expires, nor the other way around.
+    public Mono<UrlModel> createShortUrl(String originalUrl, Duration ttl) {
+        LOGGER.debug("Creating short URL for: {}", originalUrl);
+        Instant expiresAt = ttl == null ? null : Instant.now().plus(ttl);
+
+        if (!createDeduplicationConfiguration.isEnabled()) {
+            return tryGenerateShortUrl(originalUrl, expiresAt)
+                    .map(this::toResponse);
+        }
+
+        CreateKey createKey = CreateKey.of(originalUrl, expiresAt != null);
+        UrlModel recentlyCreated = recentCreates.getIfPresent(createKey);
+        if (recentlyCreated != null && !recentlyCreated.hasExpiredAt(System.currentTimeMillis())) {
+            return Mono.just(toResponse(recentlyCreated));
+        }
+
+        return inFlightCreates.coalesce(createKey, key -> tryGenerateShortUrl(originalUrl, expiresAt).doOnNext(this::rememberCreated))
+                .map(this::toResponse);
+    }
 
-        return urlRepository.findByOriginalUrl(originalUrl)
-                .switchIfEmpty(tryGenerateShortUrl(originalUrl));
+    // URLs are resolved and stored one chunk at a time so that a slow consumer holds back the request body instead of
+    // buffering it. They are deduplicated within their chunk only, by their normalized form, a URL repeated in a later
+    // chunk is answered by the mapping created for the first one. Links are permanent, so a URL that already has an expiring link is rejected.
+    public Flux<ShortenResultModel> createShortUrls(Flux<String> originalUrls) {
+        return originalUrls
+                .buffer(apiConfiguration.getBulkChunkSize())
+                .concatMap(chunk -> createShortUrlChunk(distinctUrls(chunk)), 1);
     }
 
-    public Mono<UrlModel> findOriginalUrlByShortUrl(String shortUrl) {
-        LOGGER.info("Finding original URL by short URL: {}", shortUrl);
+    public Mono<UrlModel> findOriginalUrlByShortUrl(String shortCode) {
+        LOGGER.debug("Finding original URL by short code: {}", shortCode);
 
-        return urlRepository.findByShortenedUrl(shortUrl)
-                .doOnNext(urlModel -> LOGGER.info("Original URL found: {} -> {}", shortUrl, urlModel.originalUrl()))
-                .switchIfEmpty(Mono.error(new UrlNotFoundException("Unique Identifier of URL not found: " + shortUrl)));
+        return urlRepository.findByShortenedUrl(shortCode)
+                .doOnNext(urlModel -> LOGGER.debug("Original URL found: {} -> {}", shortCode, urlModel.originalUrl()))
+                .switchIfEmpty(Mono.error(new UrlNotFoundException("Unique Identifier of URL not found: " + shortCode)))
+                .map(this::toResponse);
 
     }
 
-    public Mono<UrlModel> findShortUrlAndRedirect(String shortUrl) {
-        LOGGER.info("Finding short URL for redirection: {}", shortUrl);
+    public Mono<UrlModel> findShortUrlAndRedirect(String shortCode) {
+        return findRedirect(shortCode)
+                .switchIfEmpty(Mono.error(() -> new UrlNotFoundException("Unique Identifier of URL not found: " + shortCode)));
+    }
 
-        return urlRepository.findByShortenedUrl(shortUrl)
-                .doOnNext(urlModel -> LOGGER.info("Short URL found for redirection: {} -> {}", shortUrl, urlModel.originalUrl()))
-                .switchIfEmpty(Mono.error(new UrlNotFoundException("Unique Identifier of URL not found: " + shortUrl)));
+    // Only the original URL is needed to redirect, so the mapping is returned as stored, without the domain. A missing
+    // code completes empty, so the redirect fast path can answer it without an exception.
+    public Mono<UrlModel> findRedirect(String shortCode) {
+        LOGGER.debug("Finding short code for redirection: {}", shortCode);
+
+        return urlRepository.findByShortenedUrl(shortCode)
+                .doOnNext(urlModel -> {
+                    LOGGER.debug("Short code found for redirection: {} -> {}", shortCode, urlModel.originalUrl());
+                    if (clickCounter != null) {
+                        clickCounter.increment(shortCode);
+                    }
+                });
+    }
+
+    public Mono<UrlStatsModel> findUrlStats(String shortCode) {
+        LOGGER.debug("Finding stats of short code: {}", shortCode);
+
+        return urlRepository.findByShortenedUrl(shortCode)
+                .switchIfEmpty(Mono.error(new UrlNotFoundException("Unique Identifier of URL not found: " + shortCode)))
+                .flatMap(urlModel -> (clickCounter == null ? Mono.just(0L) : clickCounter.totalClicks(shortCode))
+                        .map(clicks -> new UrlStatsModel(urlModel.originalUrl(), apiConfiguration.getDomainUrl() + urlModel.shortenedUrl(), clicks)));
     }
 
-    private Mono<UrlModel> tryGenerateShortUrl(String originalUrl) {
-        return Mono.fromCallable(() -> generateShortUrl(originalUrl))
-                .flatMap(urlModel -> urlRepository.save(urlModel)
-                        .doOnNext(savedUrlModel -> LOGGER.info("Short URL generated and saved: {} -> {}", originalUrl, savedUrlModel.shortenedUrl())))
+    // The repository resolves an existing mapping, collisions and the write in a single atomic call
+    private Mono<UrlModel> tryGenerateShortUrl(String originalUrl, Instant expiresAt) {
+        return Mono.defer(() -> shortCodeGenerator.candidates(originalUrl))
+                .flatMap(candidateShortCodes -> urlRepository.create(originalUrl, candidateShortCodes, expiresAt))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Every candidate short code is already taken")))
+                .doOnNext(savedUrlModel -> LOGGER.debug("Short URL generated and saved: {} -> {}", originalUrl, savedUrlModel.shortenedUrl()))
                 .onErrorResume(e -> {
                     LOGGER.error("Unable to generate a short URL: {}", e.getMessage());
                     return Mono.error(new IllegalArgumentException("Unable to generate a short URL: ", e));
-                });
+                })
+                .flatMap(urlModel -> (urlModel.expiresAt() != null) == (expiresAt != null)
+                        ? Mono.just(urlModel)
+                        : Mono.error(new IllegalArgumentException(urlModel.expiresAt() != null
+                        ? "The URL already has a link expiring at " + urlModel.expiresAt() + ": " + originalUrl
+                        : "The URL already has a link that never expires: " + originalUrl)));
     }
 
-    private UrlModel generateShortUrl(String originalUrl) throws NoSuchAlgorithmException {
-        LOGGER.debug("Generating short URL for: {}", originalUrl);
+    private Flux<ShortenResultModel> createShortUrlChunk(List<String> originalUrls) {
+        LOGGER.debug("Creating short URLs for a chunk of {} URLs", originalUrls.size());
+
+        Map<String, UrlModel> recentlyCreated = createDeduplicationConfiguration.isEnabled()
+                ? liveMappings(recentCreates.getAllPresent(originalUrls.stream().map(CreateKey::permanent).toList()))
+                : Map.of();
+        List<String> unresolvedUrls = originalUrls.stream()
+                .filter(originalUrl -> !recentlyCreated.containsKey(UrlIndexKeys.normalize(originalUrl)))
+                .toList();
+        if (unresolvedUrls.isEmpty()) {
+            return Flux.fromIterable(recentlyCreated.values()).map(this::shortened);
+        }
 
-        int length = apiConfiguration.getUrlLength();
-        String baseUrl = apiConfiguration.getDomainUrl();
+        return urlRepository.findAllByOriginalUrl(unresolvedUrls)
+                .collectMap(urlModel -> UrlIndexKeys.normalize(urlModel.originalUrl()))
+                .flatMapMany(existingUrls -> {
+                    Mono<Map<String, List<String>>> newUrls = Flux.fromIterable(unresolvedUrls)
+                            .filter(originalUrl -> !existingUrls.containsKey(UrlIndexKeys.normalize(originalUrl)))
+                            .concatMap(originalUrl -> shortCodeGenerator.candidates(originalUrl)
+                                    .map(candidateShortCodes -> Map.entry(originalUrl, candidateShortCodes)))
+                            .collect(LinkedHashMap::new, (candidates, entry) -> candidates.put(entry.getKey(), entry.getValue()));
+
+                    return Flux.fromIterable(recentlyCreated.values()).map(this::shortened)
+                            .concatWith(Flux.fromIterable(existingUrls.values()).map(urlModel -> urlModel.expiresAt() != null
+                                    ? ShortenResultModel.rejected(urlModel.originalUrl(),
+                                    "The URL already has a link expiring at " + urlModel.expiresAt())
+                                    : shortened(urlModel)))
+                            .concatWith(newUrls.flatMapMany(this::createAll));
+                });
+    }
 
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update((originalUrl).getBytes(StandardCharsets.UTF_8));
-        byte[] digest = md.digest();
+    private static List<String> distinctUrls(List<String> originalUrls) {
+        Set<String> normalizedUrls = new HashSet<>();
+        return originalUrls.stream()
+                .filter(originalUrl -> normalizedUrls.add(UrlIndexKeys.normalize(originalUrl)))
+                .toList();
+    }
 
-        // Get a positive 7-byte portion of the digest and convert it to a BigInteger
-        BigInteger id = new BigInteger(1, Arrays.copyOfRange(digest, 0, length));
-        StringBuilder shortUrlPath = new StringBuilder(base62Encoder.encode(id));
+    private static Map<String, UrlModel> liveMappings(Map<CreateKey, UrlModel> urlModels) {
+        long now = System.currentTimeMillis();
+        return urlModels.entrySet().stream()
+                .filter(entry -> !entry.getValue().hasExpiredAt(now))
+                .collect(Collectors.toMap(entry -> entry.getKey().originalUrl(), Map.Entry::getValue));
+    }
 
-        // Pad the encoded string with the first character of the alphabet to ensure it's always 7 characters long
-        while (shortUrlPath.length() < length) {
-            shortUrlPath.insert(0, Base62Encoder.ALPHABET.charAt(0));
+    private void rememberCreated(UrlModel urlModel) {
+        if (createDeduplicationConfiguration.isEnabled()) {
+            recentCreates.put(CreateKey.of(urlModel.originalUrl(), urlModel.expiresAt() != null), urlModel);
         }
+    }
+
+    // Bulk creates claim their codes like single ones, a URL whose candidates are all taken is rejected
+    private Flux<ShortenResultModel> createAll(Map<String, List<String>> candidateShortCodes) {
+        LOGGER.debug("Creating {} new short URLs", candidateShortCodes.size());
+
+        return urlRepository.createAll(candidateShortCodes)
+                .doOnNext(this::rememberCreated)
+                .collectList()
+                .flatMapMany(createdUrlModels -> {
+                    Set<String> createdUrls = createdUrlModels.stream()
+                            .map(urlModel -> UrlIndexKeys.normalize(urlModel.originalUrl()))
+                            .collect(Collectors.toSet());
+                    List<ShortenResultModel> rejected = candidateShortCodes.keySet().stream()
+                            .filter(originalUrl -> !createdUrls.contains(UrlIndexKeys.normalize(originalUrl)))
+                            .map(originalUrl -> ShortenResultModel.rejected(originalUrl, "Every candidate short code is already taken"))
+                            .toList();
+                    if (!rejected.isEmpty()) {
+                        LOGGER.error("Unable to generate a short URL for {} of {} URLs, every candidate code is already taken",
+                                rejected.size(), candidateShortCodes.size());
+                    }
+                    return Flux.fromIterable(createdUrlModels).map(this::shortened)
+                            .concatWith(Flux.fromIterable(rejected));
+                });
+    }
 
-        String shortUrl = baseUrl + shortUrlPath;
-        LOGGER.debug("Generated short URL: {}", shortUrl);
+    // The repository only knows bare short codes, the domain is added when the response is built
+    private UrlModel toResponse(UrlModel urlModel) {
+        return new UrlModel(urlModel.originalUrl(), apiConfiguration.getDomainUrl() + urlModel.shortenedUrl(), urlModel.expiresAt());
+    }
+
+    private ShortenResultModel shortened(UrlModel urlModel) {
+        return ShortenResultModel.shortened(toResponse(urlModel));
+    }
+
+    // Keyed by the normalized URL, so URLs only differing in the case of their scheme or authority share a mapping
+    private record CreateKey(String originalUrl, boolean expiring) {
 
-        return new UrlModel(originalUrl, shortUrl);
+        private static CreateKey of(String originalUrl, boolean expiring) {
+            return new CreateKey(UrlIndexKeys.normalize(originalUrl), expiring);
+        }
+
+        private static CreateKey permanent(String originalUrl) {
+            return of(originalUrl, false);
+        }
     }
 }
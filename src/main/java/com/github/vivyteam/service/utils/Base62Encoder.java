@@ -1,30 +1,123 @@
 package com.github.vivyteam.service.utils;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 public class Base62Encoder {
 
     public static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final BigInteger BASE = BigInteger.valueOf(ALPHABET.length());
+    private static final int BASE = ALPHABET.length();
+    private static final char[] DIGITS = ALPHABET.toCharArray();
+    private static final byte[] INDEXES = new byte[128];
+    private static final char PADDING = DIGITS[0];
+
+    // 62^10 < 2^64 < 62^11, so any unsigned long fits in 11 digits
+    public static final int MAX_LONG_LENGTH = 11;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static {
+        Arrays.fill(INDEXES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            INDEXES[DIGITS[i]] = (byte) i;
+        }
+    }
 
     /**
-     * Encodes a long value into a base62 string.
+     * Encodes a BigInteger value into a base62 string.
      *
      * @param input the BigInteger value to encode
-     * @return the base62 encoded string
+     * @return the base62 encoded string, empty for zero or negative values
      */
     public String encode(BigInteger input) {
-        StringBuilder encoded = new StringBuilder();
-        BigInteger bigInput = input;
+        if (input.signum() <= 0) {
+            return "";
+        }
+        byte[] bytes = input.toByteArray();
+        return encode(bytes, 0, bytes.length, 0);
+    }
+
+    /**
+     * Encodes a long value, read as unsigned, into a base62 string.
+     *
+     * @param input the value to encode
+     * @return the base62 encoded string, empty for zero
+     */
+    public String encode(long input) {
+        char[] buffer = SCRATCH.get().chars(MAX_LONG_LENGTH);
+        int start = encode(input, 0, buffer);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Encodes a long value, read as unsigned, into a base62 string left-padded up to {@code minLength}.
+     *
+     * @param input     the value to encode
+     * @param minLength the minimum length of the encoded string
+     * @return the base62 encoded string
+     */
+    public String encode(long input, int minLength) {
+        char[] buffer = SCRATCH.get().chars(Math.max(MAX_LONG_LENGTH, minLength));
+        int start = encode(input, minLength, buffer);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Encodes the unsigned big-endian number held in {@code bytes[offset, offset + length)} into a base62 string,
+     * left-padded with the first alphabet character up to {@code minLength}.
+     * <p>
+     * This produces exactly the same output as encoding {@code new BigInteger(1, slice)} and padding it, without
+     * allocating anything but the resulting string.
+     *
+     * @param bytes     the source bytes
+     * @param offset    the first byte of the number
+     * @param length    how many bytes make up the number
+     * @param minLength the minimum length of the encoded string
+     * @return the base62 encoded string
+     */
+    public String encode(byte[] bytes, int offset, int length, int minLength) {
+        Scratch scratch = SCRATCH.get();
+        char[] buffer = scratch.chars(Math.max(maxEncodedLength(length), minLength));
+        int start;
+
+        if (length <= Long.BYTES) {
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                value = (value << 8) | (bytes[i] & 0xFF);
+            }
+            start = encode(value, minLength, buffer);
+        } else {
+            start = encodeBytes(bytes, offset, length, minLength, buffer, scratch.bytes(length));
+        }
+
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Writes the unsigned value right-aligned into {@code buffer}, left-padded up to {@code minLength}.
+     *
+     * @param input     the value to encode, read as unsigned
+     * @param minLength the minimum number of characters to write
+     * @param buffer    the destination, at least {@code max(MAX_LONG_LENGTH, minLength)} characters long
+     * @return the index of the first written character
+     */
+    public int encode(long input, int minLength, char[] buffer) {
+        int position = buffer.length;
+        long value = input;
 
-        while (bigInput.compareTo(BigInteger.ZERO) > 0) {
-            BigInteger[] divideAndRemainder = bigInput.divideAndRemainder(BASE);
-            bigInput = divideAndRemainder[0];
-            int remainder = divideAndRemainder[1].intValue();
-            encoded.insert(0, ALPHABET.charAt(remainder));
+        if (value < 0) {
+            // First step as unsigned, afterwards the quotient always fits in a positive long
+            long quotient = Long.divideUnsigned(value, BASE);
+            buffer[--position] = DIGITS[(int) (value - quotient * BASE)];
+            value = quotient;
+        }
+        while (value > 0) {
+            long quotient = value / BASE;
+            buffer[--position] = DIGITS[(int) (value - quotient * BASE)];
+            value = quotient;
         }
 
-        return encoded.toString();
+        return pad(buffer, position, minLength);
     }
 
     /**
@@ -32,15 +125,107 @@ public class Base62Encoder {
      *
      * @param input the base62 encoded string
      * @return the decoded long value
+     * @throws IllegalArgumentException if the input holds a character outside the alphabet
      */
     public long decode(String input) {
-        BigInteger decoded = BigInteger.ZERO;
+        long decoded = 0;
+
+        for (int i = 0; i < input.length(); i++) {
+            decoded = decoded * BASE + indexOf(input.charAt(i));
+        }
+
+        return decoded;
+    }
+
+    /**
+     * Checks whether every character of the input belongs to the base62 alphabet.
+     *
+     * @param input the string to check
+     * @return true when the input only holds base62 characters
+     */
+    public static boolean isBase62(CharSequence input) {
+        for (int i = 0; i < input.length(); i++) {
+            char ch = input.charAt(i);
+            if (ch >= INDEXES.length || INDEXES[ch] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the longest string {@link #encode(byte[], int, int, int)} can produce for a number of bytes.
+     *
+     * @param bytes the number of bytes being encoded
+     * @return the maximum number of base62 characters
+     */
+    public static int maxEncodedLength(int bytes) {
+        // log(256) / log(62) ~= 1.3436 characters per byte
+        return (int) Math.ceil(bytes * 8 / (Math.log(BASE) / Math.log(2)));
+    }
 
-        for (char ch : input.toCharArray()) {
-            int index = ALPHABET.indexOf(ch);
-            decoded = decoded.multiply(BASE).add(BigInteger.valueOf(index));
+    private static int indexOf(char ch) {
+        int index = ch < INDEXES.length ? INDEXES[ch] : -1;
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid base62 character: " + ch);
         }
+        return index;
+    }
+
+    private static int encodeBytes(byte[] bytes, int offset, int length, int minLength, char[] buffer, byte[] dividend) {
+        System.arraycopy(bytes, offset, dividend, 0, length);
+        int position = buffer.length;
+        int first = skipZeros(dividend, 0, length);
+
+        // Leading zero bytes never produce a digit, exactly like the BigInteger based encoding.
+        // Schoolbook division of the big-endian number by 62, one output digit per pass
+        while (first < length) {
+            int remainder = 0;
+            for (int i = first; i < length; i++) {
+                int accumulator = (remainder << 8) | (dividend[i] & 0xFF);
+                dividend[i] = (byte) (accumulator / BASE);
+                remainder = accumulator % BASE;
+            }
+            buffer[--position] = DIGITS[remainder];
+            first = skipZeros(dividend, first, length);
+        }
+
+        return pad(buffer, position, minLength);
+    }
+
+    private static int skipZeros(byte[] bytes, int from, int length) {
+        int index = from;
+        while (index < length && bytes[index] == 0) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int pad(char[] buffer, int position, int minLength) {
+        int start = position;
+        while (buffer.length - start < minLength) {
+            buffer[--start] = PADDING;
+        }
+        return start;
+    }
 
-        return decoded.longValue();
+    private static final class Scratch {
+        private char[] chars = new char[MAX_LONG_LENGTH];
+        private byte[] bytes = new byte[32];
+
+        private char[] chars(int length) {
+            // Encoded strings are written right-aligned, so any buffer at least this long will do
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            return chars;
+        }
+
+        private byte[] bytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            return bytes;
+        }
     }
 }
@@ -0,0 +1,132 @@
+package com.github.vivyteam.service.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter of strings.
+ * <p>
+ * The bit positions are derived from two 64-bit hashes of the value (Kirsch-Mitzenmacher double hashing), so a
+ * lookup walks the characters once whatever the number of hash functions. Values can be added concurrently with
+ * lookups; a value is never reported absent once {@link #put(CharSequence)} has returned.
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashFunctions;
+    private final AtomicLong bitCount = new AtomicLong();
+
+    /**
+     * @param expectedInsertions  the number of values the filter is sized for
+     * @param falsePositiveRate   the false positive probability once {@code expectedInsertions} values are in
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter sizing: " + expectedInsertions + " values at " + falsePositiveRate);
+        }
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.words = new AtomicLongArray(Math.toIntExact((optimalBits + Long.SIZE - 1) / Long.SIZE));
+        this.bits = (long) words.length() * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bits / expectedInsertions * LN2));
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value the value to add
+     * @return true when at least one bit changed, i.e. the value was definitely not in the filter before
+     */
+    public boolean put(CharSequence value) {
+        long hash = hash(value);
+        long first = mix(hash);
+        long second = mix(hash ^ 0x9E3779B97F4A7C15L);
+
+        boolean changed = false;
+        for (int i = 0; i < hashFunctions; i++) {
+            changed |= set(Math.floorMod(first + i * second, bits));
+        }
+        return changed;
+    }
+
+    /**
+     * @param value the value to look up
+     * @return false when the value was definitely never added, true when it probably was
+     */
+    public boolean mightContain(CharSequence value) {
+        long hash = hash(value);
+        long first = mix(hash);
+        long second = mix(hash ^ 0x9E3779B97F4A7C15L);
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Math.floorMod(first + i * second, bits);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bits;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * @return the probability that {@link #mightContain(CharSequence)} answers true for a value never added, given
+     * the bits set so far
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitCount.get() / bits, hashFunctions);
+    }
+
+    /**
+     * @return the number of distinct values added, estimated from the bits set so far
+     */
+    public long approximateElementCount() {
+        double fractionSet = (double) bitCount.get() / bits;
+        return Math.round(-Math.log1p(-fractionSet) * bits / hashFunctions);
+    }
+
+    private boolean set(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+
+        bitCount.incrementAndGet();
+        return true;
+    }
+
+    // FNV-1a over the UTF-16 code units, finalized by mix
+    private static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // murmur3 64-bit finalizer
+    private static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
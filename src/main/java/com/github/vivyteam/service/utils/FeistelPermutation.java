@@ -0,0 +1,75 @@
+package com.github.vivyteam.service.utils;
+
+/**
+ * Keyed bijection of {@code [0, size)} onto itself, so consecutive ids map to codes that look random but never
+ * collide.
+ * <p>
+ * A balanced Feistel network permutes the smallest even number of bits covering the range, and values landing past
+ * its end are fed through the network again until they fall inside (cycle walking). The range covers more than a
+ * quarter of the network's values, so this takes a few passes at most on average. Without the key the order cannot be
+ * guessed from a few codes, but this is not a cipher and is not meant to resist a determined analysis.
+ */
+public class FeistelPermutation {
+
+    private static final int ROUNDS = 4;
+
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    /**
+     * @param size the number of values permuted, at least 2
+     * @param key  the secret the permutation is derived from
+     */
+    public FeistelPermutation(long size, long key) {
+        if (size < 2) {
+            throw new IllegalArgumentException("Permutation size must be at least 2: " + size);
+        }
+        this.size = size;
+        int bits = 64 - Long.numberOfLeadingZeros(size - 1);
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        for (int round = 0; round < ROUNDS; round++) {
+            roundKeys[round] = mix(key + (round + 1) * 0x9e3779b97f4a7c15L);
+        }
+    }
+
+    /**
+     * @param value a value in {@code [0, size)}
+     * @return its image, also in {@code [0, size)}
+     */
+    public long permute(long value) {
+        if (value < 0 || value >= size) {
+            throw new IllegalArgumentException("Value out of the permuted range [0, " + size + "): " + value);
+        }
+
+        long permuted = value;
+        do {
+            permuted = encrypt(permuted);
+        } while (permuted >= size);
+        return permuted;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (long roundKey : roundKeys) {
+            long next = left ^ (mix(right ^ roundKey) & halfMask);
+            left = right;
+            right = next;
+        }
+        return left << halfBits | right;
+    }
+
+    // Murmur3 64-bit finalizer
+    private static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.vivyteam.service.utils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Groups items submitted concurrently into batches written by a single flush.
+ * <p>
+ * A batch is flushed once it holds {@code maxBatchSize} items or its first item has waited for {@code window},
+ * whichever comes first. The {@link Mono} returned by {@link #submit(Object)} completes only once the flush of its
+ * batch has been acknowledged, and fails with the flush error, so callers keep the semantics of a direct write.
+ *
+ * @param <T> the batched item type
+ */
+public class MicroBatcher<T> implements Disposable {
+
+    // Concurrent submits and the disposal only contend for the emission, which is retried instead of failing
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final Sinks.Many<Pending<T>> submissions = Sinks.many().unicast().onBackpressureBuffer();
+    private final Function<List<T>, Mono<Void>> flusher;
+    private final DistributionSummary batchSize;
+    private final Timer flushLatency;
+    private final Disposable subscription;
+
+    /**
+     * @param name               the name the metrics are tagged with
+     * @param maxBatchSize       the number of items that triggers a flush
+     * @param window             the longest an item waits for its batch to fill up
+     * @param maxInFlightFlushes the number of flushes that may be pending at once
+     * @param flusher            writes a batch, completing once it has been acknowledged
+     */
+    public MicroBatcher(String name, int maxBatchSize, Duration window, int maxInFlightFlushes,
+                        Function<List<T>, Mono<Void>> flusher, MeterRegistry meterRegistry) {
+        this.flusher = flusher;
+        this.batchSize = DistributionSummary.builder("shortener.write-batch.size")
+                .description("Items written by one batch flush")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("shortener.write-batch.flush")
+                .description("Time taken to write and acknowledge a batch")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        // bufferTimeout does not honour backpressure on a timed flush, the buffered batches absorb it instead
+        this.subscription = submissions.asFlux()
+                .bufferTimeout(maxBatchSize, window)
+                .onBackpressureBuffer()
+                .flatMap(this::flush, maxInFlightFlushes)
+                .subscribe();
+    }
+
+    /**
+     * @param item the item to write with the next batch
+     * @return completes once the batch holding the item has been flushed, fails once the batcher is disposed
+     */
+    public Mono<Void> submit(T item) {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> flushed = Sinks.empty();
+            Sinks.EmitResult result;
+            do {
+                result = submissions.tryEmitNext(new Pending<>(item, flushed));
+            } while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+            if (result.isFailure()) {
+                return Mono.error(new IllegalStateException("Batcher disposed, item not written: " + result));
+            }
+            return flushed.asMono();
+        });
+    }
+
+    /**
+     * Flushes what is already submitted, then stops accepting items.
+     */
+    @Override
+    public void dispose() {
+        submissions.emitComplete(RETRY_NON_SERIALIZED);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return subscription.isDisposed();
+    }
+
+    private Mono<Void> flush(List<Pending<T>> batch) {
+        batchSize.record(batch.size());
+        Timer.Sample sample = Timer.start();
+
+        return Mono.defer(() -> flusher.apply(batch.stream().map(Pending::item).toList()))
+                .doOnSuccess(done -> {
+                    sample.stop(flushLatency);
+                    batch.forEach(pending -> pending.flushed().tryEmitEmpty());
+                })
+                .onErrorResume(e -> {
+                    sample.stop(flushLatency);
+                    batch.forEach(pending -> pending.flushed().tryEmitError(e));
+                    return Mono.empty();
+                });
+    }
+
+    private record Pending<T>(T item, Sinks.Empty<Void> flushed) {
+    }
+}
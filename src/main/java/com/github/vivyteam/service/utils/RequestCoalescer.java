@@ -0,0 +1,75 @@
+package com.github.vivyteam.service.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Single-flight execution of reactive lookups: concurrent subscribers asking for the same key share one in-flight
+ * {@link Mono} instead of each running the lookup.
+ * <p>
+ * The in-flight entry is removed as soon as the lookup terminates, so results are never served after that: the
+ * next subscriber starts a new lookup. There is no global lock, keys only contend on their map entry.
+ *
+ * @param <K> the key type
+ * @param <V> the looked up value type
+ */
+public class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter coalesced;
+
+    public RequestCoalescer(String name, MeterRegistry meterRegistry) {
+        this.executed = callCounter(meterRegistry, name, "executed");
+        this.coalesced = callCounter(meterRegistry, name, "coalesced");
+        Gauge.builder("shortener.coalescer.in-flight", inFlight, ConcurrentMap::size)
+                .description("Lookups currently in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param key    the key to look up
+     * @param lookup the lookup to run when none is in flight for the key
+     * @return the in-flight lookup of the key, shared by every concurrent subscriber
+     */
+    public Mono<V> coalesce(K key, Function<K, Mono<V>> lookup) {
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> shared = Mono.defer(() -> lookup.apply(key))
+                    .doFinally(signal -> inFlight.remove(key, self.get()))
+                    .cache();
+            self.set(shared);
+
+            existing = inFlight.putIfAbsent(key, shared);
+            if (existing != null) {
+                coalesced.increment();
+                return existing;
+            }
+
+            executed.increment();
+            return shared;
+        });
+    }
+
+    private static Counter callCounter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("shortener.coalescer.calls")
+                .description("Lookups run, or saved by joining one already in flight")
+                .tag("name", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.vivyteam.service.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derives the short code of a URL from its SHA-256 digest.
+ * <p>
+ * The digest, the input bytes and the output characters live in per-thread buffers, so the only allocation on the
+ * common path (ASCII URLs) is the returned code.
+ */
+public class ShortCodeHasher {
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final int MAX_RETAINED_INPUT = 8 * 1024;
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+
+    /**
+     * Hashes the URL and encodes the first {@code length} bytes of the digest, padded to {@code length} characters.
+     *
+     * @param url    the URL to hash
+     * @param length the number of digest bytes to keep, which is also the minimum code length
+     * @return the base62 short code
+     */
+    public String hash(String url, int length) {
+        if (length < 1 || length > DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Short code length must be between 1 and " + DIGEST_LENGTH + ": " + length);
+        }
+
+        State state = STATE.get();
+        byte[] digest = state.digest(url);
+        return base62Encoder.encode(digest, 0, length, length);
+    }
+
+    /**
+     * Hashes a value into a fixed-width base62 fingerprint of the first {@code bytes} digest bytes.
+     *
+     * @param value the value to hash
+     * @param bytes the number of digest bytes to keep
+     * @return the fingerprint, always {@link Base62Encoder#maxEncodedLength(int)} characters long
+     */
+    public String fingerprint(String value, int bytes) {
+        if (bytes < 1 || bytes > DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Fingerprint size must be between 1 and " + DIGEST_LENGTH + ": " + bytes);
+        }
+
+        byte[] digest = STATE.get().digest(value);
+        return base62Encoder.encode(digest, 0, bytes, Base62Encoder.maxEncodedLength(bytes));
+    }
+
+    /**
+     * Derives up to {@code count} candidate codes from consecutive {@code length}-byte slices of a single digest.
+     * The first candidate is always {@link #hash(String, int)}, the following ones are deterministic fallbacks used
+     * when a code already belongs to another URL.
+     *
+     * @param url    the URL to hash
+     * @param length the number of digest bytes per code, which is also the minimum code length
+     * @param count  the maximum number of candidates
+     * @return the candidate codes, in the order they should be tried
+     */
+    public List<String> candidates(String url, int length, int count) {
+        if (length < 1 || length > DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Short code length must be between 1 and " + DIGEST_LENGTH + ": " + length);
+        }
+
+        byte[] digest = STATE.get().digest(url);
+        int candidates = Math.max(1, Math.min(count, DIGEST_LENGTH / length));
+        List<String> codes = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            codes.add(base62Encoder.encode(digest, i * length, length, length));
+        }
+        return codes;
+    }
+
+    private static final class State {
+        private final MessageDigest messageDigest;
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private byte[] input = new byte[256];
+
+        private State() {
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        private byte[] digest(String url) {
+            int length = url.length();
+            if (isAscii(url) && length <= MAX_RETAINED_INPUT) {
+                if (input.length < length) {
+                    input = new byte[Integer.highestOneBit(length - 1) << 1];
+                }
+                for (int i = 0; i < length; i++) {
+                    input[i] = (byte) url.charAt(i);
+                }
+                messageDigest.update(input, 0, length);
+            } else {
+                messageDigest.update(url.getBytes(StandardCharsets.UTF_8));
+            }
+
+            try {
+                messageDigest.digest(digest, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Unable to compute SHA-256 digest", e);
+            }
+            return digest;
+        }
+
+        private static boolean isAscii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.vivyteam.service.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving sketch of the most frequent items of a stream, in memory bounded by its capacity.
+ * <p>
+ * Up to {@code capacity} items are counted exactly. An item arriving once the sketch is full takes over the counter
+ * of the least counted item and inherits its count as possible overestimation, so an item counted above the minimum
+ * is never missing from the sketch, and its count is at most {@link Entry#error()} above its true frequency.
+ *
+ * @param <T> the item type
+ */
+public class SpaceSaving<T> {
+
+    private final int capacity;
+    private final Map<T, Slot<T>> slots;
+    private final TreeSet<Slot<T>> byCount = new TreeSet<>((first, second) -> first.count != second.count
+            ? Long.compare(first.count, second.count)
+            : Long.compare(first.sequence, second.sequence));
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid Space-Saving capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * @param item  the item seen
+     * @param count the number of times it was seen
+     */
+    public synchronized void offer(T item, long count) {
+        Slot<T> slot = slots.get(item);
+        if (slot != null) {
+            byCount.remove(slot);
+            slot.count += count;
+            slot.sequence = sequence++;
+            byCount.add(slot);
+            return;
+        }
+
+        if (slots.size() < capacity) {
+            slot = new Slot<>(item, count, 0, sequence++);
+        } else {
+            Slot<T> evicted = byCount.pollFirst();
+            slots.remove(evicted.item);
+            slot = new Slot<>(item, evicted.count + count, evicted.count, sequence++);
+        }
+        slots.put(item, slot);
+        byCount.add(slot);
+    }
+
+    /**
+     * @param limit the number of items to return
+     * @return the most counted items, by descending count
+     */
+    public synchronized List<Entry<T>> top(int limit) {
+        List<Entry<T>> top = new ArrayList<>(Math.min(limit, slots.size()));
+        Iterator<Slot<T>> descending = byCount.descendingIterator();
+        while (descending.hasNext() && top.size() < limit) {
+            Slot<T> slot = descending.next();
+            top.add(new Entry<>(slot.item, slot.count, slot.error));
+        }
+        return top;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * @param item  the counted item
+     * @param count its estimated count, never below its true frequency
+     * @param error the most the count may overestimate the true frequency by
+     */
+    public record Entry<T>(T item, long count, long error) {
+    }
+
+    private static final class Slot<T> {
+        private final T item;
+        private final long error;
+        private long count;
+        private long sequence;
+
+        private Slot(T item, long count, long error, long sequence) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.vivyteam.service.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Latency of the stages a request goes through, all recorded as {@code shortener.stage} tagged with their stage.
+ * <p>
+ * The timers publish percentile histograms, so tail latencies can be aggregated over nodes and the slow stage of a
+ * slow request found without logging every request.
+ */
+public final class StageTimers {
+
+    public static final String VALIDATION = "validation";
+    public static final String NEAR_CACHE = "near-cache";
+    public static final String REDIS = "redis";
+    public static final String ENCODE = "encode";
+    public static final String RESPONSE_WRITE = "response-write";
+
+    private StageTimers() {
+    }
+
+    /**
+     * @param meterRegistry the registry holding the timer, registering it on first use
+     * @param stage         one of the stages above
+     * @return the timer of the stage
+     */
+    public static Timer timer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("shortener.stage")
+                .description("Time spent in each stage of the request processing")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,76 @@
+-- Claims a candidate short code for an original URL, unless it already belongs to another URL.
+--
+-- KEYS[1]: primary hash bucket of the short code, short code -> entity
+-- ARGV[1]: short code
+-- ARGV[2]: serialized entity
+-- ARGV[3]: normalized original URL
+-- ARGV[4]: current time, in epoch milliseconds
+--
+-- Returns the entity the code is now mapped to, or nil when the code belongs to another URL. Values embed their
+-- expiry, so the owner of a code is told by the normalized original URL it holds rather than by the whole value. A
+-- code whose mapping of the same URL has expired is claimed again, a live one is returned as it is.
+
+-- Lower-cases the scheme and authority of a URL like UrlIndexKeys.normalize, URL authorities are ASCII
+local function normalize(url)
+    local scheme_end = string.find(url, '://', 1, true)
+    if not scheme_end then
+        return url
+    end
+    local authority_end = string.find(url, '[/?#]', scheme_end + 3) or (#url + 1)
+    return string.lower(string.sub(url, 1, authority_end - 1)) .. string.sub(url, authority_end)
+end
+
+local function varint_at(value, position)
+    local length, multiplier = 0, 1
+    local current
+    repeat
+        current = string.byte(value, position)
+        position = position + 1
+        length = length + (current % 128) * multiplier
+        multiplier = multiplier * 128
+    until current < 128
+    return length, position
+end
+
+-- Binary entities hold the original URL as their first field, after the version byte and the expiry of version 2
+local function decode(value)
+    local version = string.byte(value, 1)
+    if version == 1 or version == 2 then
+        local expires_at = nil
+        local position = 2
+        if version == 2 then
+            expires_at = 0
+            for i = 2, 9 do
+                expires_at = expires_at * 256 + string.byte(value, i)
+            end
+            position = 10
+        end
+        local length
+        length, position = varint_at(value, position)
+        return string.sub(value, position, position + length - 1), expires_at
+    end
+    if version == 123 then
+        local decoded, entity = pcall(cjson.decode, value)
+        if decoded then
+            local expires_at = type(entity.expiresAt) == 'number' and entity.expiresAt or nil
+            return entity.originalUrl, expires_at
+        end
+    end
+    return nil, nil
+end
+
+local existing = redis.call('HGET', KEYS[1], ARGV[1])
+if not existing then
+    redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+    return ARGV[2]
+end
+
+local original_url, expires_at = decode(existing)
+if not original_url or normalize(original_url) ~= ARGV[3] then
+    return nil
+end
+if expires_at and expires_at <= tonumber(ARGV[4]) then
+    redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+    return ARGV[2]
+end
+return existing
@@ -0,0 +1,74 @@
+-- Claims a batch of candidate short codes of one primary hash bucket, each for its own original URL.
+--
+-- KEYS[1]: primary hash bucket of the short codes, short code -> entity
+-- ARGV[1]: current time, in epoch milliseconds
+-- ARGV[2..n]: triples of short code, serialized entity and normalized original URL
+--
+-- Returns one character per triple: '1' when the code is now mapped to the given entity, '0' when it is left as it
+-- was, held by another URL or by a live mapping of the same URL. Owners are told apart as in claim-short-code.lua.
+
+-- Lower-cases the scheme and authority of a URL like UrlIndexKeys.normalize, URL authorities are ASCII
+local function normalize(url)
+    local scheme_end = string.find(url, '://', 1, true)
+    if not scheme_end then
+        return url
+    end
+    local authority_end = string.find(url, '[/?#]', scheme_end + 3) or (#url + 1)
+    return string.lower(string.sub(url, 1, authority_end - 1)) .. string.sub(url, authority_end)
+end
+
+local function varint_at(value, position)
+    local length, multiplier = 0, 1
+    local current
+    repeat
+        current = string.byte(value, position)
+        position = position + 1
+        length = length + (current % 128) * multiplier
+        multiplier = multiplier * 128
+    until current < 128
+    return length, position
+end
+
+local function decode(value)
+    local version = string.byte(value, 1)
+    if version == 1 or version == 2 then
+        local expires_at = nil
+        local position = 2
+        if version == 2 then
+            expires_at = 0
+            for i = 2, 9 do
+                expires_at = expires_at * 256 + string.byte(value, i)
+            end
+            position = 10
+        end
+        local length
+        length, position = varint_at(value, position)
+        return string.sub(value, position, position + length - 1), expires_at
+    end
+    if version == 123 then
+        local decoded, entity = pcall(cjson.decode, value)
+        if decoded then
+            local expires_at = type(entity.expiresAt) == 'number' and entity.expiresAt or nil
+            return entity.originalUrl, expires_at
+        end
+    end
+    return nil, nil
+end
+
+local now = tonumber(ARGV[1])
+local claimed = {}
+for i = 2, #ARGV, 3 do
+    local existing = redis.call('HGET', KEYS[1], ARGV[i])
+    local free = not existing
+    if existing then
+        local original_url, expires_at = decode(existing)
+        free = original_url ~= nil and normalize(original_url) == ARGV[i + 2] and expires_at ~= nil and expires_at <= now
+    end
+    if free then
+        redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+        claimed[#claimed + 1] = '1'
+    else
+        claimed[#claimed + 1] = '0'
+    end
+end
+return table.concat(claimed)
@@ -0,0 +1,40 @@
+-- Deletes the mappings of the given short codes that have expired, leaving alone the ones replaced meanwhile by a
+-- mapping that has not.
+--
+-- KEYS[1]: primary hash bucket, short code -> entity
+-- ARGV[1]: current time, in epoch milliseconds
+-- ARGV[2..n]: short codes
+--
+-- Returns the number of mappings deleted.
+
+-- Binary entities carry the expiry right after their version byte, JSON ones as their expiresAt field
+local function expiry_of(value)
+    local version = string.byte(value, 1)
+    if version == 2 then
+        local expires_at = 0
+        for i = 2, 9 do
+            expires_at = expires_at * 256 + string.byte(value, i)
+        end
+        return expires_at
+    end
+    if version == 123 then
+        local decoded, entity = pcall(cjson.decode, value)
+        if decoded and type(entity.expiresAt) == 'number' then
+            return entity.expiresAt
+        end
+    end
+    return nil
+end
+
+local now = tonumber(ARGV[1])
+local deleted = 0
+for i = 2, #ARGV do
+    local value = redis.call('HGET', KEYS[1], ARGV[i])
+    if value then
+        local expires_at = expiry_of(value)
+        if expires_at and expires_at <= now then
+            deleted = deleted + redis.call('HDEL', KEYS[1], ARGV[i])
+        end
+    end
+end
+return deleted
@@ -0,0 +1,14 @@
+-- Deletes the reverse index entries that still point to the given short codes, so an URL shortened again meanwhile
+-- keeps its new entry.
+--
+-- KEYS[1]: reverse index bucket, original URL digest -> short code
+-- ARGV: pairs of original URL digest and short code
+--
+-- Returns the number of entries deleted.
+local deleted = 0
+for i = 1, #ARGV, 2 do
+    if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then
+        deleted = deleted + redis.call('HDEL', KEYS[1], ARGV[i])
+    end
+end
+return deleted
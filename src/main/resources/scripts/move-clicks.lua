@@ -0,0 +1,13 @@
+-- Adds click counts moved out of a previous bucket, at most once per field, so a retried move does not count twice.
+--
+-- KEYS[1]: click counts key of the current bucket
+-- KEYS[2]: moved marker key of the same bucket
+-- ARGV[1]: short code
+-- ARGV[2]: count read from the previous bucket
+--
+-- Returns 1 when the count was added, 0 when it had already been moved.
+if redis.call('HSETNX', KEYS[2], ARGV[1], '1') == 1 then
+    redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+    return 1
+end
+return 0
@@ -0,0 +1,10 @@
+-- Releases a lock, unless it expired meanwhile and was taken by another holder.
+--
+-- KEYS[1]: lock key
+-- ARGV[1]: token of the holder releasing it
+--
+-- Returns 1 when the lock was released, 0 otherwise.
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,80 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.service.UrlShorteningService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedirectHandlerTest {
+
+    private UrlShorteningService urlShorteningService;
+    private WebTestClient webTestClient;
+
+    private final String longUrl = "https://goo.gl/maps/pRUToXUPmTvYwyAb9";
+    private final String shortenedUrlId = "5g2IXsE3vG";
+
+    @BeforeEach
+    void setUp() {
+        urlShorteningService = Mockito.mock(UrlShorteningService.class);
+        ShorternerApiConfiguration apiConfiguration = Mockito.mock(ShorternerApiConfiguration.class);
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+
+        RedirectHandler redirectHandler = new RedirectHandler(urlShorteningService, apiConfiguration, new SimpleMeterRegistry());
+        webTestClient = WebTestClient.bindToRouterFunction(new RedirectRouter().redirectRoute(redirectHandler)).build();
+    }
+
+    @Test
+    @DisplayName("redirect - Should redirect to the original URL when the short code exists")
+    void redirectExistingShortCode() {
+        when(urlShorteningService.findRedirect(shortenedUrlId)).thenReturn(Mono.just(new UrlModel(longUrl, shortenedUrlId)));
+
+        webTestClient.get()
+                .uri("/" + shortenedUrlId)
+                .exchange()
+                .expectStatus().isFound()
+                .expectHeader().valueEquals(HttpHeaders.LOCATION, longUrl);
+    }
+
+    @Test
+    @DisplayName("redirect - Should return 404 when the short code does not exist")
+    void redirectMissingShortCode() {
+        when(urlShorteningService.findRedirect(shortenedUrlId)).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri("/" + shortenedUrlId)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Unique Identifier of URL not found");
+    }
+
+    @Test
+    @DisplayName("redirect - Should leave invalid short codes to the controller")
+    void redirectInvalidShortCode() {
+        webTestClient.get()
+                .uri("/favicon.ico")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        verify(urlShorteningService, never()).findRedirect(anyString());
+    }
+
+    @Test
+    @DisplayName("location - Should encode only non-ASCII original URLs")
+    void location() {
+        assertEquals(longUrl, RedirectHandler.location(longUrl));
+        assertEquals("https://example.com/caf%C3%A9", RedirectHandler.location("https://example.com/café"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.vivyteam.controller;
+
+import com.github.vivyteam.service.utils.StageTimers;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestObservationFilterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        RequestObservationFilter filter = new RequestObservationFilter(Duration.ofSeconds(1), meterRegistry);
+
+        webTestClient = WebTestClient.bindToRouterFunction(RouterFunctions.route()
+                        .GET("/ok", request -> ServerResponse.ok().bodyValue("ok"))
+                        .build())
+                .webFilter(filter)
+                .build();
+    }
+
+    @Test
+    @DisplayName("filter - Should time the response write of a committed response")
+    void timeResponseWrite() {
+        webTestClient.get().uri("/ok").exchange().expectStatus().isOk();
+
+        assertEquals(1, responseWriteStage().count());
+    }
+
+    private Timer responseWriteStage() {
+        return meterRegistry.get("shortener.stage").tag("stage", StageTimers.RESPONSE_WRITE).timer();
+    }
+}
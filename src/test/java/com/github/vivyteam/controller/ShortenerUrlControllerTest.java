@@ -3,26 +3,38 @@ package com.github.vivyteam.controller;
 import com.github.vivyteam.configuration.ShorternerApiConfiguration;
 import com.github.vivyteam.exception.InvalidShortenedUrlException;
 import com.github.vivyteam.exception.UrlNotFoundException;
+import com.github.vivyteam.model.ShortenResultModel;
 import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.model.UrlStatsModel;
 import com.github.vivyteam.service.UrlShorteningService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @WebFluxTest(ShortenerUrlController.class)
+@Import(SimpleMeterRegistry.class)
 class ShortenerUrlControllerTest {
 
 
@@ -46,7 +58,10 @@ class ShortenerUrlControllerTest {
     @BeforeEach
     void setUp() {
         when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
-        when(urlShorteningService.createShortUrl(longUrl)).thenReturn(Mono.just(new UrlModel(longUrl, shortenedUrl)));
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getMaxTtl()).thenReturn(Duration.ofDays(365));
+        when(apiConfiguration.getBulkChunkSize()).thenReturn(100);
+        when(urlShorteningService.createShortUrl(longUrl, null)).thenReturn(Mono.just(new UrlModel(longUrl, shortenedUrl)));
     }
 
     @Test
@@ -96,7 +111,99 @@ class ShortenerUrlControllerTest {
                 .expectBody()
                 .jsonPath("$.shortenedUrl").isEqualTo(shortenedUrl);
 
-        Mockito.verify(urlShorteningService, times(2)).createShortUrl(longUrl);
+        verify(urlShorteningService, times(2)).createShortUrl(longUrl, null);
+    }
+
+    @Test
+    @DisplayName("shortenUrl - Should pass the ttl on when it is within the maximum")
+    void shortenUrlWithTtl() {
+        Instant expiresAt = Instant.parse("2030-01-01T00:00:00Z");
+        when(urlShorteningService.createShortUrl(longUrl, Duration.ofHours(1)))
+                .thenReturn(Mono.just(new UrlModel(longUrl, shortenedUrl, expiresAt)));
+
+        webTestClient.post()
+                .uri(SHORTEN_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue("{\"originalUrl\": \"" + longUrl + "\", \"ttl\": \"PT1H\"}"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.shortenedUrl").isEqualTo(shortenedUrl)
+                .jsonPath("$.expiresAt").exists();
+    }
+
+    @Test
+    @DisplayName("shortenUrl - Should return 400 when the ttl is over the maximum")
+    void shortenUrlWithTooLongTtl() {
+        webTestClient.post()
+                .uri(SHORTEN_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue("{\"originalUrl\": \"" + longUrl + "\", \"ttl\": \"P366D\"}"))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(urlShorteningService, never()).createShortUrl(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("shortenUrls - Should stream one result per URL of a JSON array")
+    void shortenUrlsFromJsonArray() {
+        when(urlShorteningService.createShortUrls(any()))
+                .thenAnswer(invocation -> invocation.<Flux<String>>getArgument(0)
+                        .map(originalUrl -> ShortenResultModel.shortened(new UrlModel(originalUrl, shortenedUrl))));
+
+        webTestClient.post()
+                .uri("/shorten-urls")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(fromValue("[{\"originalUrl\": \"" + longUrl + "\"}, {\"originalUrl\": \"https://example.com\"}]"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(UrlModel.class)
+                .contains(new UrlModel(longUrl, shortenedUrl), new UrlModel("https://example.com", shortenedUrl));
+    }
+
+    @Test
+    @DisplayName("shortenUrls - Should answer invalid URLs with an error record and shorten the others")
+    void shortenUrlsRejectsInvalidItems() {
+        when(urlShorteningService.createShortUrls(any()))
+                .thenAnswer(invocation -> invocation.<Flux<String>>getArgument(0)
+                        .map(originalUrl -> ShortenResultModel.shortened(new UrlModel(originalUrl, shortenedUrl))));
+
+        List<ShortenResultModel> results = webTestClient.post()
+                .uri("/shorten-urls")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(fromValue("{\"originalUrl\": \"not a url\"}\n{\"originalUrl\": \"" + longUrl + "\"}\n"
+                        + "{\"originalUrl\": \"https://example.com\", \"ttl\": \"PT1H\"}\n"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(ShortenResultModel.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertEquals(3, results.size());
+        assertEquals(ShortenResultModel.shortened(new UrlModel(longUrl, shortenedUrl)),
+                results.stream().filter(result -> result.error() == null).findFirst().orElseThrow());
+        assertEquals(2, results.stream().filter(result -> result.error() != null && result.shortenedUrl() == null).count());
+    }
+
+    @Test
+    @DisplayName("shortenUrls - Should accept an NDJSON stream of URLs")
+    void shortenUrlsFromNdjson() {
+        when(urlShorteningService.createShortUrls(any()))
+                .thenAnswer(invocation -> invocation.<Flux<String>>getArgument(0)
+                        .map(originalUrl -> ShortenResultModel.shortened(new UrlModel(originalUrl, shortenedUrl))));
+
+        webTestClient.post()
+                .uri("/shorten-urls")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(fromValue("{\"originalUrl\": \"" + longUrl + "\"}\n{\"originalUrl\": \"https://example.com\"}\n"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(UrlModel.class)
+                .hasSize(2);
     }
 
 
@@ -144,10 +251,25 @@ class ShortenerUrlControllerTest {
                 .expectBody(String.class).isEqualTo("Unique Identifier of URL not found: " + nonExistentShortUrl);
     }
 
+    @Test
+    @DisplayName("getUrlStats - Should return 200 with the click count of the shortened url")
+    void getUrlStatsValidShortenedUrl() {
+        when(urlShorteningService.findUrlStats(shortenedUrlId))
+                .thenReturn(Mono.just(new UrlStatsModel(longUrl, shortenedUrl, 42)));
+
+        webTestClient.get()
+                .uri("/stats/" + shortenedUrlId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.shortenedUrl").isEqualTo(shortenedUrl)
+                .jsonPath("$.clicks").isEqualTo(42);
+    }
+
     @Test
     @DisplayName("redirectToOriginalUrl - Should redirect to the original URL when the shortened URL is valid")
     void redirectToOriginalUrlValidShortenedUrl() {
-        when(urlShorteningService.findShortUrlAndRedirect(apiConfiguration.getDomainUrl() + shortenedUrlId))
+        when(urlShorteningService.findShortUrlAndRedirect(shortenedUrlId))
                 .thenReturn(Mono.just(new UrlModel(longUrl, shortenedUrl)));
 
         webTestClient.get()
@@ -160,7 +282,7 @@ class ShortenerUrlControllerTest {
     @Test
     @DisplayName("redirectToOriginalUrl - Should return 400 when the shortened URL is invalid")
     void redirectToOriginalUrlInvalidShortenedUrl() {
-        when(urlShorteningService.findShortUrlAndRedirect(apiConfiguration.getDomainUrl() + invalidShortUrlId))
+        when(urlShorteningService.findShortUrlAndRedirect(invalidShortUrlId))
                 .thenReturn(Mono.error(new InvalidShortenedUrlException("Invalid shortened URL argument: " + invalidShortUrlId)));
 
         webTestClient.get()
@@ -170,10 +292,37 @@ class ShortenerUrlControllerTest {
                 .expectBody(String.class).isEqualTo("Invalid shortened URL argument: " + invalidShortUrlId);
     }
 
+    @Test
+    @DisplayName("redirectToOriginalUrl - Should return 400 without a lookup when the id is not a base62 code")
+    void redirectToOriginalUrlNonBase62ShortenedUrl() {
+        String nonBase62ShortUrlId = "1234-bCd";
+
+        webTestClient.get()
+                .uri("/" + nonBase62ShortUrlId)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Invalid shortened URL argument: " + nonBase62ShortUrlId);
+
+        verify(urlShorteningService, never()).findShortUrlAndRedirect(anyString());
+    }
+
+    @Test
+    @DisplayName("redirectToOriginalUrl - Should return 400 without a lookup when the id is longer than any code")
+    void redirectToOriginalUrlTooLongShortenedUrl() {
+        String tooLongShortUrlId = "5g2IXsE3vGx";
+
+        webTestClient.get()
+                .uri("/" + tooLongShortUrlId)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(urlShorteningService, never()).findShortUrlAndRedirect(anyString());
+    }
+
     @Test
     @DisplayName("redirectToOriginalUrl - Should return 404 when the shortened URL does not exist")
     void redirectToOriginalUrlNonExistentShortenedUrl() {
-        when(urlShorteningService.findShortUrlAndRedirect(apiConfiguration.getDomainUrl() + nonExistentShortUrlId))
+        when(urlShorteningService.findShortUrlAndRedirect(nonExistentShortUrlId))
                 .thenReturn(Mono.error(new UrlNotFoundException("Unique Identifier of URL not found: " + nonExistentShortUrlId)));
 
         webTestClient.get()
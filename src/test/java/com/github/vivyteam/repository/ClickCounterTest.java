@@ -0,0 +1,143 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.ClickCountingConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClickCounterTest {
+
+    private ReactiveHashOperations<String, String, String> clickOperations;
+    private ReactiveHashOperations<String, String, String> readClickOperations;
+    private HotLinkTracker hotLinkTracker;
+    private SimpleMeterRegistry meterRegistry;
+    private ClickCounter clickCounter;
+
+    private final String shortCode = "5g2IXsE";
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveStringRedisTemplate stringRedisTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        ReactiveStringRedisTemplate readStringRedisTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        clickOperations = Mockito.mock(ReactiveHashOperations.class);
+        readClickOperations = Mockito.mock(ReactiveHashOperations.class);
+        when(stringRedisTemplate.<String, String>opsForHash()).thenReturn(clickOperations);
+        when(readStringRedisTemplate.<String, String>opsForHash()).thenReturn(readClickOperations);
+
+        ClickCountingConfiguration clickCountingConfiguration = Mockito.mock(ClickCountingConfiguration.class);
+        when(clickCountingConfiguration.isEnabled()).thenReturn(true);
+        when(clickCountingConfiguration.getFlushPeriod()).thenReturn(Duration.ofSeconds(5));
+        when(clickCountingConfiguration.getMaxPendingCodes()).thenReturn(2);
+
+        hotLinkTracker = Mockito.mock(HotLinkTracker.class);
+        meterRegistry = new SimpleMeterRegistry();
+        clickCounter = new ClickCounter(stringRedisTemplate, readStringRedisTemplate, clickCountingConfiguration,
+                new UrlKeyBuckets(1, 1), hotLinkTracker, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("flush - Should send one HINCRBY per short code with the clicks counted since the last flush")
+    void flushAddsPendingClicks() {
+        when(clickOperations.increment(ClickCounter.REDIS_KEY, shortCode, 3L)).thenReturn(Mono.just(3L));
+
+        clickCounter.increment(shortCode);
+        clickCounter.increment(shortCode);
+        clickCounter.increment(shortCode);
+
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(3L)
+                .verifyComplete();
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(0L)
+                .verifyComplete();
+
+        verify(clickOperations).increment(anyString(), anyString(), anyLong());
+        verify(hotLinkTracker).record(shortCode, 3L);
+    }
+
+    @Test
+    @DisplayName("flush - Should keep the clicks of a failed flush for the next one")
+    void flushFailureKeepsClicks() {
+        when(clickOperations.increment(ClickCounter.REDIS_KEY, shortCode, 2L))
+                .thenReturn(Mono.error(new IllegalStateException("Redis down")))
+                .thenReturn(Mono.just(2L));
+
+        clickCounter.increment(shortCode);
+        clickCounter.increment(shortCode);
+
+        StepVerifier.create(clickCounter.flush())
+                .verifyError(IllegalStateException.class);
+        verify(hotLinkTracker, never()).record(anyString(), anyLong());
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("flush - Should count the clicks of a code again after dropping it as idle")
+    void flushDropsIdleCodes() {
+        when(clickOperations.increment(ClickCounter.REDIS_KEY, shortCode, 1L)).thenReturn(Mono.just(1L));
+
+        clickCounter.increment(shortCode);
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(0L)
+                .verifyComplete();
+        assertEquals(0, meterRegistry.get("shortener.clicks.pending-codes").gauge().value());
+
+        clickCounter.increment(shortCode);
+        StepVerifier.create(clickCounter.flush())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("increment - Should drop the clicks of new codes once too many are pending")
+    void incrementBoundsPendingCodes() {
+        when(clickOperations.increment(anyString(), anyString(), anyLong()))
+                .thenReturn(Mono.error(new IllegalStateException("Redis down")));
+
+        clickCounter.increment("AAAAAAA");
+        clickCounter.increment("BBBBBBB");
+        StepVerifier.create(clickCounter.flush())
+                .verifyError(IllegalStateException.class);
+        clickCounter.increment("CCCCCCC");
+        clickCounter.increment("AAAAAAA");
+
+        assertEquals(2, meterRegistry.get("shortener.clicks.pending-codes").gauge().value());
+        assertEquals(1, meterRegistry.get("shortener.clicks.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("totalClicks - Should add the clicks not flushed yet to the Redis count")
+    void totalClicksMergesPendingClicks() {
+        when(readClickOperations.get(ClickCounter.REDIS_KEY, shortCode)).thenReturn(Mono.just("40"));
+
+        clickCounter.increment(shortCode);
+        clickCounter.increment(shortCode);
+
+        StepVerifier.create(clickCounter.totalClicks(shortCode))
+                .expectNext(42L)
+                .verifyComplete();
+
+        verify(clickOperations, never()).increment(anyString(), anyString(), anyLong());
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.CodeGeneratorConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CodeSequenceTest {
+
+    private ReactiveValueOperations<String, String> valueOperations;
+    private SimpleMeterRegistry meterRegistry;
+    private CodeSequence codeSequence;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveStringRedisTemplate stringRedisTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        valueOperations = Mockito.mock(ReactiveValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        CodeGeneratorConfiguration codeGeneratorConfiguration = Mockito.mock(CodeGeneratorConfiguration.class);
+        when(codeGeneratorConfiguration.getLeaseSize()).thenReturn(10);
+
+        meterRegistry = new SimpleMeterRegistry();
+        codeSequence = new CodeSequence(stringRedisTemplate, codeGeneratorConfiguration, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("next - Should hand out the ids of each leased range once, leasing the next range before running out")
+    void nextHandsOutLeasedRanges() {
+        // Another node leased [10, 20), so this node gets [0, 10) and then [20, 30)
+        when(valueOperations.increment(CodeSequence.REDIS_KEY, 10L)).thenReturn(Mono.just(10L), Mono.just(30L));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            ids.add(codeSequence.next().block());
+        }
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 20L, 21L, 22L, 23L, 24L), ids);
+        verify(valueOperations, times(2)).increment(CodeSequence.REDIS_KEY, 10L);
+        assertEquals(2, meterRegistry.get("shortener.code-sequence.leases").counter().count());
+        assertEquals(5, meterRegistry.get("shortener.code-sequence.remaining").gauge().value());
+    }
+
+    @Test
+    @DisplayName("next - Should fail while the lease fails and lease again on the next call")
+    void nextRetriesFailedLease() {
+        when(valueOperations.increment(CodeSequence.REDIS_KEY, 10L))
+                .thenReturn(Mono.error(new IllegalStateException("Redis unavailable")), Mono.just(10L));
+
+        StepVerifier.create(codeSequence.next())
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(codeSequence.next())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+}
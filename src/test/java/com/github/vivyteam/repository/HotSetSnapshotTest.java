@@ -0,0 +1,53 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.repository.NearCacheUrlRepository.HotMapping;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HotSetSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("write - Should read back the mappings in order, replacing the previous snapshot")
+    void readWrittenSnapshot() throws IOException {
+        Path file = directory.resolve("hot-set.snapshot");
+        List<HotMapping> mappings = List.of(
+                new HotMapping("5g2IXsE3vG", "https://goo.gl/maps/pRUToXUPmTvYwyAb9", 420),
+                new HotMapping("1234AbCd", "https://example.com/ünïcode", 7),
+                new HotMapping("AbCd1234", "https://example.com/expiring", Instant.ofEpochMilli(1_900_000_000_000L), 3));
+
+        HotSetSnapshot.write(file, List.of(new HotMapping("previous", "https://example.com/previous", 1)));
+        HotSetSnapshot.write(file, mappings);
+
+        assertEquals(mappings, HotSetSnapshot.read(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("read - Should reject a snapshot whose content does not match its checksum")
+    void rejectCorruptedSnapshot() throws IOException {
+        Path file = directory.resolve("hot-set.snapshot");
+        HotSetSnapshot.write(file, List.of(new HotMapping("5g2IXsE3vG", "https://goo.gl/maps/pRUToXUPmTvYwyAb9", 420)));
+
+        byte[] bytes = Files.readAllBytes(file);
+        // the last byte of the hit count, right before the checksum
+        bytes[bytes.length - Long.BYTES - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> HotSetSnapshot.read(file));
+    }
+}
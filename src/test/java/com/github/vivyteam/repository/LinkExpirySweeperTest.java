@@ -0,0 +1,191 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.ExpiryConfiguration;
+import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.model.UrlModel;
+import io.lettuce.core.resource.ClientResources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@SpringBootTest(properties = {
+        "spring.main.allow-bean-definition-overriding=true",
+        "app.shortener.expiry.sweeper-enabled=false",
+        "app.shortener.expiry.batch-size=2",
+        "app.shortener.expiry.max-deletes-per-second=1000"
+})
+@Testcontainers
+class LinkExpirySweeperTest {
+
+    @Autowired
+    private LinkExpirySweeper linkExpirySweeper;
+    @Autowired
+    private ExpiryIndex expiryIndex;
+    @Autowired
+    private ExpiryConfiguration expiryConfiguration;
+    @Autowired
+    private RedisUrlRepository redisUrlRepository;
+    @Autowired
+    private ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate;
+    @Autowired
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private UrlKeyBuckets urlKeyBuckets;
+    private long now;
+
+    @Container
+    public static GenericContainer<?> redisContainer = new GenericContainer<>("redis:latest")
+            .withExposedPorts(6379);
+
+    @DynamicPropertySource
+    private static void registerRedisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379).toString());
+    }
+
+    @TestConfiguration
+    static class TestRedisConfiguration extends RedisConfiguration {
+
+        @Bean
+        @Primary
+        public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory(ClientResources clientResources) {
+            RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration(redisContainer.getHost(), redisContainer.getFirstMappedPort());
+            return new LettuceConnectionFactory(redisConfig, LettuceClientConfiguration.builder().clientResources(clientResources).build());
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate.getConnectionFactory().getReactiveConnection().serverCommands().flushAll().block();
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    @DisplayName("sweep - Should delete the expired links in batches and retire their drained bucket")
+    void sweepExpiredLinks() {
+        Instant expired = Instant.ofEpochMilli(now).minus(expiryConfiguration.getBucketWidth().multipliedBy(2));
+        List<UrlModel> expiredLinks = List.of(create(expired), create(expired), create(expired));
+        UrlModel live = create(Instant.ofEpochMilli(now).plus(Duration.ofHours(1)));
+
+        StepVerifier.create(linkExpirySweeper.sweep(now))
+                .expectNext(3L)
+                .verifyComplete();
+
+        for (UrlModel urlModel : expiredLinks) {
+            StepVerifier.create(reactiveRedisTemplate.opsForHash().hasKey(urlKeyBuckets.primaryKey(urlModel.shortenedUrl()), urlModel.shortenedUrl()))
+                    .expectNext(false)
+                    .verifyComplete();
+            String digest = UrlIndexKeys.of(urlModel.originalUrl());
+            StepVerifier.create(stringRedisTemplate.opsForHash().get(urlKeyBuckets.indexKey(digest), digest))
+                    .verifyComplete();
+        }
+        StepVerifier.create(stringRedisTemplate.opsForZSet().size(ExpiryIndex.key(bucketOf(expired))))
+                .expectNext(0L)
+                .verifyComplete();
+        StepVerifier.create(expiryIndex.dueBuckets(live.expiresAt().toEpochMilli()))
+                .expectNext(bucketOf(live.expiresAt()))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(live.shortenedUrl()))
+                .expectNext(live)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("sweep - Should leave the expired links alone while another node holds the lock")
+    void sweepLockedByAnotherNode() {
+        UrlModel expired = create(Instant.ofEpochMilli(now - 1000));
+        stringRedisTemplate.opsForValue().set(LinkExpirySweeper.LOCK_KEY, "another-node", Duration.ofMinutes(1)).block();
+
+        StepVerifier.create(linkExpirySweeper.sweep(now))
+                .verifyComplete();
+        StepVerifier.create(reactiveRedisTemplate.opsForHash().hasKey(urlKeyBuckets.primaryKey(expired.shortenedUrl()), expired.shortenedUrl()))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("sweep - Should release the lock once done, so the next sweep runs")
+    void sweepReleasesLock() {
+        create(Instant.ofEpochMilli(now - 1000));
+
+        StepVerifier.create(linkExpirySweeper.sweep(now))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(linkExpirySweeper.sweep(now))
+                .expectNext(0L)
+                .verifyComplete();
+        StepVerifier.create(stringRedisTemplate.hasKey(LinkExpirySweeper.LOCK_KEY))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("retireIfDrained - Should keep a bucket that is not over yet or still holds codes")
+    void retireOnlyDrainedBuckets() {
+        Instant expiresAt = Instant.ofEpochMilli(now).plus(Duration.ofHours(1));
+        UrlModel urlModel = create(expiresAt);
+        long bucket = bucketOf(expiresAt);
+        long afterBucket = (bucket + 1) * expiryConfiguration.getBucketWidth().toMillis();
+
+        StepVerifier.create(expiryIndex.retireIfDrained(bucket, now))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(expiryIndex.retireIfDrained(bucket, afterBucket))
+                .expectNext(false)
+                .verifyComplete();
+
+        expiryIndex.remove(bucket, List.of(urlModel.shortenedUrl())).block();
+        StepVerifier.create(expiryIndex.retireIfDrained(bucket, afterBucket))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(expiryIndex.dueBuckets(afterBucket))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("deleteExpired - Should keep the index entry of a URL shortened again meanwhile")
+    void deleteExpiredKeepsRepointedIndexEntry() {
+        UrlModel expired = create(Instant.ofEpochMilli(now - 1000));
+        UrlModel replacement = new UrlModel(expired.originalUrl(), UUID.randomUUID().toString());
+        redisUrlRepository.save(replacement).block();
+
+        StepVerifier.create(redisUrlRepository.deleteExpired(List.of(expired.shortenedUrl()), now))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByOriginalUrl(expired.originalUrl()))
+                .expectNext(replacement)
+                .verifyComplete();
+    }
+
+    private UrlModel create(Instant expiresAt) {
+        return redisUrlRepository.create("https://example.com/" + UUID.randomUUID(), List.of(UUID.randomUUID().toString()),
+                Instant.ofEpochMilli(expiresAt.toEpochMilli())).block();
+    }
+
+    private long bucketOf(Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), expiryConfiguration.getBucketWidth().toMillis());
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.MirrorConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.model.UrlModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MappingMirrorTest {
+
+    private final Sinks.Many<ReactiveSubscription.Message<String, String>> changes = Sinks.many().multicast().directBestEffort();
+    private ReactiveRedisTemplate<String, UrlEntity> readTemplate;
+    private ReactiveHashOperations<String, String, UrlEntity> mappings;
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+    private MirrorConfiguration mirrorConfiguration;
+    private MigrationConfiguration migrationConfiguration;
+    private SimpleMeterRegistry meterRegistry;
+    private MappingMirror mappingMirror;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        readTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        mappings = Mockito.mock(ReactiveHashOperations.class);
+        stringRedisTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        when(readTemplate.<String, UrlEntity>opsForHash()).thenReturn(mappings);
+        when(mappings.scan(anyString(), any())).thenReturn(Flux.empty());
+        doReturn(changes.asFlux()).when(stringRedisTemplate).listenToChannel(MappingMirror.CHANGES_CHANNEL);
+        when(stringRedisTemplate.convertAndSend(anyString(), anyString())).thenReturn(Mono.just(1L));
+
+        mirrorConfiguration = Mockito.mock(MirrorConfiguration.class);
+        when(mirrorConfiguration.isEnabled()).thenReturn(true);
+        when(mirrorConfiguration.getExpectedEntries()).thenReturn(16);
+        when(mirrorConfiguration.getChunkSize()).thenReturn(DataSize.ofKilobytes(64));
+        when(mirrorConfiguration.getResyncPeriod()).thenReturn(Duration.ofHours(1));
+        migrationConfiguration = Mockito.mock(MigrationConfiguration.class);
+        when(migrationConfiguration.getBatchSize()).thenReturn(100);
+
+        meterRegistry = new SimpleMeterRegistry();
+        mappingMirror = newMirror(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mappingMirror.stop();
+    }
+
+    @Test
+    @DisplayName("applyMessage - Should apply the messages of nodes that do not version them yet")
+    void applyUnversionedMessage() throws InterruptedException {
+        startAndAwaitLoad();
+
+        receive("1700000000000\nAbCdEfG\t19\thttps://example.com");
+
+        StepVerifier.create(mappingMirror.findByShortenedUrl("AbCdEfG", Mono::empty))
+                .expectNext(new UrlModel("https://example.com", "AbCdEfG"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("applyMessage - Should skip unknown versions and malformed messages and keep listening")
+    void skipUnknownAndMalformedMessages() throws InterruptedException {
+        startAndAwaitLoad();
+
+        receive("9\t1700000000000\nAbCdEfG\t0\t19\thttps://example.com");
+        receive("2\t1700000000000\nAbCdEfG\tsoon\t19\thttps://example.com");
+        receive("2\t1700000000000\nHiJkLmN\t0\t19\thttps://example.org");
+
+        assertEquals(2, meterRegistry.get("shortener.mirror.skipped-messages").counter().count());
+        StepVerifier.create(mappingMirror.findByShortenedUrl("AbCdEfG", Mono::empty))
+                .verifyComplete();
+        StepVerifier.create(mappingMirror.findByShortenedUrl("HiJkLmN", Mono::empty))
+                .expectNext(new UrlModel("https://example.org", "HiJkLmN"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should look the codes the mirror does not know up in Redis")
+    void findUnknownCodeInRedis() throws InterruptedException {
+        startAndAwaitLoad();
+        UrlModel missed = new UrlModel("https://example.com/missed", "MiSsEdC");
+
+        StepVerifier.create(mappingMirror.findByShortenedUrl(missed.shortenedUrl(), () -> Mono.just(missed)))
+                .expectNext(missed)
+                .verifyComplete();
+        assertEquals(1, meterRegistry.get("shortener.mirror.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    @DisplayName("publish - Should publish messages the other nodes read back as written")
+    void publishRoundTrip() throws InterruptedException {
+        startAndAwaitLoad();
+        MappingMirror publisher = newMirror(new SimpleMeterRegistry());
+        UrlModel permanent = new UrlModel("https://example.com/a\tb\nc", "AbCdEfG");
+        UrlModel expiring = new UrlModel("https://example.com/later", "HiJkLmN", Instant.now().plus(1, ChronoUnit.HOURS));
+        UrlModel expired = new UrlModel("https://example.com/gone", "OpQrStU", Instant.now().minus(1, ChronoUnit.HOURS));
+
+        StepVerifier.create(publisher.publish(List.of(permanent, expiring, expired)))
+                .expectNext(1L)
+                .verifyComplete();
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(stringRedisTemplate).convertAndSend(eq(MappingMirror.CHANGES_CHANNEL), message.capture());
+        receive(message.getValue());
+
+        assertEquals(0, meterRegistry.get("shortener.mirror.skipped-messages").counter().count());
+        StepVerifier.create(mappingMirror.findByShortenedUrl("AbCdEfG", Mono::empty))
+                .expectNext(new UrlModel("https://example.com/a\tb\nc", "AbCdEfG"))
+                .verifyComplete();
+        StepVerifier.create(mappingMirror.findByShortenedUrl("HiJkLmN", Mono::empty))
+                .expectNext(new UrlModel("https://example.com/later", "HiJkLmN"))
+                .verifyComplete();
+        StepVerifier.create(mappingMirror.findByShortenedUrl("OpQrStU", Mono::empty))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("publish - Should complete when the message cannot be published")
+    void publishFailureIsBestEffort() throws InterruptedException {
+        when(stringRedisTemplate.convertAndSend(anyString(), anyString())).thenReturn(Mono.error(new IllegalStateException("down")));
+        startAndAwaitLoad();
+
+        StepVerifier.create(mappingMirror.publish(List.of(new UrlModel("https://example.com", "AbCdEfG"))))
+                .verifyComplete();
+
+        assertEquals(1, meterRegistry.get("shortener.mirror.publish-failures").counter().count());
+        StepVerifier.create(mappingMirror.findByShortenedUrl("AbCdEfG", Mono::empty))
+                .expectNext(new UrlModel("https://example.com", "AbCdEfG"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("resync - Should keep a write received while the scan read an older mapping")
+    void resyncKeepsNewerWrite() throws InterruptedException {
+        // The change arrives after the scan read the bucket, but before the stale entry reaches the rebuilt mirror
+        when(mappings.scan(anyString(), any())).thenReturn(Flux.defer(() -> {
+            receive("2\t1700000000000\nAbCdEfG\t0\t19\thttps://example.org");
+            return Flux.just(Map.entry("AbCdEfG", new UrlEntity("https://example.com", "AbCdEfG")));
+        }));
+        startAndAwaitLoad();
+
+        StepVerifier.create(mappingMirror.findByShortenedUrl("AbCdEfG", Mono::empty))
+                .expectNext(new UrlModel("https://example.org", "AbCdEfG"))
+                .verifyComplete();
+    }
+
+    private MappingMirror newMirror(SimpleMeterRegistry registry) {
+        return new MappingMirror(readTemplate, stringRedisTemplate, mirrorConfiguration, migrationConfiguration,
+                new UrlKeyBuckets(1, 1), registry);
+    }
+
+    private void receive(String message) {
+        changes.tryEmitNext(new ReactiveSubscription.ChannelMessage<>(MappingMirror.CHANGES_CHANNEL, message));
+    }
+
+    // The first load starts right away, on another thread
+    private void startAndAwaitLoad() throws InterruptedException {
+        mappingMirror.start();
+        for (int attempt = 0; attempt < 100 && Double.isNaN(meterRegistry.get("shortener.mirror.sync-age").gauge().value()); attempt++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Double.isNaN(meterRegistry.get("shortener.mirror.sync-age").gauge().value()), "Mirror was never loaded");
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.NearCacheConfiguration;
+import com.github.vivyteam.model.UrlModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearCacheUrlRepositoryTest {
+
+    private RedisUrlRepository redisUrlRepository;
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+    private ShortCodeFilter shortCodeFilter;
+    private MappingMirror mappingMirror;
+    private NearCacheUrlRepository nearCacheUrlRepository;
+
+    private final UrlModel urlModel = new UrlModel("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "https://myservicedomain.de/5g2IXsE3vG");
+
+    @BeforeEach
+    void setUp() {
+        redisUrlRepository = Mockito.mock(RedisUrlRepository.class);
+        stringRedisTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        shortCodeFilter = Mockito.mock(ShortCodeFilter.class);
+        mappingMirror = Mockito.mock(MappingMirror.class);
+        NearCacheConfiguration nearCacheConfiguration = Mockito.mock(NearCacheConfiguration.class);
+
+        when(nearCacheConfiguration.isEnabled()).thenReturn(true);
+        when(nearCacheConfiguration.getMaximumSize()).thenReturn(100L);
+        when(nearCacheConfiguration.getExpireAfterWrite()).thenReturn(Duration.ofMinutes(1));
+        when(stringRedisTemplate.convertAndSend(anyString(), anyString())).thenReturn(Mono.just(1L));
+        when(shortCodeFilter.mightContain(anyString())).thenReturn(true);
+        when(shortCodeFilter.add(anyList())).thenReturn(Mono.empty());
+        when(mappingMirror.publish(anyList())).thenReturn(Mono.empty());
+
+        nearCacheUrlRepository = new NearCacheUrlRepository(redisUrlRepository, stringRedisTemplate,
+                nearCacheConfiguration, shortCodeFilter, mappingMirror, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should serve repeated lookups from the near-cache")
+    void findByShortenedUrlServedFromCache() {
+        when(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl())).thenReturn(Mono.just(urlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(redisUrlRepository, times(1)).findByShortenedUrl(urlModel.shortenedUrl());
+    }
+
+    @Test
+    @DisplayName("save - Should invalidate the local entry and publish the invalidation")
+    void saveInvalidatesCachedEntry() {
+        when(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl())).thenReturn(Mono.just(urlModel));
+        when(redisUrlRepository.save(urlModel)).thenReturn(Mono.just(urlModel));
+
+        nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()).block();
+
+        StepVerifier.create(nearCacheUrlRepository.save(urlModel))
+                .expectNext(urlModel)
+                .verifyComplete();
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(stringRedisTemplate).convertAndSend(NearCacheUrlRepository.INVALIDATION_CHANNEL, urlModel.shortenedUrl());
+        verify(redisUrlRepository, times(2)).findByShortenedUrl(urlModel.shortenedUrl());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should not reach Redis for codes the filter knows do not exist")
+    void findByShortenedUrlRejectedByFilter() {
+        when(shortCodeFilter.mightContain("0000000")).thenReturn(false);
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl("0000000"))
+                .verifyComplete();
+
+        verify(redisUrlRepository, never()).findByShortenedUrl(anyString());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should check a rejected code in Redis while verifications are allowed")
+    void findByShortenedUrlVerifiesRejection() {
+        when(shortCodeFilter.mightContain(urlModel.shortenedUrl())).thenReturn(false);
+        when(shortCodeFilter.tryVerifyRejection()).thenReturn(true);
+        when(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl())).thenReturn(Mono.just(urlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(shortCodeFilter).recordFalseNegative(urlModel.shortenedUrl());
+    }
+
+    @Test
+    @DisplayName("create - Should add the new code to the filter")
+    void createAddsToFilter() {
+        when(redisUrlRepository.create(urlModel.originalUrl(), List.of(urlModel.shortenedUrl()), null)).thenReturn(Mono.just(urlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.create(urlModel.originalUrl(), List.of(urlModel.shortenedUrl())))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(shortCodeFilter).add(List.of(urlModel.shortenedUrl()));
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should drop a cached mapping once it has expired")
+    void findByShortenedUrlExpired() {
+        UrlModel expiredUrlModel = new UrlModel(urlModel.originalUrl(), urlModel.shortenedUrl(), Instant.now().minusSeconds(1));
+        when(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl())).thenReturn(Mono.just(expiredUrlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(expiredUrlModel)
+                .verifyComplete();
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .verifyComplete();
+
+        verify(redisUrlRepository, times(1)).findByShortenedUrl(urlModel.shortenedUrl());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should answer from the mirror when it is enabled")
+    void findByShortenedUrlServedFromMirror() {
+        when(mappingMirror.isEnabled()).thenReturn(true);
+        when(mappingMirror.findByShortenedUrl(anyString(), any())).thenReturn(Mono.just(urlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(redisUrlRepository, never()).findByShortenedUrl(anyString());
+    }
+
+    @Test
+    @DisplayName("save - Should publish the saved mapping to the mirror")
+    void savePublishesToMirror() {
+        when(redisUrlRepository.save(urlModel)).thenReturn(Mono.just(urlModel));
+
+        StepVerifier.create(nearCacheUrlRepository.save(urlModel))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(mappingMirror).publish(List.of(urlModel));
+    }
+
+    @Test
+    @DisplayName("warm - Should cache the snapshot mappings, replaced by their current version in Redis")
+    void warmFromSnapshot() {
+        UrlModel changed = new UrlModel("https://example.com/changed", "changed");
+        when(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl())).thenReturn(Mono.just(urlModel));
+        when(redisUrlRepository.findByShortenedUrl("changed")).thenReturn(Mono.just(changed));
+        when(redisUrlRepository.findByShortenedUrl("deleted")).thenReturn(Mono.empty());
+
+        StepVerifier.create(nearCacheUrlRepository.warm(List.of(
+                        new NearCacheUrlRepository.HotMapping(urlModel.shortenedUrl(), urlModel.originalUrl(), 10),
+                        new NearCacheUrlRepository.HotMapping("changed", "https://example.com/stale", 5),
+                        new NearCacheUrlRepository.HotMapping("deleted", "https://example.com/deleted", 1)), 4))
+                .expectNext(2L)
+                .verifyComplete();
+
+        StepVerifier.create(nearCacheUrlRepository.findByShortenedUrl("changed"))
+                .expectNext(changed)
+                .verifyComplete();
+        assertFalse(nearCacheUrlRepository.isCached("deleted"));
+        assertEquals(Set.of(urlModel.shortenedUrl(), "changed"), nearCacheUrlRepository.hottest(10).stream()
+                .map(NearCacheUrlRepository.HotMapping::shortCode)
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    @DisplayName("warm - Should keep the snapshot expiry when Redis fails and leave out the mappings already expired")
+    void warmExpiringFromSnapshot() {
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        when(redisUrlRepository.findByShortenedUrl(anyString())).thenReturn(Mono.error(new IllegalStateException("Redis is down")));
+
+        StepVerifier.create(nearCacheUrlRepository.warm(List.of(
+                        new NearCacheUrlRepository.HotMapping("expiring", "https://example.com/expiring", expiresAt, 10),
+                        new NearCacheUrlRepository.HotMapping("expired", "https://example.com/expired", Instant.now().minusSeconds(1), 5)), 4))
+                .expectNext(0L)
+                .verifyComplete();
+
+        assertFalse(nearCacheUrlRepository.isCached("expired"));
+        assertEquals(List.of(new NearCacheUrlRepository.HotMapping("expiring", "https://example.com/expiring", expiresAt, 10)),
+                nearCacheUrlRepository.hottest(10));
+    }
+}
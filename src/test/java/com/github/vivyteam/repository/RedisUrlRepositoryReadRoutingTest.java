@@ -0,0 +1,119 @@
+package com.github.vivyteam.repository;
+
+import com.github.vivyteam.configuration.MigrationConfiguration;
+import com.github.vivyteam.configuration.ReadRoutingConfiguration;
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.configuration.WriteBatchingConfiguration;
+import com.github.vivyteam.model.UrlEntity;
+import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.repository.codec.UrlEntityRedisSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisUrlRepositoryReadRoutingTest {
+
+    private ReactiveHashOperations<String, String, UrlEntity> primaryMappings;
+    private ReactiveHashOperations<String, String, UrlEntity> replicaMappings;
+    private ReactiveHashOperations<String, String, String> primaryIndex;
+    private RedisUrlRepository redisUrlRepository;
+
+    private final UrlModel urlModel = new UrlModel("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "5g2IXsE");
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveRedisTemplate<String, UrlEntity> primaryTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        ReactiveRedisTemplate<String, UrlEntity> replicaTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        ReactiveStringRedisTemplate primaryStringTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        ReactiveStringRedisTemplate replicaStringTemplate = Mockito.mock(ReactiveStringRedisTemplate.class);
+        primaryMappings = Mockito.mock(ReactiveHashOperations.class);
+        replicaMappings = Mockito.mock(ReactiveHashOperations.class);
+        primaryIndex = Mockito.mock(ReactiveHashOperations.class);
+
+        when(primaryTemplate.<String, UrlEntity>opsForHash()).thenReturn(primaryMappings);
+        when(replicaTemplate.<String, UrlEntity>opsForHash()).thenReturn(replicaMappings);
+        when(primaryStringTemplate.<String, String>opsForHash()).thenReturn(primaryIndex);
+        when(replicaStringTemplate.<String, String>opsForHash()).thenReturn(Mockito.mock(ReactiveHashOperations.class));
+
+        MigrationConfiguration migrationConfiguration = Mockito.mock(MigrationConfiguration.class);
+        ReadRoutingConfiguration readRoutingConfiguration = Mockito.mock(ReadRoutingConfiguration.class);
+        when(readRoutingConfiguration.isReadYourWritesEnabled()).thenReturn(true);
+        when(readRoutingConfiguration.getReadYourWritesWindow()).thenReturn(Duration.ofSeconds(5));
+        when(readRoutingConfiguration.getReadYourWritesMaximumSize()).thenReturn(100L);
+        when(readRoutingConfiguration.getMaxPrimaryRetriesPerSecond()).thenReturn(1);
+
+        redisUrlRepository = new RedisUrlRepository(primaryTemplate, primaryStringTemplate, replicaTemplate, replicaStringTemplate,
+                new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.BINARY), Mockito.mock(ShorternerApiConfiguration.class),
+                migrationConfiguration, new UrlKeyBuckets(1, 1), Mockito.mock(ExpiryIndex.class), readRoutingConfiguration,
+                Mockito.mock(WriteBatchingConfiguration.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should be served by the replica when it has the mapping")
+    void findByShortenedUrlFromReplica() {
+        when(replicaMappings.get(RedisUrlRepository.REDIS_KEY, urlModel.shortenedUrl())).thenReturn(Mono.just(UrlEntity.fromModel(urlModel)));
+
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(primaryMappings, never()).get(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should retry on the primary when the replica has not caught up yet")
+    void findByShortenedUrlFallsBackToPrimary() {
+        when(replicaMappings.get(RedisUrlRepository.REDIS_KEY, urlModel.shortenedUrl())).thenReturn(Mono.empty());
+        when(primaryMappings.get(RedisUrlRepository.REDIS_KEY, urlModel.shortenedUrl())).thenReturn(Mono.just(UrlEntity.fromModel(urlModel)));
+
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should keep replica misses on the replica beyond the primary retries allowed per second")
+    void findByShortenedUrlCapsPrimaryRetries() {
+        when(replicaMappings.get(anyString(), anyString())).thenReturn(Mono.empty());
+        when(primaryMappings.get(anyString(), any())).thenReturn(Mono.empty());
+
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(redisUrlRepository.findByShortenedUrl("unknown" + i)).verifyComplete();
+        }
+
+        // one retry per second, the calls may straddle two seconds
+        verify(primaryMappings, Mockito.atMost(2)).get(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should read a mapping this node just wrote from the primary")
+    void findByShortenedUrlReadsOwnWritesFromPrimary() {
+        when(primaryMappings.put(anyString(), anyString(), any())).thenReturn(Mono.just(true));
+        when(primaryIndex.put(anyString(), anyString(), anyString())).thenReturn(Mono.just(true));
+        when(primaryMappings.get(RedisUrlRepository.REDIS_KEY, urlModel.shortenedUrl())).thenReturn(Mono.just(UrlEntity.fromModel(urlModel)));
+
+        redisUrlRepository.save(urlModel).block();
+
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+
+        verify(replicaMappings, never()).get(anyString(), any());
+    }
+}
@@ -1,7 +1,9 @@
 package com.github.vivyteam.repository;
 
 import com.github.vivyteam.configuration.RedisConfiguration;
+import com.github.vivyteam.model.UrlEntity;
 import com.github.vivyteam.model.UrlModel;
+import io.lettuce.core.resource.ClientResources;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,7 +14,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.GenericContainer;
@@ -20,16 +25,31 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import reactor.test.StepVerifier;
 
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@SpringBootTest(properties = "spring.main.allow-bean-definition-overriding=true")
+@SpringBootTest(properties = {
+        "spring.main.allow-bean-definition-overriding=true",
+        "app.shortener.migration.legacy-lookup-enabled=true"
+})
 @Testcontainers
 class RedisUrlRepositoryTest {
 
     @Autowired
     private RedisUrlRepository redisUrlRepository;
+    @Autowired
+    private ReactiveRedisTemplate<String, UrlEntity> reactiveRedisTemplate;
+    @Autowired
+    private ReactiveStringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private UrlKeyBuckets urlKeyBuckets;
     private UrlModel urlModel;
 
     @Container
@@ -47,18 +67,18 @@ class RedisUrlRepositoryTest {
 
         @Bean
         @Primary
-        public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
+        public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory(ClientResources clientResources) {
             String redisContainerHost = redisContainer.getHost();
             int redisContainerPort = redisContainer.getFirstMappedPort();
 
             RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration(redisContainerHost, redisContainerPort);
-            return new LettuceConnectionFactory(redisConfig);
+            return new LettuceConnectionFactory(redisConfig, LettuceClientConfiguration.builder().clientResources(clientResources).build());
         }
     }
 
     @BeforeEach
     void setUp() {
-        urlModel = new UrlModel("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "https://myservicedomain.de/" + UUID.randomUUID());
+        urlModel = new UrlModel("https://goo.gl/maps/pRUToXUPmTvYwyAb9", UUID.randomUUID().toString());
     }
 
     @Test
@@ -85,6 +105,19 @@ class RedisUrlRepositoryTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("findByShortenedUrl - Should find mappings still stored under the legacy domain-prefixed URL")
+    void testFindByShortenedUrlLegacyField() {
+        String legacyShortenedUrl = "https://myservicedomain.de/" + urlModel.shortenedUrl();
+        reactiveRedisTemplate.opsForHash()
+                .put(RedisUrlRepository.REDIS_KEY, legacyShortenedUrl, new UrlEntity(urlModel.originalUrl(), legacyShortenedUrl))
+                .block();
+
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("findByOriginalUrl - Should find the URL mapping by its original URL")
     void testFindByOriginalUrl() {
@@ -97,21 +130,233 @@ class RedisUrlRepositoryTest {
 
 
     @Test
-    @DisplayName("findByOriginalUrl - Should find the URL mapping by its original URL and cache the result")
-    void findByOriginalUrlOnCache() {
-        UrlModel urlModel = new UrlModel("https://example.com/long-url", "https://short.url/short");
+    @DisplayName("findByOriginalUrl - Should find the URL mapping whatever the case of its scheme and host")
+    void testFindByOriginalUrlNormalized() {
+        UrlModel urlModel = new UrlModel("https://example.com/long-url/" + UUID.randomUUID(), "short");
         redisUrlRepository.save(urlModel).block();
 
-        StepVerifier.create(redisUrlRepository.findByOriginalUrl(urlModel.originalUrl()))
-                .expectNextMatches(foundUrl -> foundUrl.originalUrl().equals(urlModel.originalUrl()) &&
-                        foundUrl.shortenedUrl().equals(urlModel.shortenedUrl()))
+        StepVerifier.create(redisUrlRepository.findByOriginalUrl(urlModel.originalUrl().replace("https://example.com", "HTTPS://Example.COM")))
+                .expectNext(urlModel)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findByOriginalUrl - Should ignore a reverse index entry pointing to another URL")
+    void testFindByOriginalUrlIndexCollision() {
+        redisUrlRepository.save(urlModel).block();
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        String digest = UrlIndexKeys.of(originalUrl);
+        stringRedisTemplate.opsForHash()
+                .put(urlKeyBuckets.indexKey(digest), digest, urlModel.shortenedUrl())
+                .block();
+
+        StepVerifier.create(redisUrlRepository.findByOriginalUrl(originalUrl))
                 .verifyComplete();
+    }
 
-        // The cache should have the result after the first call
-        StepVerifier.create(redisUrlRepository.findByOriginalUrl(urlModel.originalUrl()))
-                .expectNextMatches(foundUrl -> foundUrl.originalUrl().equals(urlModel.originalUrl()) &&
-                        foundUrl.shortenedUrl().equals(urlModel.shortenedUrl()))
+    @Test
+    @DisplayName("findByOriginalUrl - Should find mappings still stored in the legacy index")
+    void testFindByOriginalUrlLegacyIndex() {
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        UrlEntity urlEntity = new UrlEntity(originalUrl, UUID.randomUUID().toString());
+        reactiveRedisTemplate.opsForHash().put(RedisUrlRepository.REDIS_KEY_LEGACY_INDEX, originalUrl, urlEntity).block();
+
+        StepVerifier.create(redisUrlRepository.findByOriginalUrl(originalUrl))
+                .expectNext(urlEntity.toModel())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("saveAll - Should save a batch of URL mappings and find them by their original URLs")
+    void testSaveAllAndFindAllByOriginalUrl() {
+        UrlModel otherUrlModel = new UrlModel("https://example.com/" + UUID.randomUUID(), UUID.randomUUID().toString());
+
+        StepVerifier.create(redisUrlRepository.saveAll(List.of(urlModel, otherUrlModel)))
+                .expectNext(urlModel, otherUrlModel)
+                .verifyComplete();
+
+        StepVerifier.create(redisUrlRepository.findAllByOriginalUrl(List.of(otherUrlModel.originalUrl(), "https://example.com/missing")))
+                .expectNext(otherUrlModel)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("createAll - Should move to the next candidate when a code belongs to another URL")
+    void testCreateAllWithCollision() {
+        redisUrlRepository.save(urlModel).block();
+        String collidingUrl = "https://example.com/" + UUID.randomUUID();
+        String otherUrl = "https://example.com/" + UUID.randomUUID();
+        String nextCandidate = UUID.randomUUID().toString();
+        String otherCode = UUID.randomUUID().toString();
+        Map<String, List<String>> candidates = new LinkedHashMap<>();
+        candidates.put(collidingUrl, List.of(urlModel.shortenedUrl(), nextCandidate));
+        candidates.put(otherUrl, List.of(otherCode));
+
+        StepVerifier.create(redisUrlRepository.createAll(candidates).collectList())
+                .assertNext(created -> assertEquals(Set.of(new UrlModel(collidingUrl, nextCandidate), new UrlModel(otherUrl, otherCode)),
+                        Set.copyOf(created)))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByOriginalUrl(otherUrl))
+                .expectNext(new UrlModel(otherUrl, otherCode))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should store a new mapping once and return it for repeated creates")
+    void testCreate() {
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        List<String> candidates = List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        UrlModel expected = new UrlModel(originalUrl, candidates.get(0));
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl, candidates))
+                .expectNext(expected)
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.create(originalUrl, candidates))
+                .expectNext(expected)
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(expected.shortenedUrl()))
+                .expectNext(expected)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should move to the next candidate when a code belongs to another URL")
+    void testCreateWithCollision() {
+        redisUrlRepository.save(urlModel).block();
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        String nextCandidate = UUID.randomUUID().toString();
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl, List.of(urlModel.shortenedUrl(), nextCandidate)))
+                .expectNext(new UrlModel(originalUrl, nextCandidate))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should complete empty when every candidate belongs to another URL")
+    void testCreateWithAllCandidatesTaken() {
+        redisUrlRepository.save(urlModel).block();
+
+        StepVerifier.create(redisUrlRepository.create("https://example.com/" + UUID.randomUUID(), List.of(urlModel.shortenedUrl())))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findByShortenedUrl - Should find mappings not rebucketed yet in the previous layout")
+    void testFindByShortenedUrlPreviousLayout() {
+        String previousKey = urlKeyBuckets.previousPrimaryKey(urlModel.shortenedUrl());
+        reactiveRedisTemplate.opsForHash()
+                .put(previousKey, urlModel.shortenedUrl(), UrlEntity.fromModel(urlModel))
+                .block();
+
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(urlModel.shortenedUrl()))
+                .expectNext(urlModel)
                 .verifyComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("create - Should not claim a code another URL still holds in the previous layout")
+    void testCreateWithCollisionInPreviousLayout() {
+        reactiveRedisTemplate.opsForHash()
+                .put(urlKeyBuckets.previousPrimaryKey(urlModel.shortenedUrl()), urlModel.shortenedUrl(), UrlEntity.fromModel(urlModel))
+                .block();
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        String nextCandidate = UUID.randomUUID().toString();
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl, List.of(urlModel.shortenedUrl(), nextCandidate)))
+                .expectNext(new UrlModel(originalUrl, nextCandidate))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should stop serving an expired mapping and let its URL claim the code again")
+    void testCreateExpired() {
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        List<String> candidates = List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        Instant expiresAt = Instant.ofEpochMilli(System.currentTimeMillis() - 1000);
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl, candidates, expiresAt))
+                .expectNext(new UrlModel(originalUrl, candidates.get(0), expiresAt))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(candidates.get(0)))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.create(originalUrl, candidates))
+                .expectNext(new UrlModel(originalUrl, candidates.get(0)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("deleteExpired - Should delete the expired mappings and leave the live ones")
+    void testDeleteExpired() {
+        String expiredUrl = "https://example.com/" + UUID.randomUUID();
+        String expiredCode = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        redisUrlRepository.create(expiredUrl, List.of(expiredCode), Instant.ofEpochMilli(now - 1000)).block();
+        UrlModel liveUrlModel = new UrlModel("https://example.com/" + UUID.randomUUID(), urlModel.shortenedUrl(),
+                Instant.ofEpochMilli(now + 60_000));
+        redisUrlRepository.save(liveUrlModel).block();
+
+        StepVerifier.create(redisUrlRepository.deleteExpired(List.of(expiredCode, liveUrlModel.shortenedUrl()), now))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(reactiveRedisTemplate.opsForHash().hasKey(urlKeyBuckets.primaryKey(expiredCode), expiredCode))
+                .expectNext(false)
+                .verifyComplete();
+        String digest = UrlIndexKeys.of(expiredUrl);
+        StepVerifier.create(stringRedisTemplate.opsForHash().get(urlKeyBuckets.indexKey(digest), digest))
+                .verifyComplete();
+        StepVerifier.create(redisUrlRepository.findByShortenedUrl(liveUrlModel.shortenedUrl()))
+                .expectNext(liveUrlModel)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should keep a live mapping of the same URL claimed with another expiry")
+    void testCreateClaimedWithAnotherExpiry() {
+        long now = System.currentTimeMillis();
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        UrlModel claimed = new UrlModel(originalUrl, urlModel.shortenedUrl(), Instant.ofEpochMilli(now + 60_000));
+        reactiveRedisTemplate.opsForHash()
+                .put(urlKeyBuckets.primaryKey(urlModel.shortenedUrl()), urlModel.shortenedUrl(), UrlEntity.fromModel(claimed))
+                .block();
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl,
+                        List.of(urlModel.shortenedUrl(), UUID.randomUUID().toString()), Instant.ofEpochMilli(now + 120_000)))
+                .expectNext(claimed)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should claim again a code whose mapping of the same URL has expired")
+    void testCreateReclaimsExpiredCodeOfSameUrl() {
+        String originalUrl = "https://example.com/" + UUID.randomUUID();
+        UrlModel expired = new UrlModel(originalUrl, urlModel.shortenedUrl(), Instant.ofEpochMilli(System.currentTimeMillis() - 1000));
+        reactiveRedisTemplate.opsForHash()
+                .put(urlKeyBuckets.primaryKey(urlModel.shortenedUrl()), urlModel.shortenedUrl(), UrlEntity.fromModel(expired))
+                .block();
+
+        StepVerifier.create(redisUrlRepository.create(originalUrl, List.of(urlModel.shortenedUrl())))
+                .expectNext(new UrlModel(originalUrl, urlModel.shortenedUrl()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create - Should keep a code held by a case variant of the same URL")
+    void testCreateClaimedByCaseVariant() {
+        String path = "/" + UUID.randomUUID();
+        UrlModel claimed = new UrlModel("https://example.com" + path, urlModel.shortenedUrl());
+        reactiveRedisTemplate.opsForHash()
+                .put(urlKeyBuckets.primaryKey(urlModel.shortenedUrl()), urlModel.shortenedUrl(), UrlEntity.fromModel(claimed))
+                .block();
+
+        StepVerifier.create(redisUrlRepository.create("HTTPS://Example.com" + path,
+                        List.of(urlModel.shortenedUrl(), UUID.randomUUID().toString())))
+                .expectNext(claimed)
+                .verifyComplete();
+    }
+}
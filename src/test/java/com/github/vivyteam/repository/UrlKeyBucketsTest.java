@@ -0,0 +1,68 @@
+package com.github.vivyteam.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlKeyBucketsTest {
+
+    @Test
+    @DisplayName("Should keep the unbucketed key names for a single bucket")
+    void singleBucketKeepsKeyNames() {
+        UrlKeyBuckets urlKeyBuckets = new UrlKeyBuckets(1, 1);
+
+        assertEquals(RedisUrlRepository.REDIS_KEY, urlKeyBuckets.primaryKey("5g2IXsE"));
+        assertEquals(RedisUrlRepository.REDIS_KEY_REVERSE_INDEX, urlKeyBuckets.indexKey("5g2IXsE"));
+        assertNull(urlKeyBuckets.previousPrimaryKey("5g2IXsE"), "There is no previous layout to read");
+    }
+
+    @Test
+    @DisplayName("Should hash tag every bucket key with its bucket number")
+    void bucketKeysAreHashTagged() {
+        UrlKeyBuckets urlKeyBuckets = new UrlKeyBuckets(16, 1);
+        int bucket = UrlKeyBuckets.bucketOf("5g2IXsE", 16);
+
+        assertEquals("shortener:url:{" + bucket + "}", urlKeyBuckets.primaryKey("5g2IXsE"));
+        assertEquals(RedisUrlRepository.REDIS_KEY, urlKeyBuckets.previousPrimaryKey("5g2IXsE"));
+        assertEquals(1, urlKeyBuckets.previousPrimaryKeys().size(), "The previous layout has a single key");
+    }
+
+    @Test
+    @DisplayName("Should read a single layout when no previous bucket count is set")
+    void unsetPreviousBucketsIsNotRebucketing() {
+        UrlKeyBuckets urlKeyBuckets = new UrlKeyBuckets(1024, 0);
+
+        assertFalse(urlKeyBuckets.isRebucketing());
+        assertNull(urlKeyBuckets.previousPrimaryKey("5g2IXsE"), "There is no previous layout to read");
+        assertNull(urlKeyBuckets.previousIndexKey("5g2IXsE"), "There is no previous layout to read");
+    }
+
+    @Test
+    @DisplayName("Should spread short codes evenly over the buckets")
+    void bucketsAreEven() {
+        int buckets = 64;
+        int codes = 64_000;
+        int[] counts = new int[buckets];
+        for (int i = 0; i < codes; i++) {
+            counts[UrlKeyBuckets.bucketOf(UUID.randomUUID().toString().substring(0, 7), buckets)]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(count > 800 && count < 1200, "Bucket should hold about 1000 codes: " + count);
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject bucket counts below one")
+    void rejectsInvalidBucketCount() {
+        assertThrows(IllegalArgumentException.class, () -> new UrlKeyBuckets(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new UrlKeyBuckets(16, -1));
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.vivyteam.repository.codec;
+
+import com.github.vivyteam.model.UrlEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlEntityRedisSerializerTest {
+
+    private final UrlEntityRedisSerializer binarySerializer = new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.BINARY);
+    private final UrlEntity urlEntity = new UrlEntity("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "https://myservicedomain.de/5g2IXsE3vG");
+
+    @Test
+    public void testBinaryRoundTrip() {
+        UrlEntity longUrlEntity = new UrlEntity("https://example.com/\u00fc/" + "a".repeat(300), "5g2IXsE3vG");
+
+        assertEquals(urlEntity, binarySerializer.deserialize(binarySerializer.serialize(urlEntity)));
+        assertEquals(longUrlEntity, binarySerializer.deserialize(binarySerializer.serialize(longUrlEntity)));
+    }
+
+    @Test
+    public void testExpiringEntriesRoundTrip() {
+        UrlEntity expiringUrlEntity = new UrlEntity("https://goo.gl/maps/pRUToXUPmTvYwyAb9", "5g2IXsE3vG", 1_700_000_000_123L);
+        UrlEntityRedisSerializer jsonSerializer = new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.JSON);
+
+        byte[] binary = binarySerializer.serialize(expiringUrlEntity);
+        assertEquals(UrlEntityRedisSerializer.VERSION_2, binary[0], "Expiring entries should be written as version 2");
+        assertEquals(1_700_000_000_123L, ByteBuffer.wrap(binary, 1, Long.BYTES).getLong(), "The expiry should follow the version");
+        assertEquals(expiringUrlEntity, binarySerializer.deserialize(binary));
+        assertEquals(expiringUrlEntity, binarySerializer.deserialize(jsonSerializer.serialize(expiringUrlEntity)));
+        assertEquals(UrlEntityRedisSerializer.VERSION_1, binarySerializer.serialize(urlEntity)[0],
+                "Entries that never expire should keep the version 1 layout");
+    }
+
+    @Test
+    public void testReadsLegacyJsonEntries() {
+        byte[] legacyValue = new Jackson2JsonRedisSerializer<>(UrlEntity.class).serialize(urlEntity);
+
+        assertEquals(urlEntity, binarySerializer.deserialize(legacyValue), "Entries written as JSON should still be readable");
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJson() {
+        byte[] binary = binarySerializer.serialize(urlEntity);
+        byte[] json = new UrlEntityRedisSerializer(UrlEntityRedisSerializer.Format.JSON).serialize(urlEntity);
+
+        assertTrue(binary.length < json.length, "Binary encoding should be smaller than JSON");
+    }
+
+    @Test
+    public void testRejectsUnknownVersionAndTruncatedValues() {
+        byte[] binary = binarySerializer.serialize(urlEntity);
+        byte[] truncated = Arrays.copyOf(binary, binary.length - 3);
+
+        assertThrows(SerializationException.class, () -> binarySerializer.deserialize(new byte[]{42, 1, 2}));
+        assertThrows(SerializationException.class, () -> binarySerializer.deserialize(truncated));
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.vivyteam.repository.mirror;
+
+import com.github.vivyteam.service.utils.Base62Encoder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapMappingsTest {
+
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+
+    @Test
+    @DisplayName("put - Should find every mapping across chunks and index resizes")
+    void findStoredMappings() {
+        OffHeapMappings mappings = new OffHeapMappings(16, 1024);
+        for (long i = 1; i <= 10_000; i++) {
+            mappings.put(base62Encoder.encode(i * 7919), "https://example.com/" + i);
+        }
+
+        assertEquals(10_000, mappings.size());
+        for (long i = 1; i <= 10_000; i++) {
+            assertEquals("https://example.com/" + i, mappings.get(base62Encoder.encode(i * 7919), 0));
+        }
+        assertNull(mappings.get("zzzzzzz", 0));
+    }
+
+    @Test
+    @DisplayName("get - Should tell apart codes that only differ in their leading zeros")
+    void leadingZerosAreDistinctCodes() {
+        OffHeapMappings mappings = new OffHeapMappings(16, 1024);
+
+        mappings.put("abc", "https://example.com/short");
+        mappings.put("00abc", "https://example.com/padded");
+
+        assertEquals("https://example.com/short", mappings.get("abc", 0));
+        assertEquals("https://example.com/padded", mappings.get("00abc", 0));
+        assertNull(mappings.get("0abc", 0));
+    }
+
+    @Test
+    @DisplayName("putIfAbsent - Should keep the mapping a code already has, put should replace it")
+    void replaceMapping() {
+        OffHeapMappings mappings = new OffHeapMappings(16, 1024);
+        mappings.put("5g2IXsE3vG", "https://example.com/new");
+
+        assertFalse(mappings.putIfAbsent("5g2IXsE3vG", "https://example.com/scanned"));
+        assertEquals("https://example.com/new", mappings.get("5g2IXsE3vG", 0));
+
+        assertTrue(mappings.put("5g2IXsE3vG", "https://example.com/replaced"));
+        assertFalse(mappings.put("5g2IXsE3vG", "https://example.com/replaced"));
+        assertEquals("https://example.com/replaced", mappings.get("5g2IXsE3vG", 0));
+        assertEquals(1, mappings.size());
+    }
+
+    @Test
+    @DisplayName("get - Should not return a mapping once it has expired")
+    void expiredMappings() {
+        OffHeapMappings mappings = new OffHeapMappings(16, 1024);
+        mappings.put("abc", "https://example.com/expiring", 1_000);
+        mappings.put("abd", "https://example.com/permanent");
+
+        assertEquals("https://example.com/expiring", mappings.get("abc", 999));
+        assertNull(mappings.get("abc", 1_000));
+        assertEquals("https://example.com/permanent", mappings.get("abd", Long.MAX_VALUE - 1));
+
+        assertTrue(mappings.put("abc", "https://example.com/expiring", 2_000), "A new expiry should replace the mapping");
+        assertEquals("https://example.com/expiring", mappings.get("abc", 1_000));
+    }
+
+    @Test
+    @DisplayName("put - Should store URLs larger than a chunk")
+    void storeLargeUrl() {
+        OffHeapMappings mappings = new OffHeapMappings(16, 64);
+        String originalUrl = "https://example.com/" + "a".repeat(500);
+
+        mappings.put("abc", originalUrl);
+        mappings.put("abd", "https://example.com/");
+
+        assertEquals(originalUrl, mappings.get("abc", 0));
+        assertEquals("https://example.com/", mappings.get("abd", 0));
+    }
+
+    @Test
+    @DisplayName("isMirrorable - Should only accept base62 codes")
+    void onlyBase62CodesAreMirrorable() {
+        assertTrue(OffHeapMappings.isMirrorable("5g2IXsE3vG"));
+        assertFalse(OffHeapMappings.isMirrorable(""));
+        assertFalse(OffHeapMappings.isMirrorable("https://myservicedomain.de/5g2IXsE3vG"));
+    }
+}
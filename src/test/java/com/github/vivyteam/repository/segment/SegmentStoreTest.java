@@ -0,0 +1,157 @@
+package com.github.vivyteam.repository.segment;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("put - Should find a stored mapping by short code and by original URL")
+    void findStoredMapping() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+
+        store.put("5g2IXsE3vG", "https://goo.gl/maps/pRUToXUPmTvYwyAb9");
+
+        assertEquals("https://goo.gl/maps/pRUToXUPmTvYwyAb9", store.findOriginalUrl("5g2IXsE3vG"));
+        assertEquals("5g2IXsE3vG", store.findShortCode("https://goo.gl/maps/pRUToXUPmTvYwyAb9"));
+        assertNull(store.findOriginalUrl("1234AbCd"));
+    }
+
+    @Test
+    @DisplayName("put - Should no longer map the previous URL of a replaced short code back to it")
+    void replaceMapping() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+
+        store.put("code", "https://example.com/old");
+        store.put("code", "https://example.com/new");
+
+        assertEquals("https://example.com/new", store.findOriginalUrl("code"));
+        assertNull(store.findShortCode("https://example.com/old"));
+    }
+
+    @Test
+    @DisplayName("create - Should return the existing code of a URL, or store it under the first free candidate")
+    void createWithCandidates() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        store.put("taken", "https://example.com/other");
+
+        assertEquals("free", store.create("https://example.com/new", List.of("taken", "free")));
+        assertEquals("free", store.create("https://example.com/new", List.of("another")));
+        assertNull(store.create("https://example.com/third", List.of("taken", "free")));
+    }
+
+    @Test
+    @DisplayName("create - Should return the code of a URL only differing in the case of its scheme or host")
+    void createCaseVariant() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        store.put("code", "HTTPS://Example.com/Path");
+
+        assertEquals("code", store.findShortCode("https://example.com/Path"));
+        assertEquals("code", store.create("https://EXAMPLE.com/Path", List.of("free")));
+        assertNull(store.findShortCode("https://example.com/path"));
+    }
+
+    @Test
+    @DisplayName("open - Should replay every segment when there is no checkpoint")
+    void replaySegments() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        for (int i = 0; i < 500; i++) {
+            store.put("code" + i, "https://example.com/" + i);
+        }
+        store.put("code7", "https://example.com/replaced");
+        store.sync();
+
+        SegmentStore reopened = SegmentStore.open(directory, SEGMENT_SIZE);
+
+        assertTrue(reopened.segmentCount() > 1);
+        assertEquals(500, reopened.mappings());
+        assertEquals("https://example.com/42", reopened.findOriginalUrl("code42"));
+        assertEquals("https://example.com/replaced", reopened.findOriginalUrl("code7"));
+    }
+
+    @Test
+    @DisplayName("open - Should load the checkpoint and replay only the records appended after it")
+    void loadCheckpoint() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        store.put("before", "https://example.com/before");
+        store.checkpoint();
+        store.put("after", "https://example.com/after");
+        store.sync();
+
+        SegmentStore reopened = SegmentStore.open(directory, SEGMENT_SIZE);
+
+        assertTrue(Files.exists(directory.resolve(SegmentStore.CHECKPOINT_FILE)));
+        assertEquals("https://example.com/before", reopened.findOriginalUrl("before"));
+        assertEquals("https://example.com/after", reopened.findOriginalUrl("after"));
+        assertEquals("after", reopened.findShortCode("https://example.com/after"));
+    }
+
+    @Test
+    @DisplayName("open - Should stop at a torn record and append over it")
+    void recoverTornRecord() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        store.put("first", "https://example.com/first");
+        store.put("torn", "https://example.com/torn");
+        store.sync();
+
+        // the checksum of the second record, right after the first one
+        int secondRecord = Segment.HEADER_BYTES + 1 + "first".length() + "https://example.com/first".getBytes(StandardCharsets.UTF_8).length;
+        try (FileChannel channel = FileChannel.open(directory.resolve(Segment.fileName(0)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 0xBAD), secondRecord + 4);
+        }
+
+        SegmentStore reopened = SegmentStore.open(directory, SEGMENT_SIZE);
+        assertEquals("https://example.com/first", reopened.findOriginalUrl("first"));
+        assertNull(reopened.findOriginalUrl("torn"));
+
+        reopened.put("next", "https://example.com/next");
+        reopened.sync();
+        assertEquals("https://example.com/next", SegmentStore.open(directory, SEGMENT_SIZE).findOriginalUrl("next"));
+    }
+
+    @Test
+    @DisplayName("compact - Should move the live records out of mostly dead segments and delete them")
+    void compactDeadSegments() throws IOException {
+        SegmentStore store = SegmentStore.open(directory, SEGMENT_SIZE);
+        for (int i = 0; i < 500; i++) {
+            store.put("code" + i, "https://example.com/" + i);
+        }
+        for (int i = 0; i < 500; i += 2) {
+            store.put("code" + i, "https://example.org/" + i);
+        }
+        int segments = store.segmentCount();
+
+        int compacted = store.compact(0.6);
+
+        assertTrue(compacted > 0);
+        assertTrue(store.segmentCount() < segments);
+        for (int i = 0; i < 500; i++) {
+            assertEquals((i % 2 == 0 ? "https://example.org/" : "https://example.com/") + i, store.findOriginalUrl("code" + i));
+        }
+        assertEquals("code1", store.findShortCode("https://example.com/1"));
+
+        store.sync();
+        SegmentStore reopened = SegmentStore.open(directory, SEGMENT_SIZE);
+        assertEquals(500, reopened.mappings());
+        assertEquals("https://example.org/42", reopened.findOriginalUrl("code42"));
+    }
+}
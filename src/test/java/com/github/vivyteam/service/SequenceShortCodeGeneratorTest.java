@@ -0,0 +1,61 @@
+package com.github.vivyteam.service;
+
+import com.github.vivyteam.configuration.CodeGeneratorConfiguration;
+import com.github.vivyteam.configuration.ShorternerApiConfiguration;
+import com.github.vivyteam.repository.CodeSequence;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+class SequenceShortCodeGeneratorTest {
+
+    private CodeSequence codeSequence;
+    private ShorternerApiConfiguration apiConfiguration;
+    private CodeGeneratorConfiguration codeGeneratorConfiguration;
+
+    @BeforeEach
+    void setUp() {
+        codeSequence = Mockito.mock(CodeSequence.class);
+        apiConfiguration = Mockito.mock(ShorternerApiConfiguration.class);
+        codeGeneratorConfiguration = Mockito.mock(CodeGeneratorConfiguration.class);
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(codeGeneratorConfiguration.isPermute()).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("Should not start permuting codes without a permutation key")
+    void rejectsMissingPermutationKey() {
+        when(codeGeneratorConfiguration.getPermutationKey()).thenReturn(null);
+
+        assertThrows(IllegalStateException.class, () -> new SequenceShortCodeGenerator(codeSequence, apiConfiguration,
+                codeGeneratorConfiguration, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("candidates - Should encode the permuted id in exactly url-length characters")
+    void candidatesArePermuted() {
+        when(codeGeneratorConfiguration.getPermutationKey()).thenReturn(42L);
+        when(codeSequence.next()).thenReturn(Mono.just(1L));
+        SequenceShortCodeGenerator permuted = new SequenceShortCodeGenerator(codeSequence, apiConfiguration,
+                codeGeneratorConfiguration, new SimpleMeterRegistry());
+        when(codeGeneratorConfiguration.isPermute()).thenReturn(false);
+        SequenceShortCodeGenerator sequential = new SequenceShortCodeGenerator(codeSequence, apiConfiguration,
+                codeGeneratorConfiguration, new SimpleMeterRegistry());
+
+        List<String> permutedCodes = permuted.candidates("https://example.com").block();
+        List<String> sequentialCodes = sequential.candidates("https://example.com").block();
+
+        assertEquals(7, permutedCodes.get(0).length());
+        assertNotEquals(sequentialCodes, permutedCodes);
+    }
+}
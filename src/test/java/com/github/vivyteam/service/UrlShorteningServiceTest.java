@@ -1,19 +1,37 @@
 package com.github.vivyteam.service;
 
+import com.github.vivyteam.configuration.CreateDeduplicationConfiguration;
 import com.github.vivyteam.configuration.ShorternerApiConfiguration;
 import com.github.vivyteam.exception.UrlNotFoundException;
+import com.github.vivyteam.model.ShortenResultModel;
 import com.github.vivyteam.model.UrlModel;
+import com.github.vivyteam.model.UrlStatsModel;
+import com.github.vivyteam.repository.ClickCounter;
 import com.github.vivyteam.repository.UrlRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
-import static org.mockito.ArgumentMatchers.any;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -21,28 +39,37 @@ class UrlShorteningServiceTest {
 
     private UrlRepository urlRepository;
     private ShorternerApiConfiguration apiConfiguration;
+    private ClickCounter clickCounter;
     private UrlShorteningService urlShorteningService;
 
     private final String originalUrl = "https://goo.gl/maps/pRUToXUPmTvYwyAb9";
     private final String shortUrl = "https://myservicedomain.de/5g2IXsE3vG";
+    private final String shortCode = "5g2IXsE3vG";
 
     @BeforeEach
     public void setUp() {
         urlRepository = Mockito.mock(UrlRepository.class);
         apiConfiguration = Mockito.mock(ShorternerApiConfiguration.class);
-        urlShorteningService = new UrlShorteningService(urlRepository, apiConfiguration);
+        CreateDeduplicationConfiguration createDeduplicationConfiguration = Mockito.mock(CreateDeduplicationConfiguration.class);
+        Mockito.lenient().when(createDeduplicationConfiguration.isEnabled()).thenReturn(true);
+        Mockito.lenient().when(createDeduplicationConfiguration.getMaximumSize()).thenReturn(100L);
+        Mockito.lenient().when(createDeduplicationConfiguration.getExpireAfterWrite()).thenReturn(Duration.ofMinutes(1));
+        clickCounter = Mockito.mock(ClickCounter.class);
+        urlShorteningService = new UrlShorteningService(urlRepository,
+                new HashShortCodeGenerator(apiConfiguration, new SimpleMeterRegistry()), apiConfiguration,
+                createDeduplicationConfiguration, clickCounter, new SimpleMeterRegistry());
     }
 
     @Test
     @DisplayName("createShortUrl should return a UrlModel with the original and shortened url")
     public void testCreateShortUrl() {
-        UrlModel urlModel = new UrlModel(originalUrl, shortUrl);
+        UrlModel urlModel = new UrlModel(originalUrl, shortCode);
 
         // Mock repository and configuration behavior
-        when(urlRepository.findByOriginalUrl(originalUrl)).thenReturn(Mono.empty());
-        when(urlRepository.save(any(UrlModel.class))).thenReturn(Mono.just(urlModel));
+        when(urlRepository.create(eq(originalUrl), anyList(), isNull())).thenReturn(Mono.just(urlModel));
         when(apiConfiguration.getUrlLength()).thenReturn(7);
-        when(apiConfiguration.getDomainUrl()).thenReturn("https://short.ly/");
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
 
         // Test createShortUrl method
         StepVerifier.create(urlShorteningService.createShortUrl(originalUrl))
@@ -51,14 +78,195 @@ class UrlShorteningServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("createShortUrl should try every candidate code derived from the url digest")
+    public void testCreateShortUrlCandidates() {
+        when(urlRepository.create(eq(originalUrl), anyList(), isNull())).thenReturn(Mono.just(new UrlModel(originalUrl, shortCode)));
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(3);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        urlShorteningService.createShortUrl(originalUrl).block();
+
+        Mockito.verify(urlRepository).create(eq(originalUrl), Mockito.argThat(candidates -> candidates.size() == 3
+                && candidates.stream().distinct().count() == 3
+                && candidates.stream().allMatch(candidate -> candidate.length() >= 7)), isNull());
+    }
+
+    @Test
+    @DisplayName("createShortUrl should fail when every candidate code is taken")
+    public void testCreateShortUrlAllCandidatesTaken() {
+        when(urlRepository.create(eq(originalUrl), anyList(), isNull())).thenReturn(Mono.empty());
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+
+        StepVerifier.create(urlShorteningService.createShortUrl(originalUrl))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("createShortUrl should answer a repeated create from the recently created mappings")
+    public void testCreateShortUrlRecentlyCreated() {
+        when(urlRepository.create(eq(originalUrl), anyList(), isNull())).thenReturn(Mono.just(new UrlModel(originalUrl, shortCode)));
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        urlShorteningService.createShortUrl(originalUrl).block();
+
+        StepVerifier.create(urlShorteningService.createShortUrl(originalUrl))
+                .expectNext(new UrlModel(originalUrl, shortUrl))
+                .verifyComplete();
+
+        Mockito.verify(urlRepository, Mockito.times(1)).create(eq(originalUrl), anyList(), isNull());
+    }
+
+    @Test
+    @DisplayName("createShortUrl should join a create of the same url already in flight")
+    public void testCreateShortUrlInFlight() {
+        Sinks.One<UrlModel> created = Sinks.one();
+        when(urlRepository.create(eq(originalUrl), anyList(), isNull())).thenReturn(created.asMono());
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        CompletableFuture<UrlModel> first = urlShorteningService.createShortUrl(originalUrl).toFuture();
+        CompletableFuture<UrlModel> second = urlShorteningService.createShortUrl(originalUrl).toFuture();
+        created.tryEmitValue(new UrlModel(originalUrl, shortCode));
+
+        assertEquals(new UrlModel(originalUrl, shortUrl), first.join());
+        assertEquals(new UrlModel(originalUrl, shortUrl), second.join());
+        Mockito.verify(urlRepository, Mockito.times(1)).create(eq(originalUrl), anyList(), isNull());
+    }
+
+    @Test
+    @DisplayName("createShortUrl should store the expiry of a link created with a ttl and not reuse it once expired")
+    public void testCreateShortUrlWithTtl() {
+        Instant expired = Instant.now().minusSeconds(1);
+        when(urlRepository.create(eq(originalUrl), anyList(), Mockito.any(Instant.class)))
+                .thenReturn(Mono.just(new UrlModel(originalUrl, shortCode, expired)));
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        Instant before = Instant.now();
+        StepVerifier.create(urlShorteningService.createShortUrl(originalUrl, Duration.ofHours(1)))
+                .expectNext(new UrlModel(originalUrl, shortUrl, expired))
+                .verifyComplete();
+        urlShorteningService.createShortUrl(originalUrl, Duration.ofHours(1)).block();
+
+        Mockito.verify(urlRepository, Mockito.times(2)).create(eq(originalUrl), anyList(),
+                Mockito.argThat(expiresAt -> !expiresAt.isBefore(before.plus(Duration.ofHours(1)))));
+    }
+
+    @Test
+    @DisplayName("createShortUrl should not answer a request for a permanent link with a link that expires")
+    public void testCreateShortUrlPermanentAfterExpiring() {
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        when(urlRepository.create(eq(originalUrl), anyList(), Mockito.any()))
+                .thenReturn(Mono.just(new UrlModel(originalUrl, shortCode, expiresAt)));
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        StepVerifier.create(urlShorteningService.createShortUrl(originalUrl, Duration.ofMinutes(1)))
+                .expectNext(new UrlModel(originalUrl, shortUrl, expiresAt))
+                .verifyComplete();
+        StepVerifier.create(urlShorteningService.createShortUrl(originalUrl))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        Mockito.verify(urlRepository).create(eq(originalUrl), anyList(), isNull());
+    }
+
+    @Test
+    @DisplayName("createShortUrls should reuse existing mappings and create only the new distinct urls")
+    public void testCreateShortUrls() {
+        String newUrl = "https://example.com/new";
+
+        when(apiConfiguration.getBulkChunkSize()).thenReturn(10);
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://short.ly/");
+        when(urlRepository.findAllByOriginalUrl(List.of(originalUrl, newUrl)))
+                .thenReturn(Flux.just(new UrlModel(originalUrl, shortCode)));
+        when(urlRepository.createAll(anyMap()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<Map<String, List<String>>>getArgument(0).entrySet())
+                        .map(entry -> new UrlModel(entry.getKey(), entry.getValue().get(0))));
+
+        StepVerifier.create(urlShorteningService.createShortUrls(Flux.just(originalUrl, newUrl, originalUrl, newUrl)))
+                .expectNext(ShortenResultModel.shortened(new UrlModel(originalUrl, "https://short.ly/" + shortCode)))
+                .expectNextMatches(result -> result.originalUrl().equals(newUrl)
+                        && result.shortenedUrl().startsWith("https://short.ly/") && result.error() == null)
+                .verifyComplete();
+
+        Mockito.verify(urlRepository).createAll(Mockito.argThat(candidates -> candidates.keySet().equals(Set.of(newUrl))
+                && candidates.get(newUrl).size() == 4));
+    }
+
+    @Test
+    @DisplayName("createShortUrls should reject the urls with an expiring link or without a free candidate code")
+    public void testCreateShortUrlsRejected() {
+        String expiringUrl = "https://example.com/expiring";
+        String takenUrl = "https://example.com/taken";
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+
+        when(apiConfiguration.getBulkChunkSize()).thenReturn(10);
+        when(apiConfiguration.getUrlLength()).thenReturn(7);
+        when(apiConfiguration.getCollisionCandidates()).thenReturn(4);
+        when(urlRepository.findAllByOriginalUrl(List.of(expiringUrl, takenUrl)))
+                .thenReturn(Flux.just(new UrlModel(expiringUrl, shortCode, expiresAt)));
+        when(urlRepository.createAll(anyMap())).thenReturn(Flux.empty());
+
+        StepVerifier.create(urlShorteningService.createShortUrls(Flux.just(expiringUrl, takenUrl)))
+                .expectNext(ShortenResultModel.rejected(expiringUrl, "The URL already has a link expiring at " + expiresAt))
+                .expectNext(ShortenResultModel.rejected(takenUrl, "Every candidate short code is already taken"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("createShortUrls should match case variants of a url to its existing mapping")
+    public void testCreateShortUrlsCaseVariant() {
+        String caseVariantUrl = "HTTPS://GOO.GL/maps/pRUToXUPmTvYwyAb9";
+
+        when(apiConfiguration.getBulkChunkSize()).thenReturn(10);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://short.ly/");
+        when(urlRepository.findAllByOriginalUrl(List.of(caseVariantUrl)))
+                .thenReturn(Flux.just(new UrlModel(originalUrl, shortCode)));
+
+        StepVerifier.create(urlShorteningService.createShortUrls(Flux.just(caseVariantUrl, originalUrl)))
+                .expectNext(ShortenResultModel.shortened(new UrlModel(originalUrl, "https://short.ly/" + shortCode)))
+                .verifyComplete();
+
+        Mockito.verify(urlRepository, Mockito.never()).createAll(anyMap());
+    }
+
+    @Test
+    @DisplayName("createShortUrls should deduplicate urls within a chunk only")
+    public void testCreateShortUrlsDeduplicatesPerChunk() {
+        when(apiConfiguration.getBulkChunkSize()).thenReturn(2);
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://short.ly/");
+        when(urlRepository.findAllByOriginalUrl(List.of(originalUrl)))
+                .thenReturn(Flux.just(new UrlModel(originalUrl, shortCode)));
+
+        StepVerifier.create(urlShorteningService.createShortUrls(Flux.just(originalUrl, originalUrl, originalUrl)))
+                .expectNext(ShortenResultModel.shortened(new UrlModel(originalUrl, "https://short.ly/" + shortCode)))
+                .expectNext(ShortenResultModel.shortened(new UrlModel(originalUrl, "https://short.ly/" + shortCode)))
+                .verifyComplete();
+
+        Mockito.verify(urlRepository, Mockito.times(2)).findAllByOriginalUrl(List.of(originalUrl));
+    }
+
     @Test
     @DisplayName("findOriginalUrlByShortUrl should return a UrlModel with the original and shortened url")
     public void testFindOriginalUrlByShortUrl() {
-        UrlModel urlModel = new UrlModel(originalUrl, shortUrl);
+        UrlModel urlModel = new UrlModel(originalUrl, shortCode);
 
-        when(urlRepository.findByShortenedUrl(shortUrl)).thenReturn(Mono.just(urlModel));
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.just(urlModel));
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
 
-        StepVerifier.create(urlShorteningService.findOriginalUrlByShortUrl(shortUrl))
+        StepVerifier.create(urlShorteningService.findOriginalUrlByShortUrl(shortCode))
                 .expectNextMatches(result -> result.originalUrl().equals(originalUrl)
                         && result.shortenedUrl().equals(shortUrl))
                 .verifyComplete();
@@ -67,9 +275,9 @@ class UrlShorteningServiceTest {
     @Test
     @DisplayName("findOriginalUrlByShortUrl should throw an UrlNotFoundException")
     public void testFindOriginalUrlByShortUrlNotFound() {
-        when(urlRepository.findByShortenedUrl(shortUrl)).thenReturn(Mono.empty());
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.empty());
 
-        StepVerifier.create(urlShorteningService.findOriginalUrlByShortUrl(shortUrl))
+        StepVerifier.create(urlShorteningService.findOriginalUrlByShortUrl(shortCode))
                 .expectError(UrlNotFoundException.class)
                 .verify();
     }
@@ -77,22 +285,48 @@ class UrlShorteningServiceTest {
     @Test
     @DisplayName("findShortUrlAndRedirect should return a UrlModel with the original and shortened url")
     public void testFindShortUrlAndRedirect() {
-        UrlModel urlModel = new UrlModel(originalUrl, shortUrl);
+        UrlModel urlModel = new UrlModel(originalUrl, shortCode);
 
-        when(urlRepository.findByShortenedUrl(shortUrl)).thenReturn(Mono.just(urlModel));
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.just(urlModel));
 
-        StepVerifier.create(urlShorteningService.findShortUrlAndRedirect(shortUrl))
+        StepVerifier.create(urlShorteningService.findShortUrlAndRedirect(shortCode))
                 .expectNextMatches(result -> result.originalUrl().equals(originalUrl)
-                        && result.shortenedUrl().equals(shortUrl))
+                        && result.shortenedUrl().equals(shortCode))
                 .verifyComplete();
+
+        Mockito.verify(clickCounter).increment(shortCode);
     }
 
     @Test
     @DisplayName("findShortUrlAndRedirect should throw an UrlNotFoundException")
     public void testFindShortUrlAndRedirectNotFound() {
-        when(urlRepository.findByShortenedUrl(shortUrl)).thenReturn(Mono.empty());
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.empty());
+
+        StepVerifier.create(urlShorteningService.findShortUrlAndRedirect(shortCode))
+                .expectError(UrlNotFoundException.class)
+                .verify();
+
+        Mockito.verifyNoInteractions(clickCounter);
+    }
+
+    @Test
+    @DisplayName("findUrlStats should return the click count of an existing short code")
+    public void testFindUrlStats() {
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.just(new UrlModel(originalUrl, shortCode)));
+        when(clickCounter.totalClicks(shortCode)).thenReturn(Mono.just(42L));
+        when(apiConfiguration.getDomainUrl()).thenReturn("https://myservicedomain.de/");
+
+        StepVerifier.create(urlShorteningService.findUrlStats(shortCode))
+                .expectNext(new UrlStatsModel(originalUrl, shortUrl, 42))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findUrlStats should throw an UrlNotFoundException")
+    public void testFindUrlStatsNotFound() {
+        when(urlRepository.findByShortenedUrl(shortCode)).thenReturn(Mono.empty());
 
-        StepVerifier.create(urlShorteningService.findShortUrlAndRedirect(shortUrl))
+        StepVerifier.create(urlShorteningService.findUrlStats(shortCode))
                 .expectError(UrlNotFoundException.class)
                 .verify();
     }
@@ -3,6 +3,7 @@ package com.github.vivyteam.service.utils;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,4 +34,64 @@ class Base62EncoderTest {
         long decodedValue = base62Encoder.decode(encodedValue);
         assertEquals(input.longValue(), decodedValue, "Decoded value should match the original input value");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEncodeUnsignedLong() {
+        assertEquals("lYGhA16ahyf", base62Encoder.encode(-1L), "Negative longs should be encoded as unsigned values");
+        assertEquals("", base62Encoder.encode(0L), "Zero should be encoded as an empty string");
+    }
+
+    @Test
+    public void testEncodePaddedLong() {
+        assertEquals("00008m0Kx", base62Encoder.encode(123456789L, 9), "Short values should be padded to the minimum length");
+        assertEquals("0000000", base62Encoder.encode(0L, 7), "Zero should be encoded as padding only");
+        assertEquals("8m0Kx", base62Encoder.encode(123456789L, 3), "Longer values should not be truncated");
+    }
+
+    @Test
+    public void testEncodeBytesMatchesBigIntegerEncoding() {
+        Random random = new Random(42);
+
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < 1000; i++) {
+                byte[] bytes = new byte[length];
+                random.nextBytes(bytes);
+                if (i % 10 == 0) {
+                    bytes[0] = 0;
+                }
+
+                String expected = legacyEncode(bytes, length);
+                assertEquals(expected, base62Encoder.encode(bytes, 0, length, length),
+                        "Encoded value should match the BigInteger based encoding");
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeInvalidCharacter() {
+        assertThrows(IllegalArgumentException.class, () -> base62Encoder.decode("8m0K-"));
+    }
+
+    @Test
+    public void testIsBase62() {
+        assertTrue(Base62Encoder.isBase62("5g2IXsE3vG"));
+        assertFalse(Base62Encoder.isBase62("swagger-ui.html"));
+    }
+
+    private String legacyEncode(byte[] bytes, int minLength) {
+        BigInteger bigInput = new BigInteger(1, bytes);
+        BigInteger base = BigInteger.valueOf(Base62Encoder.ALPHABET.length());
+        StringBuilder encoded = new StringBuilder();
+
+        while (bigInput.compareTo(BigInteger.ZERO) > 0) {
+            BigInteger[] divideAndRemainder = bigInput.divideAndRemainder(base);
+            bigInput = divideAndRemainder[0];
+            encoded.insert(0, Base62Encoder.ALPHABET.charAt(divideAndRemainder[1].intValue()));
+        }
+        while (encoded.length() < minLength) {
+            encoded.insert(0, Base62Encoder.ALPHABET.charAt(0));
+        }
+
+        return encoded.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.vivyteam.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for (long i = 0; i < 10_000; i++) {
+            bloomFilter.put(base62Encoder.encode(i * 7919));
+        }
+
+        for (long i = 0; i < 10_000; i++) {
+            assertTrue(bloomFilter.mightContain(base62Encoder.encode(i * 7919)), "Added values should always be found");
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRateMatchesSizing() {
+        BloomFilter bloomFilter = new BloomFilter(100_000, 0.01);
+        for (long i = 0; i < 100_000; i++) {
+            bloomFilter.put(base62Encoder.encode(i));
+        }
+
+        int falsePositives = 0;
+        for (long i = 100_000; i < 200_000; i++) {
+            if (bloomFilter.mightContain(base62Encoder.encode(i))) {
+                falsePositives++;
+            }
+        }
+
+        double falsePositiveRate = falsePositives / 100_000.0;
+        assertTrue(falsePositiveRate < 0.015, "False positive rate should stay close to 1%: " + falsePositiveRate);
+        assertEquals(0.01, bloomFilter.expectedFalsePositiveRate(), 0.003, "Expected rate should follow the bits set");
+        assertEquals(100_000, bloomFilter.approximateElementCount(), 2_000, "Element count should be estimated from the bits set");
+    }
+
+    @Test
+    public void testPutReportsNewValues() {
+        BloomFilter bloomFilter = new BloomFilter(1_000, 0.01);
+
+        assertTrue(bloomFilter.put("5g2IXsE"), "First put should set bits");
+        assertFalse(bloomFilter.put("5g2IXsE"), "Second put should not change anything");
+    }
+
+    @Test
+    public void testRejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1_000, 1.0));
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.vivyteam.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeistelPermutationTest {
+
+    @Test
+    public void testPermutationIsBijective() {
+        // 62^3 is not a power of two, so values past the end of the range have to be walked back into it
+        long size = 62 * 62 * 62;
+        FeistelPermutation permutation = new FeistelPermutation(size, 42);
+        BitSet seen = new BitSet((int) size);
+
+        for (long value = 0; value < size; value++) {
+            long permuted = permutation.permute(value);
+            assertTrue(permuted >= 0 && permuted < size, "Permuted values should stay in range: " + permuted);
+            assertFalse(seen.get((int) permuted), "Permuted values should never repeat: " + permuted);
+            seen.set((int) permuted);
+        }
+        assertEquals(size, seen.cardinality(), "Every value of the range should be reached");
+    }
+
+    @Test
+    public void testPermutationDependsOnKey() {
+        long size = 62L * 62 * 62 * 62 * 62 * 62 * 62;
+        FeistelPermutation permutation = new FeistelPermutation(size, 42);
+        FeistelPermutation otherPermutation = new FeistelPermutation(size, 43);
+
+        int sameImages = 0;
+        int consecutiveImages = 0;
+        for (long value = 0; value < 1_000; value++) {
+            long permuted = permutation.permute(value);
+            assertEquals(permuted, new FeistelPermutation(size, 42).permute(value), "The same key should give the same order");
+            if (permuted == otherPermutation.permute(value)) {
+                sameImages++;
+            }
+            if (Math.abs(permutation.permute(value + 1) - permuted) == 1) {
+                consecutiveImages++;
+            }
+        }
+        assertTrue(sameImages < 5, "Another key should give another order: " + sameImages);
+        assertTrue(consecutiveImages < 5, "Consecutive values should not map to consecutive images: " + consecutiveImages);
+    }
+
+    @Test
+    public void testValuesOutOfRange() {
+        FeistelPermutation permutation = new FeistelPermutation(100, 42);
+
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(100));
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(-1));
+        assertThrows(IllegalArgumentException.class, () -> new FeistelPermutation(1, 42));
+    }
+}
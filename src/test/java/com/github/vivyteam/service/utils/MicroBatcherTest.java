@@ -0,0 +1,101 @@
+package com.github.vivyteam.service.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicroBatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<String>> flushed = new CopyOnWriteArrayList<>();
+    private MicroBatcher<String> microBatcher;
+
+    @AfterEach
+    public void tearDown() {
+        microBatcher.dispose();
+    }
+
+    @Test
+    public void testItemsSubmittedTogetherShareOneFlush() {
+        microBatcher = new MicroBatcher<>("test", 3, Duration.ofSeconds(10), 4,
+                batch -> Mono.fromRunnable(() -> flushed.add(batch)), meterRegistry);
+
+        StepVerifier.create(Flux.merge(microBatcher.submit("a"), microBatcher.submit("b"), microBatcher.submit("c")))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(List.of("a", "b", "c")), flushed);
+        assertEquals(3.0, meterRegistry.get("shortener.write-batch.size").summary().max());
+    }
+
+    @Test
+    public void testPartialBatchIsFlushedAfterTheWindow() {
+        microBatcher = new MicroBatcher<>("test", 100, Duration.ofMillis(20), 4,
+                batch -> Mono.fromRunnable(() -> flushed.add(batch)), meterRegistry);
+
+        StepVerifier.create(microBatcher.submit("a"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(List.of("a")), flushed);
+    }
+
+    @Test
+    public void testSubmitCompletesOnlyOnceTheFlushIsAcknowledged() {
+        Sinks.Empty<Void> acknowledged = Sinks.empty();
+        microBatcher = new MicroBatcher<>("test", 1, Duration.ofSeconds(10), 4, batch -> acknowledged.asMono(), meterRegistry);
+
+        StepVerifier.create(microBatcher.submit("a"))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(acknowledged::tryEmitEmpty)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testFlushErrorsReachEveryCallerOfTheBatch() {
+        AtomicBoolean redisDown = new AtomicBoolean(true);
+        microBatcher = new MicroBatcher<>("test", 2, Duration.ofSeconds(10), 4,
+                batch -> redisDown.getAndSet(false)
+                        ? Mono.error(new IllegalStateException("Redis down"))
+                        : Mono.fromRunnable(() -> flushed.add(batch)), meterRegistry);
+
+        StepVerifier.create(Mono.zip(microBatcher.submit("a").materialize(), microBatcher.submit("b").materialize()))
+                .expectNextMatches(signals -> signals.getT1().getThrowable() instanceof IllegalStateException
+                        && signals.getT2().getThrowable() instanceof IllegalStateException)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        // later batches are still flushed
+        StepVerifier.create(Mono.when(microBatcher.submit("c"), microBatcher.submit("d")))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(List.of("c", "d")), flushed);
+    }
+
+    @Test
+    public void testSubmitFailsOnceDisposed() {
+        microBatcher = new MicroBatcher<>("test", 100, Duration.ofMillis(20), 4,
+                batch -> Mono.fromRunnable(() -> flushed.add(batch)), meterRegistry);
+        microBatcher.dispose();
+
+        StepVerifier.create(microBatcher.submit("a"))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(), flushed);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.vivyteam.service.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestCoalescer<String, String> requestCoalescer = new RequestCoalescer<>("test", meterRegistry);
+
+    @Test
+    public void testConcurrentSubscribersShareOneLookup() {
+        AtomicInteger lookups = new AtomicInteger();
+        Sinks.One<String> result = Sinks.one();
+
+        Mono<String> first = requestCoalescer.coalesce("5g2IXsE", key -> {
+            lookups.incrementAndGet();
+            return result.asMono();
+        });
+        Mono<String> second = requestCoalescer.coalesce("5g2IXsE", key -> {
+            lookups.incrementAndGet();
+            return result.asMono();
+        });
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> result.tryEmitValue("https://goo.gl/maps/pRUToXUPmTvYwyAb9"))
+                .expectNextMatches(values -> values.getT1().equals(values.getT2()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, lookups.get(), "Concurrent subscribers should share the lookup");
+        assertEquals(1.0, meterRegistry.get("shortener.coalescer.calls").tag("result", "coalesced").counter().count());
+    }
+
+    @Test
+    public void testNewLookupOnceTheFirstOneHasFinished() {
+        AtomicInteger lookups = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(requestCoalescer.coalesce("5g2IXsE", key -> Mono.fromCallable(() -> "lookup-" + lookups.incrementAndGet())))
+                    .expectNext("lookup-" + (i + 1))
+                    .verifyComplete();
+        }
+
+        assertEquals(3, lookups.get(), "Finished lookups should never be served again");
+    }
+
+    @Test
+    public void testErrorsAreNotKept() {
+        StepVerifier.create(requestCoalescer.coalesce("5g2IXsE", key -> Mono.error(new IllegalStateException("Redis down"))))
+                .verifyError(IllegalStateException.class);
+
+        StepVerifier.create(requestCoalescer.coalesce("5g2IXsE", key -> Mono.just("recovered")))
+                .expectNext("recovered")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.vivyteam.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShortCodeHasherTest {
+
+    private final ShortCodeHasher shortCodeHasher = new ShortCodeHasher();
+    private final Base62Encoder base62Encoder = new Base62Encoder();
+
+    @Test
+    public void testHashMatchesLegacyGeneration() throws Exception {
+        String[] urls = {
+                "https://goo.gl/maps/pRUToXUPmTvYwyAb9",
+                "https://github.com/VivyTeam/url-shortener-be-test",
+                "https://example.com/\u00fcmlaut?q=stra\u00dfe",
+                "https://example.com/" + "a".repeat(5000)
+        };
+
+        for (String url : urls) {
+            assertEquals(legacyHash(url, 7), shortCodeHasher.hash(url, 7), "Short code should match the legacy generation");
+            assertEquals(legacyHash(url, 12), shortCodeHasher.hash(url, 12), "Short code should match the legacy generation");
+        }
+    }
+
+    @Test
+    public void testCandidatesStartWithTheHash() {
+        String url = "https://goo.gl/maps/pRUToXUPmTvYwyAb9";
+        List<String> candidates = shortCodeHasher.candidates(url, 7, 10);
+
+        assertEquals(4, candidates.size(), "A 32 byte digest holds four 7 byte slices");
+        assertEquals(shortCodeHasher.hash(url, 7), candidates.get(0), "The first candidate should be the regular code");
+        assertEquals(candidates, shortCodeHasher.candidates(url, 7, 10), "Candidates should be deterministic");
+    }
+
+    @Test
+    public void testFingerprintHasFixedWidth() {
+        String shortUrl = "https://a.de";
+        String longUrl = "https://example.com/" + "x".repeat(4096);
+
+        assertEquals(22, shortCodeHasher.fingerprint(shortUrl, 16).length(), "Fingerprint width should not depend on the value");
+        assertEquals(22, shortCodeHasher.fingerprint(longUrl, 16).length(), "Fingerprint width should not depend on the value");
+        assertEquals(shortCodeHasher.fingerprint(longUrl, 16), shortCodeHasher.fingerprint(longUrl, 16), "Fingerprint should be deterministic");
+    }
+
+    @Test
+    public void testHashRejectsInvalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> shortCodeHasher.hash("https://example.com", 33));
+    }
+
+    private String legacyHash(String url, int length) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] digest = md.digest(url.getBytes(StandardCharsets.UTF_8));
+        StringBuilder code = new StringBuilder(base62Encoder.encode(new BigInteger(1, Arrays.copyOfRange(digest, 0, length))));
+        while (code.length() < length) {
+            code.insert(0, Base62Encoder.ALPHABET.charAt(0));
+        }
+        return code.toString();
+    }
+}
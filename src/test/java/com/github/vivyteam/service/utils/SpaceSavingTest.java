@@ -0,0 +1,43 @@
+package com.github.vivyteam.service.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @Test
+    public void testCountsAreExactBelowCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(10);
+        sketch.offer("a", 5);
+        sketch.offer("b", 2);
+        sketch.offer("a", 1);
+
+        assertEquals(List.of(new SpaceSaving.Entry<>("a", 6, 0), new SpaceSaving.Entry<>("b", 2, 0)), sketch.top(10));
+    }
+
+    // An item seen more than total / capacity times is guaranteed to be kept, here 3333 > 100_000 / 100
+    @Test
+    public void testHeavyHittersSurviveALongTail() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(100);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            if (i % 10 == 0) {
+                sketch.offer("hot-" + (i / 10 % 3), 1);
+            } else {
+                sketch.offer("cold-" + random.nextInt(50_000), 1);
+            }
+        }
+
+        List<SpaceSaving.Entry<String>> top = sketch.top(3);
+        assertEquals(100, sketch.size(), "The sketch should never hold more items than its capacity");
+        assertTrue(top.stream().allMatch(entry -> entry.item().startsWith("hot-")), "The hot items should lead: " + top);
+        assertTrue(top.stream().allMatch(entry -> entry.count() - entry.error() <= 3334 && entry.count() >= 3333),
+                "Counts should bound the true frequency: " + top);
+    }
+}